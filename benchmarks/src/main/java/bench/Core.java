@@ -0,0 +1,130 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.Set;
+
+// The application lives in the unnamed package, which named packages cannot import (and JMH
+// refuses benchmarks there), so calls go through method handles. They sit in static finals,
+// so the JIT inlines them like direct calls.
+final class Core {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+    private static final Class<?> NETWORK = load("SocialNetwork");
+    private static final Class<?> STATS = load("NetworkStats");
+    private static final Class<?> GENERATOR = load("GraphGenerator");
+
+    private static final MethodHandle NEW_NETWORK = constructor(NETWORK);
+    private static final MethodHandle ERDOS_RENYI = staticMethod(GENERATOR, "erdosRenyi", NETWORK, int.class, double.class, long.class);
+    private static final MethodHandle BARABASI_ALBERT = staticMethod(GENERATOR, "barabasiAlbert", NETWORK, int.class, int.class, long.class);
+    private static final MethodHandle SMALL_WORLD = staticMethod(GENERATOR, "smallWorld", NETWORK, int.class, int.class, double.class, long.class);
+    private static final MethodHandle ADD_USER = method(NETWORK, "addUser", boolean.class, String.class);
+    private static final MethodHandle ADD_FRIENDSHIP = method(NETWORK, "addFriendship", boolean.class, String.class, String.class, int.class);
+    private static final MethodHandle ARE_CONNECTED = method(NETWORK, "areConnected", boolean.class, String.class, String.class);
+    private static final MethodHandle SHORTEST_PATH = method(NETWORK, "findShortestPath", List.class, String.class, String.class);
+    private static final MethodHandle LIGHTEST_PATH = method(NETWORK, "findLightestPath", List.class, String.class, String.class);
+    private static final MethodHandle FIND_PATHS = method(NETWORK, "findPaths", List.class, List.class, boolean.class);
+    private static final MethodHandle MUTUAL_FRIENDS = method(NETWORK, "findMutualFriends", Set.class, String.class, String.class);
+    private static final MethodHandle SUGGEST_FRIENDS = method(NETWORK, "suggestFriends", List.class, String.class, int.class);
+    private static final MethodHandle GET_STATS = method(NETWORK, "getStats", STATS);
+    private static final MethodHandle DISPLAY_STATS = method(STATS, "displayStats", void.class);
+
+    private Core() {}
+
+    static Object newNetwork() { return call(() -> NEW_NETWORK.invoke()); }
+
+    static Object generate(String model, int users, long seed) {
+        switch (model) {
+            case "ER": return call(() -> ERDOS_RENYI.invoke(users, 10.0, seed));
+            case "BA": return call(() -> BARABASI_ALBERT.invoke(users, 5, seed));
+            case "SW": return call(() -> SMALL_WORLD.invoke(users, 10, 0.1, seed));
+            default: throw new IllegalArgumentException("Unknown graph model " + model);
+        }
+    }
+
+    static boolean addUser(Object network, String user) {
+        return call(() -> (boolean) ADD_USER.invoke(network, user));
+    }
+
+    static boolean addFriendship(Object network, String user1, String user2, int weight) {
+        return call(() -> (boolean) ADD_FRIENDSHIP.invoke(network, user1, user2, weight));
+    }
+
+    static boolean areConnected(Object network, String user1, String user2) {
+        return call(() -> (boolean) ARE_CONNECTED.invoke(network, user1, user2));
+    }
+
+    static List<?> findShortestPath(Object network, String user1, String user2) {
+        return call(() -> (List<?>) SHORTEST_PATH.invoke(network, user1, user2));
+    }
+
+    static List<?> findLightestPath(Object network, String user1, String user2) {
+        return call(() -> (List<?>) LIGHTEST_PATH.invoke(network, user1, user2));
+    }
+
+    static List<?> findPaths(Object network, List<String[]> pairs, boolean weighted) {
+        return call(() -> (List<?>) FIND_PATHS.invoke(network, pairs, weighted));
+    }
+
+    static Set<?> findMutualFriends(Object network, String user1, String user2) {
+        return call(() -> (Set<?>) MUTUAL_FRIENDS.invoke(network, user1, user2));
+    }
+
+    static List<?> suggestFriends(Object network, String user, int k) {
+        return call(() -> (List<?>) SUGGEST_FRIENDS.invoke(network, user, k));
+    }
+
+    static void displayStats(Object network) {
+        call(() -> {
+            DISPLAY_STATS.invoke(GET_STATS.invoke(network));
+            return null;
+        });
+    }
+
+    private interface Call<T> {
+        T run() throws Throwable;
+    }
+
+    private static <T> T call(Call<T> call) {
+        try {
+            return call.run();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> type) {
+        try {
+            return LOOKUP.findConstructor(type, MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle method(Class<?> owner, String name, Class<?> returns, Class<?>... params) {
+        try {
+            return LOOKUP.findVirtual(owner, name, MethodType.methodType(returns, params));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle staticMethod(Class<?> owner, String name, Class<?> returns, Class<?>... params) {
+        try {
+            return LOOKUP.findStatic(owner, name, MethodType.methodType(returns, params));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Bulk addFriendship: every iteration starts from a fresh network of `users` users, built outside
+// the timed region, and times one batch of BATCH random friendships added to it, one per call.
+// The score is time per friendship including the pending-edge bookkeeping.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, batchSize = MutationBenchmarks.BATCH)
+@Measurement(iterations = 10, batchSize = MutationBenchmarks.BATCH)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class MutationBenchmarks {
+    static final int BATCH = 10_000;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int users;
+
+    private String[] names;
+    private int[] from, to, weight;
+    private Object network;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void pickEdges() {
+        names = new String[users];
+        for (int u = 0; u < users; u++) names[u] = "u" + u;
+        SplittableRandom rnd = new SplittableRandom(11);
+        from = new int[BATCH];
+        to = new int[BATCH];
+        weight = new int[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            from[i] = rnd.nextInt(users);
+            to[i] = rnd.nextInt(users);
+            weight[i] = 1 + rnd.nextInt(10);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void freshNetwork() {
+        network = Core.newNetwork();
+        for (String name : names) Core.addUser(network, name);
+        next = 0;
+    }
+
+    // a single-shot iteration is BATCH calls; counting it as BATCH operations reports per call
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean addFriendship() {
+        int i = next++;
+        return Core.addFriendship(network, names[from[i]], names[to[i]], weight[i]);
+    }
+}
@@ -0,0 +1,137 @@
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Read queries on a generated graph. Every call takes the next pair from a fixed random
+// sequence, so all engines see the same workload. Quick runs: -p users=1000,100000.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class QueryBenchmarks {
+    private static final int PAIRS = 4096; // power of two
+    private static final int BATCH_SOURCES = 2; // the batch: PAIRS pairs from this many users
+
+    @Param({"ER", "BA", "SW"})
+    public String model;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int users;
+
+    private Object network;
+    private final String[] sources = new String[PAIRS];
+    private final String[] targets = new String[PAIRS];
+    private final List<String[]> batch = new ArrayList<>();
+    private int next;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        network = Core.generate(model, users, 42);
+        SplittableRandom rnd = new SplittableRandom(7);
+        for (int i = 0; i < PAIRS; i++) {
+            sources[i] = "u" + rnd.nextInt(users);
+            targets[i] = "u" + rnd.nextInt(users);
+        }
+        for (int i = 0; i < PAIRS; i++) batch.add(new String[] { sources[i % BATCH_SOURCES], targets[i] });
+    }
+
+    private int pair() {
+        return next++ & (PAIRS - 1);
+    }
+
+    @Benchmark
+    public boolean areConnected() {
+        int i = pair();
+        return Core.areConnected(network, sources[i], targets[i]);
+    }
+
+    @Benchmark
+    public Object findShortestPath() {
+        int i = pair();
+        return Core.findShortestPath(network, sources[i], targets[i]);
+    }
+
+    @Benchmark
+    public Object findLightestPath() {
+        int i = pair();
+        return Core.findLightestPath(network, sources[i], targets[i]);
+    }
+
+    // the same batch answered with shared searches, and one pair at a time
+    @Benchmark
+    public Object findShortestPathBatch() {
+        return Core.findPaths(network, batch, false);
+    }
+
+    @Benchmark
+    public Object findShortestPathLoop() {
+        List<Object> paths = new ArrayList<>(PAIRS);
+        for (String[] pair : batch) paths.add(Core.findShortestPath(network, pair[0], pair[1]));
+        return paths;
+    }
+
+    @Benchmark
+    public Object findLightestPathBatch() {
+        return Core.findPaths(network, batch, true);
+    }
+
+    @Benchmark
+    public Object findLightestPathLoop() {
+        List<Object> paths = new ArrayList<>(PAIRS);
+        for (String[] pair : batch) paths.add(Core.findLightestPath(network, pair[0], pair[1]));
+        return paths;
+    }
+
+    @Benchmark
+    public Object findMutualFriends() {
+        int i = pair();
+        return Core.findMutualFriends(network, sources[i], targets[i]);
+    }
+
+    @Benchmark
+    public Object suggestFriends() {
+        return Core.suggestFriends(network, sources[pair()], 10);
+    }
+
+    // prints the report into a discarding stream so console I/O is not what gets measured
+    @State(Scope.Thread)
+    public static class QuietOut {
+        private PrintStream original;
+
+        @Setup(Level.Trial)
+        public void silence() {
+            original = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        @TearDown(Level.Trial)
+        public void restore() {
+            System.setOut(original);
+        }
+    }
+
+    @Benchmark
+    public void displayStats(QuietOut out) {
+        Core.displayStats(network);
+    }
+}
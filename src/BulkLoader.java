@@ -0,0 +1,300 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.IntStream;
+
+// Parallel bulk import of edge-list files, one friendship per line: "user1,user2,weight".
+// A line with two names gets weight 1 (like addFriendship(user1, user2)); a line with one
+// name just adds that user; blank lines and lines starting with '#' are skipped.
+// Unknown users are created. Lines are validated like addUser/addFriendship and rejected
+// lines are counted, with a few samples kept for the report.
+public class BulkLoader {
+    static final int CHUNK_BYTES = 8 << 20;
+    private static final int MAX_SAMPLES = 20;
+
+    public enum Reason {
+        MALFORMED("malformed line"),
+        INVALID_USERNAME("invalid username"),
+        SELF_LOOP("self-friendship"),
+        BAD_WEIGHT("weight must be a positive integer"),
+        DUPLICATE("duplicate friendship");
+
+        final String message;
+
+        Reason(String message) {
+            this.message = message;
+        }
+    }
+
+    public static class Report {
+        public long bytes;
+        public long lines;
+        public long friendshipsAdded;
+        public int usersAdded;
+        public final long[] rejected = new long[Reason.values().length];
+        public final List<String> samples = new ArrayList<>();
+        public long elapsedNanos;
+
+        public long totalRejected() {
+            long sum = 0;
+            for (long r : rejected) sum += r;
+            return sum;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(elapsedNanos, 1) / 1e9;
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("Read %d lines (%.1f MB) in %.2f s: %.0f lines/s, %.1f MB/s%n",
+                    lines, bytes / 1e6, seconds, lines / seconds, bytes / 1e6 / seconds));
+            sb.append("Users added: ").append(usersAdded)
+              .append(", friendships added: ").append(friendshipsAdded)
+              .append(", lines rejected: ").append(totalRejected());
+            for (Reason r : Reason.values()) {
+                if (rejected[r.ordinal()] > 0) sb.append(String.format("%n  %s: %d", r.message, rejected[r.ordinal()]));
+            }
+            for (String s : samples) sb.append(String.format("%n  %s", s));
+            return sb.toString();
+        }
+    }
+
+    // one mapped slice of the file, parsed with chunk-local user ids
+    private static class Chunk {
+        final long start, end;
+        final Map<String, Integer> localIds = new HashMap<>();
+        final List<String> names = new ArrayList<>();
+        int[] from = new int[1024], to = new int[1024], weight = new int[1024];
+        int edges;
+        long lines;
+        final long[] rejected = new long[Reason.values().length];
+        final List<long[]> samples = new ArrayList<>(); // {local line, reason}
+
+        Chunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        int intern(String name) {
+            Integer id = localIds.get(name);
+            if (id != null) return id;
+            localIds.put(name, names.size());
+            names.add(name);
+            return names.size() - 1;
+        }
+
+        void addEdge(int u, int v, int w) {
+            if (edges == from.length) {
+                from = Arrays.copyOf(from, edges * 2);
+                to = Arrays.copyOf(to, edges * 2);
+                weight = Arrays.copyOf(weight, edges * 2);
+            }
+            from[edges] = u; to[edges] = v; weight[edges++] = w;
+        }
+
+        void reject(Reason reason) {
+            rejected[reason.ordinal()]++;
+            if (samples.size() < MAX_SAMPLES) samples.add(new long[] { lines, reason.ordinal() });
+        }
+    }
+
+    public static Report load(Path file, SocialNetwork network) throws IOException {
+        return load(file, network, CHUNK_BYTES);
+    }
+
+    // the same, cutting the file into slices of about chunkBytes (tests use tiny ones)
+    static Report load(Path file, SocialNetwork network, long chunkBytes) throws IOException {
+        long startTime = System.nanoTime();
+        Report report = new Report();
+        List<Chunk> chunks;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            report.bytes = channel.size();
+            chunks = split(channel, chunkBytes);
+            chunks.parallelStream().forEach(c -> parse(channel, c));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        // flush pending edges first so duplicates are checked against a complete graph, and drop
+        // removed users so the ids taken here are the ones installEdges sees
+        CompactGraph base = network.compacted();
+        int usersBefore = network.userCount();
+        int[] edgeStart = new int[chunks.size() + 1];
+        int[][] remap = new int[chunks.size()][];
+        long lineOffset = 0;
+        for (int c = 0; c < chunks.size(); c++) {
+            Chunk chunk = chunks.get(c);
+            remap[c] = new int[chunk.names.size()];
+            for (int i = 0; i < remap[c].length; i++) remap[c][i] = network.internUser(chunk.names.get(i));
+            edgeStart[c + 1] = edgeStart[c] + chunk.edges;
+            for (int r = 0; r < report.rejected.length; r++) report.rejected[r] += chunk.rejected[r];
+            for (long[] s : chunk.samples) {
+                if (report.samples.size() < MAX_SAMPLES) {
+                    report.samples.add("line " + (lineOffset + s[0]) + ": " + Reason.values()[(int) s[1]].message);
+                }
+            }
+            lineOffset += chunk.lines;
+        }
+        report.lines = lineOffset;
+        report.usersAdded = network.userCount() - usersBefore;
+
+        int count = edgeStart[chunks.size()];
+        int[] from = new int[count], to = new int[count], weight = new int[count];
+        IntStream.range(0, chunks.size()).parallel().forEach(c -> {
+            Chunk chunk = chunks.get(c);
+            for (int i = 0, j = edgeStart[c]; i < chunk.edges; i++, j++) {
+                from[j] = remap[c][chunk.from[i]];
+                to[j] = remap[c][chunk.to[i]];
+                weight[j] = chunk.weight[i];
+            }
+        });
+
+        int kept = dedup(base, network.userCount(), from, to, weight, count);
+        report.rejected[Reason.DUPLICATE.ordinal()] += count - kept;
+        network.installEdges(from, to, weight, kept);
+        report.friendshipsAdded = kept;
+        report.elapsedNanos = System.nanoTime() - startTime;
+        return report;
+    }
+
+    // cut the file into ~chunkBytes slices that end on a line break
+    private static List<Chunk> split(FileChannel channel, long chunkBytes) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        long size = channel.size();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(size, start + chunkBytes);
+            while (end < size) {
+                probe.clear();
+                int read = channel.read(probe, end);
+                int nl = -1;
+                for (int i = 0; i < read && nl < 0; i++) if (probe.get(i) == '\n') nl = i;
+                if (nl >= 0) { end += nl + 1; break; }
+                end += Math.max(read, 0);
+            }
+            chunks.add(new Chunk(start, Math.min(end, size)));
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static void parse(FileChannel channel, Chunk chunk) {
+        MappedByteBuffer buf;
+        try {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, chunk.start, chunk.end - chunk.start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] line = new byte[256];
+        int[] commas = new int[3];
+        while (buf.hasRemaining()) {
+            int len = 0, fields = 1;
+            while (buf.hasRemaining()) {
+                byte b = buf.get();
+                if (b == '\n') break;
+                if (len == line.length) line = Arrays.copyOf(line, len * 2);
+                if (b == ',') {
+                    if (fields <= commas.length) commas[fields - 1] = len;
+                    fields++;
+                }
+                line[len++] = b;
+            }
+            if (len > 0 && line[len - 1] == '\r') len--;
+            chunk.lines++;
+            parseLine(chunk, line, len, fields, commas);
+        }
+    }
+
+    private static void parseLine(Chunk chunk, byte[] line, int len, int fields, int[] commas) {
+        if (isBlank(line, 0, len) || line[firstNonSpace(line, len)] == '#') return;
+        if (fields > 3) { chunk.reject(Reason.MALFORMED); return; }
+
+        int end1 = fields > 1 ? commas[0] : len;
+        String user1 = new String(line, 0, end1, StandardCharsets.UTF_8);
+        if (fields == 1) {
+            if (!User.isValidUsername(user1)) chunk.reject(Reason.INVALID_USERNAME);
+            else chunk.intern(User.sanitizeUsername(user1));
+            return;
+        }
+        int end2 = fields > 2 ? commas[1] : len;
+        String user2 = new String(line, end1 + 1, end2 - end1 - 1, StandardCharsets.UTF_8);
+        if (!User.areValidUsernames(user1, user2)) { chunk.reject(Reason.INVALID_USERNAME); return; }
+        user1 = User.sanitizeUsername(user1);
+        user2 = User.sanitizeUsername(user2);
+        if (user1.equals(user2)) { chunk.reject(Reason.SELF_LOOP); return; }
+
+        int weight = fields > 2 ? parseWeight(line, end2 + 1, len) : 1;
+        if (weight <= 0) { chunk.reject(Reason.BAD_WEIGHT); return; }
+        chunk.addEdge(chunk.intern(user1), chunk.intern(user2), weight);
+    }
+
+    // positive int with optional surrounding spaces, or -1
+    private static int parseWeight(byte[] line, int from, int to) {
+        while (from < to && line[from] == ' ') from++;
+        while (to > from && line[to - 1] == ' ') to--;
+        if (from == to) return -1;
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            if (line[i] < '0' || line[i] > '9') return -1;
+            value = value * 10 + (line[i] - '0');
+            if (value > Integer.MAX_VALUE) return -1;
+        }
+        return (int) value;
+    }
+
+    private static boolean isBlank(byte[] line, int from, int to) {
+        for (int i = from; i < to; i++) if (line[i] != ' ' && line[i] != '\t') return false;
+        return true;
+    }
+
+    private static int firstNonSpace(byte[] line, int len) {
+        int i = 0;
+        while (i < len && (line[i] == ' ' || line[i] == '\t')) i++;
+        return i;
+    }
+
+    // Drops edges already in base and repeats of an earlier line (first occurrence wins).
+    // Edges are grouped by their smaller endpoint with a stable counting sort, then each group
+    // is sorted by the other endpoint. Compacts the arrays in place and returns the kept count.
+    static int dedup(CompactGraph base, int n, int[] from, int[] to, int[] weight, int count) {
+        int[] groupStart = new int[n + 1];
+        for (int i = 0; i < count; i++) {
+            if (from[i] > to[i]) { int t = from[i]; from[i] = to[i]; to[i] = t; }
+            groupStart[from[i] + 1]++;
+        }
+        for (int u = 0; u < n; u++) groupStart[u + 1] += groupStart[u];
+        int[] fill = Arrays.copyOf(groupStart, n);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) order[fill[from[i]]++] = i;
+
+        boolean[] keep = new boolean[count];
+        IntStream.range(0, n).parallel().forEach(u -> {
+            int lo = groupStart[u], hi = groupStart[u + 1];
+            if (lo == hi) return;
+            long[] keys = new long[hi - lo];
+            for (int k = lo; k < hi; k++) keys[k - lo] = ((long) to[order[k]] << 32) | (k - lo);
+            Arrays.sort(keys);
+            int last = -1;
+            for (long key : keys) {
+                int v = (int) (key >>> 32);
+                int i = order[lo + (int) key];
+                if (v != last && !base.hasEdge(u, v)) keep[i] = true;
+                last = v;
+            }
+        });
+
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (!keep[i]) continue;
+            from[kept] = from[i]; to[kept] = to[i]; weight[kept] = weight[i];
+            kept++;
+        }
+        return kept;
+    }
+}
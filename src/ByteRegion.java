@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Little-endian byte region addressed by long offsets, split over ByteBuffers of at most 1 GiB
+// each (a single ByteBuffer cannot exceed 2 GiB). Ints and longs must be naturally aligned, so
+// they never straddle two segments.
+public class ByteRegion {
+    static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private final ByteBuffer[] segments;
+    private final long size;
+
+    private ByteRegion(ByteBuffer[] segments, long size) {
+        this.segments = segments;
+        this.size = size;
+    }
+
+    // maps [position, position + size) of the file
+    public static ByteRegion map(FileChannel channel, FileChannel.MapMode mode, long position, long size)
+            throws IOException {
+        ByteBuffer[] segments = new ByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+        for (int i = 0; i < segments.length; i++) {
+            long start = (long) i << SEGMENT_SHIFT;
+            long len = Math.min(size - start, 1L << SEGMENT_SHIFT);
+            segments[i] = channel.map(mode, position + start, len).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return new ByteRegion(segments, size);
+    }
+
+    // zeroed native memory outside the Java heap, released when the region is collected
+    public static ByteRegion allocateDirect(long size) {
+        ByteBuffer[] segments = new ByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+        for (int i = 0; i < segments.length; i++) {
+            long len = Math.min(size - ((long) i << SEGMENT_SHIFT), 1L << SEGMENT_SHIFT);
+            segments[i] = ByteBuffer.allocateDirect((int) len).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return new ByteRegion(segments, size);
+    }
+
+    // Zeroed, writable region backed by a new temporary file in dir, so the OS can page it out.
+    // The file is unlinked right away where the platform allows; the mapping keeps it alive.
+    public static ByteRegion allocateFile(Path dir, long size) throws IOException {
+        Path file = Files.createTempFile(dir, "region", ".bin");
+        ByteRegion region;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            region = map(ch, FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        try {
+            Files.delete(file);
+        } catch (IOException e) {
+            file.toFile().deleteOnExit(); // e.g. Windows refuses to delete mapped files
+        }
+        return region;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public byte getByte(long pos) {
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].get((int) (pos & SEGMENT_MASK));
+    }
+
+    public int getInt(long pos) {
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].getInt((int) (pos & SEGMENT_MASK));
+    }
+
+    public long getLong(long pos) {
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].getLong((int) (pos & SEGMENT_MASK));
+    }
+
+    public void putByte(long pos, byte value) {
+        segments[(int) (pos >>> SEGMENT_SHIFT)].put((int) (pos & SEGMENT_MASK), value);
+    }
+
+    public void putInt(long pos, int value) {
+        segments[(int) (pos >>> SEGMENT_SHIFT)].putInt((int) (pos & SEGMENT_MASK), value);
+    }
+
+    public void putLong(long pos, long value) {
+        segments[(int) (pos >>> SEGMENT_SHIFT)].putLong((int) (pos & SEGMENT_MASK), value);
+    }
+
+    // read-only views of [from, to) in segment order, for bulk work such as checksums
+    ByteBuffer[] slices(long from, long to) {
+        int first = (int) (from >>> SEGMENT_SHIFT);
+        int last = (int) ((Math.max(to, from + 1) - 1) >>> SEGMENT_SHIFT);
+        ByteBuffer[] out = new ByteBuffer[Math.max(0, last - first + 1)];
+        for (int s = first; s <= last && from < to; s++) {
+            long segStart = (long) s << SEGMENT_SHIFT;
+            ByteBuffer b = segments[s].duplicate();
+            b.limit((int) (Math.min(to, segStart + b.capacity()) - segStart));
+            b.position((int) (Math.max(from, segStart) - segStart));
+            out[s - first] = b;
+        }
+        return out;
+    }
+}
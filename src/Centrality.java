@@ -0,0 +1,248 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Betweenness centrality (Brandes): for every user, how many shortest paths between other users
+// pass through them. One BFS (unweighted) or Dijkstra (weighted) per source, then dependencies
+// are accumulated back in reverse distance order. Sources are dealt round-robin into one chunk per
+// fork-join worker and each chunk adds into its own score array; the arrays are summed at the end.
+@SuppressWarnings("try") // Metrics scopes are never referenced inside their try blocks
+public class Centrality {
+    // confidence of the sampled estimate's error bound
+    public static final double CONFIDENCE = 0.99;
+
+    // scores by user id, counting each unordered pair once
+    public static final class Betweenness {
+        public final double[] scores;
+        public final boolean weighted;
+        public final int sources;         // searches run; n for the exact scores
+        public final double errorBound;   // |estimate - exact| <= errorBound for every user w.p. CONFIDENCE; 0 if exact
+
+        Betweenness(double[] scores, boolean weighted, int sources, double errorBound) {
+            this.scores = scores;
+            this.weighted = weighted;
+            this.sources = sources;
+            this.errorBound = errorBound;
+        }
+
+        // score as a fraction of the (n-1)(n-2)/2 pairs the user could sit between
+        public double normalized(int id) {
+            long n = scores.length;
+            return n < 3 ? 0.0 : scores[id] / ((n - 1) * (n - 2) / 2.0);
+        }
+
+        public double normalizedErrorBound() {
+            long n = scores.length;
+            return n < 3 ? 0.0 : errorBound / ((n - 1) * (n - 2) / 2.0);
+        }
+
+        // ids of the k highest scores, highest first (ties by id)
+        public int[] top(int k) {
+            return topIds(scores, k);
+        }
+    }
+
+    public static Betweenness betweenness(CompactGraph g, boolean weighted) {
+        try (Metrics.Scope m = Metrics.begin("Centrality.betweenness")) {
+            int n = g.size();
+            double[] scores = accumulate(g, weighted, IntStream.range(0, n).toArray());
+            for (int v = 0; v < n; v++) scores[v] /= 2; // both directions of every pair were counted
+            return new Betweenness(scores, weighted, n, 0.0);
+        }
+    }
+
+    // Estimate from random sources (Brandes-Pich): each source s contributes a dependency
+    // delta_s(v) in [0, n-2], so the scaled mean of k samples is unbiased and, by Hoeffding plus a
+    // union bound over all n users, within n(n-2)/2 * sqrt(ln(2n/(1-CONFIDENCE)) / 2k) of every
+    // exact score. epsilon bounds the error of normalized(v), a fraction of the (n-1)(n-2)/2
+    // pairs, not of the raw scores: k is chosen so normalizedErrorBound() <= epsilon. Falls back
+    // to exact when k >= n.
+    public static Betweenness approximateBetweenness(CompactGraph g, boolean weighted, double epsilon, long seed) {
+        try (Metrics.Scope m = Metrics.begin("Centrality.approximateBetweenness")) {
+            int n = g.size();
+            if (n < 3 || epsilon <= 0) return betweenness(g, weighted);
+            double logTerm = Math.log(2.0 * n / (1 - CONFIDENCE));
+            double range = n / (n - 1.0); // of one sample's normalized contribution
+            long k = (long) Math.ceil(logTerm * range * range / (2 * epsilon * epsilon));
+            if (k >= n) return betweenness(g, weighted);
+
+            SplittableRandom rnd = new SplittableRandom(seed);
+            int[] sources = new int[(int) k];
+            for (int i = 0; i < sources.length; i++) sources[i] = rnd.nextInt(n);
+            double[] scores = accumulate(g, weighted, sources);
+            double scale = (double) n / k / 2;
+            for (int v = 0; v < n; v++) scores[v] *= scale;
+            double bound = n * (n - 2.0) / 2 * Math.sqrt(logTerm / (2.0 * k));
+            return new Betweenness(scores, weighted, (int) k, bound);
+        }
+    }
+
+    private static double[] accumulate(CompactGraph g, boolean weighted, int[] sources) {
+        // read in place, so an off-heap graph is never copied onto the heap
+        IntArray offsets = g.offsets(), targets = g.targets();
+        IntArray weights = weighted ? g.weights() : null;
+        // a fixed chunk count, so there are as many accumulators as workers however the stream
+        // splits; striding spreads expensive sources (big components) over the chunks
+        int chunks = Math.max(1, Math.min(sources.length, ForkJoinPool.getCommonPoolParallelism()));
+        return IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> {
+                    Brandes b = new Brandes(g.size());
+                    for (int i = c; i < sources.length; i += chunks) b.addSource(offsets, targets, weights, sources[i]);
+                    return b;
+                })
+                .reduce(Brandes::merged)
+                .get()
+                .scores;
+    }
+
+    // one chunk's search state and score accumulator
+    private static final class Brandes {
+        final double[] scores;
+        final double[] sigma;   // shortest paths from the source
+        final double[] delta;   // dependency of the source on each user
+        final long[] dist;
+        final int[] order;      // users in non-decreasing distance, as settled
+        final IndexedMinHeap heap;
+
+        Brandes(int n) {
+            scores = new double[n];
+            sigma = new double[n];
+            delta = new double[n];
+            dist = new long[n];
+            order = new int[n];
+            heap = new IndexedMinHeap(n);
+            Arrays.fill(dist, -1);
+        }
+
+        // weights is null for hop distances
+        void addSource(IntArray offsets, IntArray targets, IntArray weights, int s) {
+            double[] sigma = this.sigma, delta = this.delta;
+            long[] dist = this.dist;
+            int[] order = this.order;
+            int count = weights == null ? bfs(offsets, targets, s) : dijkstra(offsets, targets, weights, s);
+            // walk back from the farthest user; v precedes w on a shortest path iff it is a
+            // neighbour exactly one hop (or w(v, w)) closer
+            for (int i = count - 1; i > 0; i--) {
+                int w = order[i];
+                double share = (1 + delta[w]) / sigma[w];
+                long dw = dist[w];
+                for (int e = offsets.get(w), end = offsets.get(w + 1); e < end; e++) {
+                    int v = targets.get(e);
+                    long step = weights == null ? 1 : weights.get(e);
+                    if (step > 0 && dist[v] >= 0 && dist[v] + step == dw) delta[v] += sigma[v] * share;
+                }
+                scores[w] += delta[w];
+            }
+            // only the reached users were written
+            for (int i = 0; i < count; i++) {
+                int v = order[i];
+                dist[v] = -1;
+                sigma[v] = 0;
+                delta[v] = 0;
+            }
+        }
+
+        private int bfs(IntArray offsets, IntArray targets, int s) {
+            double[] sigma = this.sigma;
+            long[] dist = this.dist;
+            int[] order = this.order;
+            int head = 0, tail = 0;
+            dist[s] = 0;
+            sigma[s] = 1;
+            order[tail++] = s;
+            while (head < tail) {
+                int v = order[head++];
+                long next = dist[v] + 1;
+                double paths = sigma[v];
+                for (int e = offsets.get(v), end = offsets.get(v + 1); e < end; e++) {
+                    int w = targets.get(e);
+                    if (dist[w] < 0) {
+                        dist[w] = next;
+                        order[tail++] = w;
+                    }
+                    if (dist[w] == next) sigma[w] += paths;
+                }
+            }
+            return tail;
+        }
+
+        private int dijkstra(IntArray offsets, IntArray targets, IntArray weights, int s) {
+            double[] sigma = this.sigma;
+            long[] dist = this.dist;
+            int count = 0;
+            heap.reset(dist.length);
+            dist[s] = 0;
+            sigma[s] = 1;
+            heap.push(s, 0);
+            while (!heap.isEmpty()) {
+                int v = heap.poll();
+                order[count++] = v;
+                for (int e = offsets.get(v), end = offsets.get(v + 1); e < end; e++) {
+                    int w = targets.get(e);
+                    int weight = weights.get(e);
+                    if (weight <= 0) continue; // skip bad weights
+                    long nd = dist[v] + weight;
+                    if (dist[w] < 0 || nd < dist[w]) {
+                        dist[w] = nd;
+                        sigma[w] = sigma[v];
+                        heap.push(w, nd);
+                    } else if (nd == dist[w]) {
+                        sigma[w] += sigma[v];
+                    }
+                }
+            }
+            return count;
+        }
+
+        Brandes merged(Brandes other) {
+            for (int v = 0; v < scores.length; v++) scores[v] += other.scores[v];
+            return this;
+        }
+    }
+
+    // ids of the k largest values, largest first, ties by id; a bounded min-heap, O(n log k)
+    static int[] topIds(double[] values, int k) {
+        k = Math.max(0, Math.min(k, values.length));
+        int[] heap = new int[k];
+        int size = 0;
+        for (int v = 0; v < values.length; v++) {
+            if (size < k) {
+                heap[size++] = v;
+                for (int i = size - 1; i > 0 && ranksAbove(values, heap[(i - 1) >>> 1], heap[i]); i = (i - 1) >>> 1) {
+                    swap(heap, i, (i - 1) >>> 1);
+                }
+            } else if (k > 0 && ranksAbove(values, v, heap[0])) {
+                heap[0] = v;
+                siftDown(values, heap, size);
+            }
+        }
+        int[] top = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            top[i] = heap[0];
+            heap[0] = heap[i];
+            siftDown(values, heap, i);
+        }
+        return top;
+    }
+
+    private static boolean ranksAbove(double[] values, int a, int b) {
+        return values[a] != values[b] ? values[a] > values[b] : a < b;
+    }
+
+    // min-heap on rank: the root is the weakest of the kept ids
+    private static void siftDown(double[] values, int[] heap, int size) {
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int c = 2 * i + 1;
+            if (c + 1 < size && ranksAbove(values, heap[c], heap[c + 1])) c++;
+            if (!ranksAbove(values, heap[i], heap[c])) break;
+            swap(heap, i, c);
+            i = c;
+        }
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int t = a[i]; a[i] = a[j]; a[j] = t;
+    }
+}
@@ -0,0 +1,376 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+// Community detection on the weighted friendship graph.
+//   labelPropagation: fast; every user repeatedly adopts the label with the most friendship
+//                     weight among its friends, in parallel and in place (asynchronous)
+//   louvain:          better quality; users move greedily to the neighbouring community with
+//                     the best modularity gain (in parallel, with atomic community totals), then
+//                     communities are merged into single nodes and the process repeats
+// Modularity Q = sum over communities of in/2m - (tot/2m)^2, with in the weight inside the
+// community and tot its users' total strength (each friendship counted from both ends).
+@SuppressWarnings("try") // Metrics scopes are never referenced inside their try blocks
+public class Communities {
+    public static final int DEFAULT_MAX_ROUNDS = 50;
+    private static final int MAX_LEVELS = 32;
+    private static final int MAX_PASSES = 32;
+    private static final double MIN_GAIN = 1e-7; // modularity gain below which Louvain stops
+
+    private static final ThreadLocal<Scratch> LOCAL = ThreadLocal.withInitial(Scratch::new);
+
+    // community of every user id; communities are numbered 0.. by size, largest first
+    public static final class Result {
+        private final CompactGraph graph;
+        public final int[] community;
+        public final int[] sizes;
+        public final double modularity;
+
+        Result(CompactGraph graph, int[] community, int[] sizes, double modularity) {
+            this.graph = graph;
+            this.community = community;
+            this.sizes = sizes;
+            this.modularity = modularity;
+        }
+
+        public int count() {
+            return sizes.length;
+        }
+
+        // -1 for users unknown when the communities were computed
+        public int communityOf(String username) {
+            int id = graph.idOf(User.sanitizeUsername(username));
+            return id < 0 || id >= community.length ? -1 : community[id];
+        }
+
+        // community of user id of g, which may be a later graph: ids are only shared while both
+        // graphs use the same name table, removals renumber users, so otherwise go by name
+        int communityOf(CompactGraph g, int id) {
+            if (g.index() == graph.index()) return id < community.length ? community[id] : -1;
+            return communityOf(g.nameOf(id));
+        }
+
+        public List<String> members(int c) {
+            List<String> names = new ArrayList<>();
+            for (int id = 0; id < community.length; id++) if (community[id] == c) names.add(graph.nameOf(id));
+            return names;
+        }
+    }
+
+    public static Result labelPropagation(CompactGraph g) {
+        return labelPropagation(g, DEFAULT_MAX_ROUNDS, 1);
+    }
+
+    // rounds until no label changes (or maxRounds); users are visited in a seeded random order
+    public static Result labelPropagation(CompactGraph g, int maxRounds, long seed) {
+        try (Metrics.Scope m = Metrics.begin("Communities.labelPropagation")) {
+            int n = g.size();
+            IntArray offsets = g.offsets(), targets = g.targets(), weights = g.weights(); // read in place
+            int[] labels = new int[n];
+            for (int v = 0; v < n; v++) labels[v] = v;
+            int[] order = shuffledIds(n, seed);
+            for (int round = 0; round < maxRounds; round++) {
+                // labels are read and written concurrently; a stale read only delays convergence
+                int changed = IntStream.range(0, n).parallel()
+                        .map(i -> LOCAL.get().relabel(offsets, targets, weights, labels, order[i]) ? 1 : 0)
+                        .sum();
+                if (changed == 0) break;
+            }
+            return result(g, labels);
+        }
+    }
+
+    public static Result louvain(CompactGraph g) {
+        try (Metrics.Scope m = Metrics.begin("Communities.louvain")) {
+            int n = g.size();
+            int[] assignment = new int[n]; // user -> node of the current level
+            for (int v = 0; v < n; v++) assignment[v] = v;
+            Level level = Level.of(g);
+            if (level.totalWeight == 0) return result(g, assignment);
+            double q = level.modularity(identity(level.n));
+            for (int depth = 0; depth < MAX_LEVELS; depth++) {
+                int[] comm = level.moveNodes();
+                int count = renumber(comm);
+                if (count == level.n) break;
+                double moved = level.modularity(comm);
+                for (int v = 0; v < n; v++) assignment[v] = comm[assignment[v]];
+                level = level.aggregate(comm, count);
+                if (moved - q < MIN_GAIN) break;
+                q = moved;
+            }
+            return result(g, assignment);
+        }
+    }
+
+    // Q of any assignment of user ids to community ids in [0, n)
+    public static double modularity(CompactGraph g, int[] community) {
+        return Level.of(g).modularity(community);
+    }
+
+    // renumbers labels by community size, largest first, and measures the partition
+    private static Result result(CompactGraph g, int[] labels) {
+        int n = labels.length;
+        int count = renumber(labels);
+        int[] sizes = new int[count];
+        for (int v = 0; v < n; v++) sizes[labels[v]]++;
+        Integer[] bySize = new Integer[count];
+        for (int c = 0; c < count; c++) bySize[c] = c;
+        Arrays.sort(bySize, (a, b) -> sizes[a] != sizes[b] ? Integer.compare(sizes[b], sizes[a]) : Integer.compare(a, b));
+        int[] rank = new int[count];
+        int[] sorted = new int[count];
+        for (int r = 0; r < count; r++) {
+            rank[bySize[r]] = r;
+            sorted[r] = sizes[bySize[r]];
+        }
+        int[] community = new int[n];
+        for (int v = 0; v < n; v++) community[v] = rank[labels[v]];
+        return new Result(g, community, sorted, modularity(g, community));
+    }
+
+    // maps labels in place to 0..count-1 in order of first appearance; returns count
+    private static int renumber(int[] labels) {
+        int[] map = new int[labels.length];
+        Arrays.fill(map, -1);
+        int count = 0;
+        for (int v = 0; v < labels.length; v++) {
+            if (map[labels[v]] < 0) map[labels[v]] = count++;
+            labels[v] = map[labels[v]];
+        }
+        return count;
+    }
+
+    private static int[] identity(int n) {
+        int[] ids = new int[n];
+        for (int v = 0; v < n; v++) ids[v] = v;
+        return ids;
+    }
+
+    private static int[] shuffledIds(int n, long seed) {
+        int[] ids = identity(n);
+        SplittableRandom rnd = new SplittableRandom(seed);
+        for (int i = n - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = ids[i]; ids[i] = ids[j]; ids[j] = t;
+        }
+        return ids;
+    }
+
+    // One Louvain level: a weighted graph whose nodes are the communities of the level below.
+    // self[v] is the weight inside node v (both directions); rows hold no self-loops. The first
+    // level reads the graph's rows and weights in place (they may be off-heap); coarser levels
+    // are built on the heap, with long weights.
+    private static final class Level {
+        final int n;
+        final IntArray offsets, targets;
+        private final IntArray userWeights; // first level only
+        private final long[] weights;       // coarser levels
+        final long[] self, strength;
+        final long totalWeight; // 2m: sum of strengths
+
+        Level(IntArray offsets, IntArray targets, IntArray userWeights, long[] weights, long[] self) {
+            this.n = offsets.length() - 1;
+            this.offsets = offsets;
+            this.targets = targets;
+            this.userWeights = userWeights;
+            this.weights = weights;
+            this.self = self;
+            this.strength = new long[n];
+            IntStream.range(0, n).parallel().forEach(v -> {
+                long s = self[v];
+                for (int e = offsets.get(v), end = offsets.get(v + 1); e < end; e++) s += weight(e);
+                strength[v] = s;
+            });
+            long total = 0;
+            for (long s : strength) total += s;
+            this.totalWeight = total;
+        }
+
+        static Level of(CompactGraph g) {
+            return new Level(g.offsets(), g.targets(), g.weights(), null, new long[g.size()]);
+        }
+
+        long weight(int e) {
+            return weights != null ? weights[e] : Math.max(0, userWeights.get(e)); // bad weights count as no edge
+        }
+
+        double modularity(int[] comm) {
+            if (totalWeight == 0) return 0.0;
+            double inside = IntStream.range(0, n).parallel().mapToDouble(v -> {
+                long s = self[v];
+                for (int e = offsets.get(v), end = offsets.get(v + 1); e < end; e++) {
+                    if (comm[targets.get(e)] == comm[v]) s += weight(e);
+                }
+                return s;
+            }).sum();
+            double[] tot = new double[n];
+            for (int v = 0; v < n; v++) tot[comm[v]] += strength[v];
+            double squares = 0;
+            for (double t : tot) squares += t * t;
+            double m2 = totalWeight;
+            return inside / m2 - squares / (m2 * m2);
+        }
+
+        // parallel local moving; returns each node's community (a node id)
+        int[] moveNodes() {
+            int[] comm = identity(n);
+            AtomicLongArray tot = new AtomicLongArray(strength);
+            AtomicIntegerArray size = new AtomicIntegerArray(n);
+            for (int v = 0; v < n; v++) size.set(v, 1);
+            double q = modularity(comm);
+            for (int pass = 0; pass < MAX_PASSES; pass++) {
+                int moved = IntStream.range(0, n).parallel()
+                        .map(v -> LOCAL.get().move(this, comm, tot, size, v) ? 1 : 0)
+                        .sum();
+                if (moved == 0) break;
+                double next = modularity(comm);
+                if (next - q < MIN_GAIN) break;
+                q = next;
+            }
+            return comm;
+        }
+
+        // one node per community, summing the weights between communities
+        Level aggregate(int[] comm, int count) {
+            int[] memberStart = new int[count + 1];
+            for (int v = 0; v < n; v++) memberStart[comm[v] + 1]++;
+            for (int c = 0; c < count; c++) memberStart[c + 1] += memberStart[c];
+            int[] members = new int[n];
+            int[] fill = Arrays.copyOf(memberStart, count);
+            for (int v = 0; v < n; v++) members[fill[comm[v]]++] = v;
+
+            int[][] rowTargets = new int[count][];
+            long[][] rowWeights = new long[count][];
+            long[] inside = new long[count];
+            IntStream.range(0, count).parallel().forEach(c ->
+                    LOCAL.get().collapse(this, comm, members, memberStart[c], memberStart[c + 1], c,
+                            rowTargets, rowWeights, inside));
+            int[] offsets = new int[count + 1];
+            for (int c = 0; c < count; c++) offsets[c + 1] = offsets[c] + rowTargets[c].length;
+            int[] targets = new int[offsets[count]];
+            long[] weights = new long[offsets[count]];
+            for (int c = 0; c < count; c++) {
+                System.arraycopy(rowTargets[c], 0, targets, offsets[c], rowTargets[c].length);
+                System.arraycopy(rowWeights[c], 0, weights, offsets[c], rowWeights[c].length);
+            }
+            return new Level(IntArray.wrap(offsets), IntArray.wrap(targets), null, weights, inside);
+        }
+    }
+
+    // per-thread tallies of weight by label or community; valid only when stamped with the epoch
+    private static final class Scratch {
+        private double[] weight = new double[0];
+        private int[] stamp = new int[0];
+        private int[] keys = new int[0];
+        private int epoch, count;
+
+        private void reset(int n) {
+            if (n > stamp.length) {
+                weight = new double[n];
+                stamp = new int[n];
+                keys = new int[n];
+                epoch = 0;
+            }
+            count = 0;
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(stamp, 0);
+                epoch = 1;
+            }
+        }
+
+        private void add(int key, double w) {
+            if (stamp[key] != epoch) {
+                stamp[key] = epoch;
+                weight[key] = 0;
+                keys[count++] = key;
+            }
+            weight[key] += w;
+        }
+
+        private double get(int key) {
+            return stamp[key] == epoch ? weight[key] : 0;
+        }
+
+        // adopt the heaviest label among v's friends; keep the current one on a tie
+        boolean relabel(IntArray offsets, IntArray targets, IntArray weights, int[] labels, int v) {
+            int begin = offsets.get(v), end = offsets.get(v + 1);
+            if (begin == end) return false;
+            reset(labels.length);
+            for (int e = begin; e < end; e++) {
+                int w = weights.get(e);
+                if (w > 0) add(labels[targets.get(e)], w);
+            }
+            int current = labels[v], best = current;
+            double bestWeight = get(current);
+            for (int i = 0; i < count; i++) {
+                int label = keys[i];
+                double w = weight[label];
+                if (w > bestWeight || (w == bestWeight && best != current && label < best)) {
+                    best = label;
+                    bestWeight = w;
+                }
+            }
+            if (best == current) return false;
+            labels[v] = best;
+            return true;
+        }
+
+        // Louvain move of node v to the neighbouring community with the best modularity gain
+        // (weight to it minus tot * strength / 2m, computed as if v had already left its own)
+        boolean move(Level level, int[] comm, AtomicLongArray tot, AtomicIntegerArray size, int v) {
+            reset(level.n);
+            for (int e = level.offsets.get(v), end = level.offsets.get(v + 1); e < end; e++) {
+                long w = level.weight(e);
+                if (w > 0) add(comm[level.targets.get(e)], w);
+            }
+            int current = comm[v];
+            double k = level.strength[v], m2 = level.totalWeight;
+            double bestGain = get(current) - (tot.get(current) - k) * k / m2;
+            int best = current;
+            for (int i = 0; i < count; i++) {
+                int c = keys[i];
+                if (c == current) continue;
+                double gain = weight[c] - tot.get(c) * k / m2;
+                if (gain > bestGain || (gain == bestGain && best != current && c < best)) {
+                    best = c;
+                    bestGain = gain;
+                }
+            }
+            if (best == current) return false;
+            // two singletons swapping into each other's community would undo each other
+            if (size.get(current) == 1 && size.get(best) == 1 && best > current) return false;
+            comm[v] = best;
+            tot.addAndGet(current, -level.strength[v]);
+            tot.addAndGet(best, level.strength[v]);
+            size.decrementAndGet(current);
+            size.incrementAndGet(best);
+            return true;
+        }
+
+        // row of community c in the next level, from its members [from, to)
+        void collapse(Level level, int[] comm, int[] members, int from, int to, int c,
+                      int[][] rowTargets, long[][] rowWeights, long[] inside) {
+            reset(level.n);
+            long self = 0;
+            for (int i = from; i < to; i++) {
+                int v = members[i];
+                self += level.self[v];
+                for (int e = level.offsets.get(v), end = level.offsets.get(v + 1); e < end; e++) {
+                    int d = comm[level.targets.get(e)];
+                    if (d == c) self += level.weight(e);
+                    else add(d, level.weight(e));
+                }
+            }
+            int[] row = Arrays.copyOf(keys, count);
+            Arrays.sort(row);
+            long[] w = new long[count];
+            for (int i = 0; i < count; i++) w[i] = (long) weight[row[i]];
+            rowTargets[c] = row;
+            rowWeights[c] = w;
+            inside[c] = self;
+        }
+    }
+}
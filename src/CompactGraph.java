@@ -0,0 +1,289 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Immutable compressed-sparse-row friendship graph.
+// Row u holds the friends of user id u in [offsets[u], offsets[u + 1]), sorted by id.
+// The arrays are IntArrays, so they may live on the heap or in a memory-mapped snapshot.
+// High-degree rows of heap graphs also get a bitmap over all user ids for O(1) membership tests.
+// A graph may also be a view: the CSR plus a RowOverlay of rows rewritten since it was built
+// (see patch). Views answer every row query, and edge indices past the CSR's address the
+// overlay; only the in-place readers of the arrays (offsets(), targets(), weights()) need a
+// compacted graph.
+public class CompactGraph {
+    // a row gets a bitmap once the bitmap (n / 8 bytes) is no bigger than the sorted row itself
+    static final int MIN_BITMAP_DEGREE = 64;
+    private static final int PARALLEL_SORT_EDGES = 1 << 16;
+
+    private final UserIndex index;
+    private final IntArray offsets;
+    private final IntArray targets;
+    private final IntArray weights;
+    private final long totalWeight;
+    private final long[][] bitmaps; // null for rows kept only as sorted arrays
+    private final RowOverlay overlay; // null for a plain CSR
+    private final int baseEntries; // row entries in the CSR; edge indices from here on are the overlay's
+
+    CompactGraph(UserIndex index, int[] offsets, int[] targets, int[] weights) {
+        this(index, IntArray.wrap(offsets), IntArray.wrap(targets), IntArray.wrap(weights), sum(weights) / 2, true);
+    }
+
+    CompactGraph(UserIndex index, IntArray offsets, IntArray targets, IntArray weights,
+                 long totalWeight, boolean withBitmaps) {
+        this.index = index;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.totalWeight = totalWeight;
+        this.overlay = null;
+        this.baseEntries = targets.length();
+        this.bitmaps = withBitmaps ? buildBitmaps() : null;
+    }
+
+    // the CSR and bitmaps of g over another name table (e.g. a frozen copy for concurrent
+    // readers) and overlay
+    private CompactGraph(CompactGraph g, UserIndex index, RowOverlay overlay) {
+        this.index = index;
+        this.offsets = g.offsets;
+        this.targets = g.targets;
+        this.weights = g.weights;
+        this.totalWeight = g.totalWeight;
+        this.bitmaps = g.bitmaps;
+        this.overlay = overlay;
+        this.baseEntries = g.baseEntries;
+    }
+
+    CompactGraph withIndex(UserIndex index) {
+        return new CompactGraph(this, index, overlay);
+    }
+
+    // View over index with the friendships in added and removed (none in removed may be added)
+    // applied: only the rows they touch are rewritten, in O(their degrees), on top of this
+    // graph's overlay, and this graph is left as it was. Users beyond the CSR get empty rows.
+    CompactGraph patch(UserIndex index, EdgeBuffer added, EdgeBuffer removed) {
+        long[] entries = added.sortedEntries();
+        int[] w = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) w[i] = added.weightOf((int) (entries[i] >>> 32), (int) entries[i]);
+        return new CompactGraph(this, index, RowOverlay.patch(this, overlay, index.size(), entries, w, removed.sortedEntries()));
+    }
+
+    // This CSR, compacted from captured, carrying the rows live was patched with since: a view
+    // with the same rows as live, over live's names
+    CompactGraph carrying(CompactGraph live, CompactGraph captured) {
+        if (live.overlay == null) return withIndex(live.index);
+        return new CompactGraph(this, live.index, RowOverlay.carry(live.overlay, captured.overlay));
+    }
+
+    // true if both are views of (or are) the same CSR
+    boolean sameBase(CompactGraph other) {
+        return targets == other.targets;
+    }
+
+    boolean isCompact() {
+        return overlay == null;
+    }
+
+    // arena entries of the overlay, replaced rows included: what compacting would reclaim
+    int overlayEntries() {
+        return overlay == null ? 0 : overlay.used;
+    }
+
+    private static long sum(int[] values) {
+        long sum = 0;
+        for (int v : values) sum += v;
+        return sum;
+    }
+
+    private long[][] buildBitmaps() {
+        int n = size();
+        long[][] maps = null;
+        for (int u = 0; u < n; u++) {
+            int deg = degree(u);
+            if (deg < MIN_BITMAP_DEGREE || (long) deg * 32 < n) continue;
+            if (maps == null) maps = new long[n][];
+            long[] bits = new long[(n + 63) >>> 6];
+            for (int e = begin(u); e < end(u); e++) bits[target(e) >>> 6] |= 1L << target(e);
+            maps[u] = bits;
+        }
+        return maps;
+    }
+
+    public static CompactGraph empty() {
+        return new CompactGraph(new UserIndex(1), new int[1], new int[0], new int[0]);
+    }
+
+    public int size() { return overlay != null ? overlay.size : offsets.length() - 1; }
+    public int edgeCount() { return (int) ((overlay != null ? overlay.edgeEntries : baseEntries) / 2); }
+    public long totalWeight() { return overlay != null ? overlay.totalWeight : totalWeight; }
+
+    // the index may be the live table, which also knows users added after this graph was built
+    public int idOf(String username) {
+        int id = index.idOf(username);
+        return id < size() ? id : -1;
+    }
+
+    public String nameOf(int id) { return index.nameOf(id); }
+
+    UserIndex index() { return index; }
+    IntArray offsets() { return compactOnly(offsets); }
+    IntArray targets() { return compactOnly(targets); }
+    IntArray weights() { return compactOnly(weights); }
+
+    private IntArray compactOnly(IntArray a) {
+        if (overlay != null) throw new IllegalStateException("a view's rows are not all in its arrays; compact it first");
+        return a;
+    }
+
+    // the CSR's users: beyond them, a row is the overlay's or empty
+    private int baseSize() {
+        return offsets.length() - 1;
+    }
+
+    public int degree(int u) {
+        if (overlay != null) {
+            long row = overlay.row(u);
+            if (row != 0) return RowOverlay.length(row);
+        }
+        if (u >= baseSize()) return 0; // added to a patched graph, or not yet folded in
+        return offsets.get(u + 1) - offsets.get(u);
+    }
+
+    public int begin(int u) {
+        if (overlay != null) {
+            long row = overlay.row(u);
+            if (row != 0) return baseEntries + RowOverlay.start(row);
+        }
+        if (u >= baseSize()) return 0; // added to a patched graph, or not yet folded in
+        return offsets.get(u);
+    }
+
+    public int end(int u) {
+        if (overlay != null) {
+            long row = overlay.row(u);
+            if (row != 0) return baseEntries + RowOverlay.start(row) + RowOverlay.length(row);
+        }
+        if (u >= baseSize()) return 0; // added to a patched graph, or not yet folded in
+        return offsets.get(u + 1);
+    }
+
+    public int target(int edge) { return edge < baseEntries ? targets.get(edge) : overlay.targets[edge - baseEntries]; }
+    public int weight(int edge) { return edge < baseEntries ? weights.get(edge) : overlay.weights[edge - baseEntries]; }
+
+    // weight of edge u-v, or 0 if they are not friends
+    public int weight(int u, int v) {
+        int e = find(u, v);
+        return e >= 0 ? weight(e) : 0;
+    }
+
+    // edge index of u-v, or a negative value if they are not friends
+    private int find(int u, int v) {
+        int b = begin(u), e = end(u);
+        if (overlay != null && b >= baseEntries) {
+            int i = Arrays.binarySearch(overlay.targets, b - baseEntries, e - baseEntries, v);
+            return i >= 0 ? baseEntries + i : -1;
+        }
+        return targets.binarySearch(b, e, v);
+    }
+
+    // rows rewritten by the overlay have no bitmap
+    public boolean hasBitmap(int u) {
+        return bitmaps != null && u < bitmaps.length && bitmaps[u] != null && (overlay == null || overlay.row(u) == 0);
+    }
+
+    // bitmap row of u; only valid when hasBitmap(u)
+    long[] bitmap(int u) {
+        return bitmaps[u];
+    }
+
+    public boolean hasEdge(int u, int v) {
+        if (u < 0 || v < 0 || u >= size() || v >= size()) return false;
+        if (hasBitmap(u)) return v < baseSize() && (bitmaps[u][v >>> 6] & (1L << v)) != 0;
+        return find(u, v) >= 0;
+    }
+
+    // New CSR over every user in index (kept, not copied): the rows of base plus the buffered
+    // edges (both directions)
+    public static CompactGraph merge(CompactGraph base, UserIndex index, EdgeBuffer added) {
+        return merge(base, index, added.from, added.to, added.weights, added.size());
+    }
+
+    // same, for count new edges given as parallel arrays; none of them may already be in base
+    static CompactGraph merge(CompactGraph base, UserIndex index, int[] from, int[] to, int[] w, int count) {
+        return merge(base, index, from, to, w, count, new long[0], null);
+    }
+
+    // Same, also dropping the base edges in removed (both directions, u << 32 | v, sorted) and,
+    // when newId is given, renumbering base user u to newId[u] (-1: dropped, with no edges left;
+    // order is kept). The new edges and index already use the new ids.
+    static CompactGraph merge(CompactGraph base, UserIndex index, int[] from, int[] to, int[] w, int count,
+                              long[] removed, int[] newId) {
+        int n = index.size();
+        int baseN = base.size();
+        int[] offsets = new int[n + 1];
+        for (int u = 0, r = 0; u < baseN; u++) {
+            int dropped = 0;
+            for (; r < removed.length && (int) (removed[r] >>> 32) == u; r++) dropped++;
+            int v = newId == null ? u : newId[u];
+            if (v >= 0) offsets[v + 1] = base.degree(u) - dropped;
+        }
+        for (int i = 0; i < count; i++) {
+            offsets[from[i] + 1]++;
+            offsets[to[i] + 1]++;
+        }
+        for (int u = 0; u < n; u++) offsets[u + 1] += offsets[u];
+
+        int[] targets = new int[offsets[n]];
+        int[] weights = new int[offsets[n]];
+        int[] fill = new int[n];
+        for (int u = 0, r = 0; u < baseN; u++) {
+            int v = newId == null ? u : newId[u];
+            while (r < removed.length && (int) (removed[r] >>> 32) < u) r++;
+            if (newId == null && (r == removed.length || (int) (removed[r] >>> 32) != u)) {
+                fill[u] = base.copyRow(u, targets, weights, offsets[u]);
+                continue;
+            }
+            // skip the removed entries, both rows being sorted by target; renumbering keeps the order
+            for (int e = base.begin(u); e < base.end(u); e++) {
+                int t = base.target(e);
+                while (r < removed.length && removed[r] < ((long) u << 32 | t)) r++;
+                if (r < removed.length && removed[r] == ((long) u << 32 | t)) continue;
+                targets[offsets[v] + fill[v]] = newId == null ? t : newId[t];
+                weights[offsets[v] + fill[v]++] = base.weight(e);
+            }
+        }
+        boolean[] touched = new boolean[n];
+        for (int i = 0; i < count; i++) {
+            int u = from[i], v = to[i];
+            targets[offsets[u] + fill[u]] = v; weights[offsets[u] + fill[u]++] = w[i];
+            targets[offsets[v] + fill[v]] = u; weights[offsets[v] + fill[v]++] = w[i];
+            touched[u] = true; touched[v] = true;
+        }
+        IntStream rows = IntStream.range(0, n).filter(u -> touched[u]);
+        if (count > PARALLEL_SORT_EDGES) rows = rows.parallel();
+        rows.forEach(u -> sortRow(targets, weights, offsets[u], offsets[u + 1]));
+        return new CompactGraph(index, offsets, targets, weights);
+    }
+
+    // copies row u into targets and weights from at; returns its length
+    private int copyRow(int u, int[] targets, int[] weights, int at) {
+        int b = begin(u), len = end(u) - b;
+        if (overlay != null && b >= baseEntries) {
+            System.arraycopy(overlay.targets, b - baseEntries, targets, at, len);
+            System.arraycopy(overlay.weights, b - baseEntries, weights, at, len);
+        } else {
+            this.targets.copyTo(b, targets, at, len);
+            this.weights.copyTo(b, weights, at, len);
+        }
+        return len;
+    }
+
+    // sort one row by target id, carrying weights along (both are non-negative ints)
+    private static void sortRow(int[] targets, int[] weights, int from, int to) {
+        long[] packed = new long[to - from];
+        for (int e = from; e < to; e++) packed[e - from] = ((long) targets[e] << 32) | weights[e];
+        Arrays.sort(packed);
+        for (int e = from; e < to; e++) {
+            targets[e] = (int) (packed[e - from] >>> 32);
+            weights[e] = (int) packed[e - from];
+        }
+    }
+}
@@ -0,0 +1,321 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+// Connected components of the users, kept in step with every change so connectivity and
+// component stats never need a traversal. Every user carries its component's slot and sits in
+// that component's circular member list; a union relabels the smaller component (O(log n)
+// relabels per user overall), and a split, after a removal disconnected a component, relabels
+// the side that was cut off.
+public class ConnectivityIndex {
+    private int[] slot = new int[16]; // component slot of each user, -1 once retired
+    private int[] next = new int[16], prev = new int[16]; // member lists; null in read-only copies
+    private int[] rep = new int[16];  // per slot: a member, reported as the component's root
+    private int[] size = new int[16]; // per slot
+    private int[] free = new int[16]; // unused slots below slots
+    private int freeCount, slots;
+    private int users;
+    private int components;
+    private final TreeMap<Integer, Integer> sizeCounts = new TreeMap<>(); // component size -> how many
+
+    // registers the next user id as a singleton component
+    public void addUser() {
+        if (users == slot.length) {
+            slot = Arrays.copyOf(slot, users * 2);
+            next = Arrays.copyOf(next, users * 2);
+            prev = Arrays.copyOf(prev, users * 2);
+        }
+        int s = newSlot();
+        slot[users] = s;
+        next[users] = prev[users] = users;
+        rep[s] = users;
+        size[s] = 1;
+        users++;
+        components++;
+        sizeCounts.merge(1, 1, Integer::sum);
+    }
+
+    // registers users 0..n-1 of an empty index, given each one's component root (e.g. from a snapshot)
+    public void loadComponents(IntArray roots) {
+        int n = roots.length();
+        int cap = Math.max(16, n);
+        slot = new int[cap];
+        next = new int[cap];
+        prev = new int[cap];
+        rep = new int[cap];
+        size = new int[cap];
+        free = new int[cap];
+        freeCount = 0;
+        slots = n;
+        for (int u = 0; u < n; u++) next[u] = prev[u] = u;
+        for (int u = 0; u < n; u++) {
+            int root = roots.get(u); // the root's id doubles as the slot
+            slot[u] = root;
+            rep[root] = root;
+            size[root]++;
+            if (u != root) link(root, u);
+        }
+        users = n;
+        components = 0;
+        sizeCounts.clear();
+        for (int u = n - 1; u >= 0; u--) {
+            if (roots.get(u) != u) free[freeCount++] = u;
+            else {
+                components++;
+                sizeCounts.merge(size[u], 1, Integer::sum);
+            }
+        }
+    }
+
+    // read-only copy (no member lists) that any number of threads can query
+    ConnectivityIndex copy() {
+        ConnectivityIndex c = new ConnectivityIndex();
+        c.slot = Arrays.copyOf(slot, users);
+        c.next = c.prev = c.free = null;
+        c.rep = Arrays.copyOf(rep, slots);
+        c.size = Arrays.copyOf(size, slots);
+        c.slots = slots;
+        c.users = users;
+        c.components = components;
+        c.sizeCounts.putAll(sizeCounts);
+        return c;
+    }
+
+    // a member standing for u's component (stable until the component changes), -1 once retired
+    public int find(int u) {
+        int s = slot[u];
+        return s < 0 ? -1 : rep[s];
+    }
+
+    // returns false if u and v were already in the same component
+    public boolean union(int u, int v) {
+        int a = slot[u], b = slot[v];
+        if (a == b) return false;
+        if (size[a] < size[b]) { int t = a; a = b; b = t; }
+        int first = rep[b], x = first;
+        do {
+            slot[x] = a;
+            x = next[x];
+        } while (x != first);
+        // splice b's list into a's after its rep
+        int ra = rep[a], after = next[ra], last = prev[first];
+        next[ra] = first; prev[first] = ra;
+        next[last] = after; prev[after] = last;
+        removeSize(size[a]);
+        removeSize(size[b]);
+        size[a] += size[b];
+        sizeCounts.merge(size[a], 1, Integer::sum);
+        freeSlot(b);
+        components--;
+        return true;
+    }
+
+    // Moves members[0..count) out of their component, which must contain them and stay, into a
+    // component of their own: a removal has cut them off from the rest.
+    void split(int[] members, int count, int stay) {
+        int old = slot[stay], s = newSlot();
+        for (int i = 0; i < count; i++) {
+            int x = members[i];
+            unlink(x);
+            slot[x] = s;
+            if (i == 0) next[x] = prev[x] = x;
+            else link(members[0], x);
+        }
+        if (slot[rep[old]] != old) rep[old] = stay;
+        rep[s] = members[0];
+        removeSize(size[old]);
+        size[old] -= count;
+        size[s] = count;
+        sizeCounts.merge(size[old], 1, Integer::sum);
+        sizeCounts.merge(count, 1, Integer::sum);
+        components++;
+    }
+
+    // Applies removed friendships cuts[0..count) (u << 32 | v, in the order they were made) given
+    // g, the graph without them, where user u is newId[u] (null: same ids). Cut i is undone on g
+    // plus the cuts made after it, whose components this index holds exactly: a search from both
+    // endpoints, always growing the side that has scanned fewer friendships, either meets (still
+    // connected) or runs out on one side, which is then cut off. So the work is bounded by the
+    // smaller side, never the whole component. (Any order of the cuts would do.) A batch so big
+    // that the searches scan more than the whole graph falls back to relabelling every user.
+    void applyRemovals(CompactGraph g, int[] newId, long[] cuts, int count) {
+        int[] oldId = null;
+        if (newId != null) {
+            oldId = new int[g.size()];
+            for (int u = 0; u < newId.length; u++) if (newId[u] >= 0) oldId[newId[u]] = u;
+        }
+        // both directions of every cut, by endpoint: endpoint << 32 | cut index
+        long[] incident = new long[2 * count];
+        for (int i = 0; i < count; i++) {
+            incident[2 * i] = (cuts[i] >>> 32) << 32 | i;
+            incident[2 * i + 1] = cuts[i] << 32 | i;
+        }
+        Arrays.sort(incident);
+        long budget = 2L * g.edgeCount() + g.size(), work = 0;
+        for (int i = 0; i < count; i++) {
+            if (work > budget) {
+                relabel(g, newId);
+                return;
+            }
+            int a = (int) (cuts[i] >>> 32), b = (int) cuts[i];
+            if (g.hasEdge(mapped(newId, a), mapped(newId, b))) continue; // made again since
+            SearchLabels from = SearchLabels.get(0, users), to = SearchLabels.get(1, users);
+            from.visit(a, 0, -1);
+            to.visit(b, 0, -1);
+            long scannedFrom = 0, scannedTo = 0;
+            while (true) {
+                if (from.head == from.tail) { split(from.queue, from.tail, b); break; }
+                if (to.head == to.tail) { split(to.queue, to.tail, a); break; }
+                // grow the side that will have scanned less after its next user
+                boolean forward = scannedFrom + degree(g, newId, from.queue[from.head])
+                        <= scannedTo + degree(g, newId, to.queue[to.head]);
+                SearchLabels side = forward ? from : to;
+                long scanned = expand(g, newId, oldId, cuts, incident, i, side, forward ? to : from);
+                if (scanned < 0) break;
+                if (forward) scannedFrom += scanned;
+                else scannedTo += scanned;
+            }
+            work += scannedFrom + scannedTo;
+        }
+    }
+
+    // components from scratch: one BFS per component of g, removed users left alone
+    private void relabel(CompactGraph g, int[] newId) {
+        int n = g.size();
+        int[] root = new int[n]; // by new id
+        Arrays.fill(root, -1);
+        SearchLabels labels = SearchLabels.get(0, n);
+        for (int s = 0; s < n; s++) {
+            if (root[s] >= 0) continue;
+            labels.visit(s, 0, -1);
+            while (labels.head < labels.tail) {
+                int x = labels.queue[labels.head++];
+                root[x] = s;
+                for (int e = g.begin(x); e < g.end(x); e++) if (!labels.reached(g.target(e))) labels.visit(g.target(e), 0, x);
+            }
+        }
+        int[] roots = new int[users]; // by old id
+        int[] oldId = new int[n];
+        for (int u = 0; u < users; u++) if (mapped(newId, u) >= 0) oldId[mapped(newId, u)] = u;
+        for (int u = 0; u < users; u++) roots[u] = mapped(newId, u) < 0 ? u : oldId[root[mapped(newId, u)]];
+        boolean[] retired = new boolean[users]; // removed users stay out, alone as they are in g
+        for (int u = 0; u < users; u++) retired[u] = slot[u] < 0;
+        loadComponents(IntArray.wrap(roots));
+        for (int u = 0; u < retired.length; u++) if (retired[u]) retire(u);
+    }
+
+    private static int degree(CompactGraph g, int[] newId, int u) {
+        int v = mapped(newId, u);
+        return v < 0 ? 0 : g.degree(v);
+    }
+
+    // labels the new friends of the next user in side's queue; -1 once one is labelled by other
+    private static long expand(CompactGraph g, int[] newId, int[] oldId, long[] cuts, long[] incident, int i,
+                               SearchLabels side, SearchLabels other) {
+        int x = side.queue[side.head++], nx = mapped(newId, x);
+        long scanned = 0;
+        if (nx >= 0) {
+            for (int e = g.begin(nx); e < g.end(nx); e++, scanned++) {
+                int y = oldId == null ? g.target(e) : oldId[g.target(e)];
+                if (other.reached(y)) return -1;
+                if (!side.reached(y)) side.visit(y, 0, x);
+            }
+        }
+        // the cuts made after cut i are still friendships here
+        int k = Arrays.binarySearch(incident, (long) x << 32 | (i + 1));
+        for (k = k < 0 ? -k - 1 : k; k < incident.length && (int) (incident[k] >>> 32) == x; k++, scanned++) {
+            long cut = cuts[(int) incident[k]];
+            int y = (int) (cut >>> 32) == x ? (int) cut : (int) (cut >>> 32);
+            if (other.reached(y)) return -1;
+            if (!side.reached(y)) side.visit(y, 0, x);
+        }
+        return scanned;
+    }
+
+    private static int mapped(int[] newId, int u) {
+        return newId == null ? u : newId[u];
+    }
+
+    // drops a removed user, which must be alone in its component
+    void retire(int u) {
+        int s = slot[u];
+        if (s < 0) return;
+        slot[u] = -1;
+        removeSize(size[s]);
+        freeSlot(s);
+        components--;
+    }
+
+    // Renumbers the users after retired ones were dropped: newId[u] is u's new id (-1 for
+    // retired users) and n the number of users left; relative order must be kept.
+    void renumber(int[] newId, int n) {
+        int cap = Math.max(16, n);
+        int[] slot2 = new int[cap], next2 = new int[cap], prev2 = new int[cap];
+        for (int u = 0; u < users; u++) {
+            int v = newId[u];
+            if (v < 0) continue;
+            slot2[v] = slot[u];
+            next2[v] = newId[next[u]];
+            prev2[v] = newId[prev[u]];
+        }
+        for (int s = 0; s < slots; s++) if (size[s] > 0) rep[s] = newId[rep[s]];
+        slot = slot2;
+        next = next2;
+        prev = prev2;
+        users = n;
+    }
+
+    public boolean connected(int u, int v) {
+        int a = slot[u];
+        return a >= 0 && a == slot[v];
+    }
+
+    public int componentSize(int u) {
+        int s = slot[u];
+        return s < 0 ? 0 : size[s];
+    }
+
+    public int componentCount() {
+        return components;
+    }
+
+    public int largestComponentSize() {
+        return sizeCounts.isEmpty() ? 0 : sizeCounts.lastKey();
+    }
+
+    public SortedMap<Integer, Integer> componentSizeCounts() {
+        return Collections.unmodifiableSortedMap(sizeCounts);
+    }
+
+    private int newSlot() {
+        if (freeCount > 0) return free[--freeCount];
+        if (slots == rep.length) {
+            rep = Arrays.copyOf(rep, slots * 2);
+            size = Arrays.copyOf(size, slots * 2);
+            free = Arrays.copyOf(free, slots * 2);
+        }
+        return slots++;
+    }
+
+    private void freeSlot(int s) {
+        size[s] = 0;
+        free[freeCount++] = s;
+    }
+
+    // inserts x into the member list after at
+    private void link(int at, int x) {
+        int after = next[at];
+        next[at] = x; prev[x] = at;
+        next[x] = after; prev[after] = x;
+    }
+
+    private void unlink(int x) {
+        next[prev[x]] = next[x];
+        prev[next[x]] = prev[x];
+    }
+
+    private void removeSize(int s) {
+        if (sizeCounts.merge(s, -1, Integer::sum) == 0) sizeCounts.remove(s);
+    }
+}
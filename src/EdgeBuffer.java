@@ -0,0 +1,74 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Friendships added since the graph was last patched or built, folded in by CompactGraph.patch
+// or CompactGraph.merge (SocialNetwork also keeps one for the friendships removed since)
+public class EdgeBuffer {
+    int[] from = new int[16];
+    int[] to = new int[16];
+    int[] weights = new int[16];
+    private int size;
+    private final Map<Long, Integer> slots = new HashMap<>(); // key -> index
+
+    public void add(int u, int v, int weight) {
+        if (size == from.length) {
+            from = Arrays.copyOf(from, size * 2);
+            to = Arrays.copyOf(to, size * 2);
+            weights = Arrays.copyOf(weights, size * 2);
+        }
+        from[size] = u; to[size] = v; weights[size] = weight;
+        slots.put(key(u, v), size);
+        size++;
+    }
+
+    public boolean contains(int u, int v) {
+        return size > 0 && slots.containsKey(key(u, v));
+    }
+
+    // removes edge u-v, moving the last edge into its place; returns its weight, or 0 if absent
+    public int remove(int u, int v) {
+        Integer i = size == 0 ? null : slots.remove(key(u, v));
+        if (i == null) return 0;
+        int weight = weights[i];
+        size--;
+        if (i != size) {
+            from[i] = from[size]; to[i] = to[size]; weights[i] = weights[size];
+            slots.put(key(from[i], to[i]), i);
+        }
+        return weight;
+    }
+
+    // weight of edge u-v, or 0 if absent
+    public int weightOf(int u, int v) {
+        Integer i = size == 0 ? null : slots.get(key(u, v));
+        return i == null ? 0 : weights[i];
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public int from(int i) { return from[i]; }
+    public int to(int i) { return to[i]; }
+    public int weight(int i) { return weights[i]; }
+
+    public void clear() {
+        size = 0;
+        slots.clear();
+    }
+
+    // both directions of every edge, u << 32 | v, sorted: rows in order, each row by target
+    long[] sortedEntries() {
+        long[] entries = new long[2 * size];
+        for (int i = 0; i < size; i++) {
+            entries[2 * i] = (long) from[i] << 32 | to[i];
+            entries[2 * i + 1] = (long) to[i] << 32 | from[i];
+        }
+        Arrays.sort(entries);
+        return entries;
+    }
+
+    // undirected key: smaller id in the high half
+    static long key(int u, int v) {
+        return u < v ? ((long) u << 32) | v : ((long) v << 32) | u;
+    }
+}
@@ -0,0 +1,140 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+// Ranked friend-of-a-friend suggestions.
+// A candidate scores one point per mutual friend; ties are broken by the summed strength of the
+// two-hop links (the weaker weight of each user-friend-candidate chain), then by user id.
+public class FriendSuggestions {
+    private static final ThreadLocal<FriendSuggestions> LOCAL = ThreadLocal.withInitial(FriendSuggestions::new);
+
+    private int[] mutual = new int[0];
+    private long[] strength = new long[0];
+    private int[] stamp = new int[0];
+    private int[] touched = new int[0];
+    private int epoch;
+
+    // top k suggestions for one user, best first
+    public static List<String> topK(String username, int k, CompactGraph g) {
+        if (username == null || k <= 0) return new ArrayList<>();
+        int u = g.idOf(User.sanitizeUsername(username));
+        if (u < 0) return new ArrayList<>();
+        return LOCAL.get().rank(g, u, k, null);
+    }
+
+    // same, keeping only candidates in u's community; the communities may have been detected on
+    // an earlier graph, and users are matched to them by name
+    public static List<String> topKInCommunity(String username, int k, CompactGraph g, Communities.Result communities) {
+        if (username == null || k <= 0) return new ArrayList<>();
+        int u = g.idOf(User.sanitizeUsername(username));
+        if (u < 0 || communities.communityOf(g, u) < 0) return new ArrayList<>();
+        return LOCAL.get().rank(g, u, k, communities);
+    }
+
+    // top k suggestions for each listed user, scored in parallel; unknown users are skipped
+    public static Map<String, List<String>> topKBatch(Collection<String> usernames, int k, CompactGraph g) {
+        Map<String, List<String>> result = new ConcurrentHashMap<>();
+        usernames.parallelStream().forEach(name -> {
+            int u = g.idOf(User.sanitizeUsername(name));
+            if (u >= 0) result.put(g.nameOf(u), LOCAL.get().rank(g, u, k, null));
+        });
+        return result;
+    }
+
+    // top k suggestions for every user in the network
+    public static Map<String, List<String>> topKForAll(int k, CompactGraph g) {
+        Map<String, List<String>> result = new ConcurrentHashMap<>();
+        IntStream.range(0, g.size()).parallel()
+                .forEach(u -> result.put(g.nameOf(u), LOCAL.get().rank(g, u, k, null)));
+        return result;
+    }
+
+    // communities, if not null, drops candidates outside u's community (or newer than it)
+    private List<String> rank(CompactGraph g, int u, int k, Communities.Result communities) {
+        reset(g.size());
+        int count = 0;
+
+        // accumulate scores over friend-of-a-friend paths into the primitive arrays
+        for (int e = g.begin(u); e < g.end(u); e++) {
+            int friend = g.target(e);
+            int w1 = g.weight(e);
+            for (int f = g.begin(friend); f < g.end(friend); f++) {
+                int foaf = g.target(f);
+                if (foaf == u) continue;
+                if (stamp[foaf] != epoch) {
+                    stamp[foaf] = epoch;
+                    mutual[foaf] = 0;
+                    strength[foaf] = 0;
+                    touched[count++] = foaf;
+                }
+                mutual[foaf]++;
+                strength[foaf] += Math.min(w1, g.weight(f));
+            }
+        }
+
+        // bounded min-heap of the k best candidates that are not already friends
+        int[] heap = new int[Math.min(k, count)];
+        int size = 0;
+        int home = communities == null ? -1 : communities.communityOf(g, u);
+        for (int i = 0; i < count; i++) {
+            int c = touched[i];
+            if (g.hasEdge(u, c)) continue;
+            if (communities != null && communities.communityOf(g, c) != home) continue;
+            if (size < heap.length) {
+                heap[size++] = c;
+                siftUp(heap, size - 1);
+            } else if (size > 0 && better(c, heap[0])) {
+                heap[0] = c;
+                siftDown(heap, size);
+            }
+        }
+
+        String[] ranked = new String[size];
+        for (int i = size - 1; i >= 0; i--) {
+            ranked[i] = g.nameOf(heap[0]);
+            heap[0] = heap[i];
+            siftDown(heap, i);
+        }
+        return new ArrayList<>(Arrays.asList(ranked));
+    }
+
+    private boolean better(int a, int b) {
+        if (mutual[a] != mutual[b]) return mutual[a] > mutual[b];
+        if (strength[a] != strength[b]) return strength[a] > strength[b];
+        return a < b;
+    }
+
+    private void siftUp(int[] heap, int i) {
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (!better(heap[p], heap[i])) break;
+            int t = heap[p]; heap[p] = heap[i]; heap[i] = t;
+            i = p;
+        }
+    }
+
+    private void siftDown(int[] heap, int size) {
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int c = 2 * i + 1;
+            if (c + 1 < size && better(heap[c], heap[c + 1])) c++;
+            if (!better(heap[i], heap[c])) break;
+            int t = heap[c]; heap[c] = heap[i]; heap[i] = t;
+            i = c;
+        }
+    }
+
+    private void reset(int n) {
+        if (n > stamp.length) {
+            mutual = new int[n];
+            strength = new long[n];
+            stamp = new int[n];
+            touched = new int[n];
+            epoch = 0;
+        }
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            epoch = 1;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Synthetic friendship graphs for benchmarks and load tests. Users are named "u0".."u<n-1>",
+// weights are uniform in 1..maxWeight, and every generator is deterministic for a given seed.
+// Edges go straight into the CSR (like a bulk import), so 10^7 users build in seconds.
+public class GraphGenerator {
+    public static final int DEFAULT_MAX_WEIGHT = 10;
+
+    // Erdos-Renyi G(n, p) with p = averageDegree / (n - 1); geometric skipping over the
+    // candidate pairs (Batagelj-Brandes), so the cost is O(n + edges), not O(n^2)
+    public static SocialNetwork erdosRenyi(int n, double averageDegree, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        EdgeList edges = new EdgeList((long) (n * averageDegree / 2 * 1.1) + 16);
+        double p = Math.min(1.0, averageDegree / Math.max(1, n - 1));
+        if (p > 0) {
+            double logQ = Math.log(1 - p);
+            long v = 1, w = -1;
+            while (v < n) {
+                w += p == 1.0 ? 1 : 1 + (long) (Math.log(1 - rnd.nextDouble()) / logQ);
+                while (w >= v && v < n) {
+                    w -= v;
+                    v++;
+                }
+                if (v < n) edges.add((int) v, (int) w, rnd);
+            }
+        }
+        return build(n, edges);
+    }
+
+    // Barabasi-Albert preferential attachment: each new user befriends m earlier ones picked in
+    // proportion to their degree, giving a power-law degree distribution. Linear time: every
+    // edge endpoint is appended to one array and a uniform pick from it is degree-proportional.
+    public static SocialNetwork barabasiAlbert(int n, int m, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        int[] endpoints = new int[(int) Math.min(Integer.MAX_VALUE - 8, 2L * n * m)];
+        EdgeList edges = new EdgeList((long) n * m);
+        int used = 0;
+        for (int v = 1; v < n && used + 2 <= endpoints.length; v++) {
+            for (int i = 0; i < Math.min(m, v) && used + 2 <= endpoints.length; i++) {
+                // until v has attached once, the only candidates are the first users
+                int target = used == 0 ? 0 : endpoints[rnd.nextInt(used)];
+                if (target == v) target = rnd.nextInt(v);
+                endpoints[used++] = v;
+                endpoints[used++] = target;
+                edges.add(v, target, rnd);
+            }
+        }
+        return build(n, edges);
+    }
+
+    // Watts-Strogatz small world: a ring where everyone knows k nearest neighbours (k/2 per side),
+    // then each friendship is rewired to a random user with probability beta
+    public static SocialNetwork smallWorld(int n, int k, double beta, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        EdgeList edges = new EdgeList((long) n * (k / 2));
+        for (int u = 0; u < n; u++) {
+            for (int j = 1; j <= k / 2; j++) {
+                int v = (int) ((u + (long) j) % n);
+                if (rnd.nextDouble() < beta) v = rnd.nextInt(n);
+                edges.add(u, v, rnd);
+            }
+        }
+        return build(n, edges);
+    }
+
+    private static SocialNetwork build(int n, EdgeList edges) {
+        SocialNetwork network = new SocialNetwork();
+        for (int u = 0; u < n; u++) network.internUser("u" + u);
+        CompactGraph base = network.compacted();
+        int kept = BulkLoader.dedup(base, n, edges.from, edges.to, edges.weight, edges.size);
+        network.installEdges(edges.from, edges.to, edges.weight, kept);
+        return network;
+    }
+
+    // growable parallel arrays; self-loops are dropped here, duplicates later by BulkLoader.dedup
+    private static final class EdgeList {
+        int[] from, to, weight;
+        int size;
+
+        EdgeList(long expected) {
+            int cap = (int) Math.max(16, Math.min(Integer.MAX_VALUE - 8, expected));
+            from = new int[cap];
+            to = new int[cap];
+            weight = new int[cap];
+        }
+
+        void add(int u, int v, SplittableRandom rnd) {
+            if (u == v) return;
+            if (size == from.length) {
+                int cap = (int) Math.min(Integer.MAX_VALUE - 8, from.length * 2L);
+                from = Arrays.copyOf(from, cap);
+                to = Arrays.copyOf(to, cap);
+                weight = Arrays.copyOf(weight, cap);
+            }
+            from[size] = u;
+            to[size] = v;
+            weight[size] = 1 + rnd.nextInt(DEFAULT_MAX_WEIGHT);
+            size++;
+        }
+    }
+}
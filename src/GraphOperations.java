@@ -1,146 +1,253 @@
 import java.util.*;
-import java.util.stream.Collectors;
 
+@SuppressWarnings("try") // Metrics scopes are never referenced inside their try blocks
 public class GraphOperations {
-    public static boolean areConnected(String user1, String user2, Map<String, User> users) {
-        if (user1 == null || user2 == null) return false;
-        user1 = user1.trim().toLowerCase();
-        user2 = user2.trim().toLowerCase();
-
-        if (!users.containsKey(user1) || !users.containsKey(user2)) return false;
-        if (user1.equals(user2)) return true;
-
-        Set<String> visited = new HashSet<>();
-        Queue<String> queue = new LinkedList<>();
-        queue.offer(user1);
-        visited.add(user1);
-
-        while (!queue.isEmpty()) {
-            String current = queue.poll();
-            for (String neighbor : users.get(current).getFriends()) {
-                if (neighbor.equals(user2)) return true;
-                if (!visited.contains(neighbor)) {
-                    visited.add(neighbor);
-                    queue.offer(neighbor);
-                }
+    public static boolean areConnected(String user1, String user2, CompactGraph g) {
+        return hopDistance(user1, user2, Integer.MAX_VALUE, g) >= 0;
+    }
+
+    // "within N degrees": true if a path of at most maxDepth hops exists
+    public static boolean isWithinDegrees(String user1, String user2, int maxDepth, CompactGraph g) {
+        return hopDistance(user1, user2, maxDepth, g) >= 0;
+    }
+
+    // number of hops on the shortest path, or -1 if none within maxDepth
+    public static int hopDistance(String user1, String user2, int maxDepth, CompactGraph g) {
+        try (Metrics.Scope m = Metrics.begin("GraphOperations.hopDistance")) {
+            if (user1 == null || user2 == null) return -1;
+            int src = g.idOf(User.sanitizeUsername(user1));
+            int dst = g.idOf(User.sanitizeUsername(user2));
+
+            if (src < 0 || dst < 0 || maxDepth < 0) return -1;
+            if (src == dst) return 0;
+
+            SearchLabels fwd = SearchLabels.get(0, g.size());
+            SearchLabels bwd = SearchLabels.get(1, g.size());
+            long meet = bidirectionalBfs(g, src, dst, maxDepth, fwd, bwd);
+            if (meet < 0) return -1;
+            return (int) (fwd.dist((int) (meet >>> 32)) + 1 + bwd.dist((int) meet));
+        }
+    }
+
+    public static List<String> findLightestPath(String src, String dst, CompactGraph g) {
+        try (Metrics.Scope m = Metrics.begin("GraphOperations.findLightestPath")) {
+            if (src == null || dst == null) return null;
+            int s = g.idOf(User.sanitizeUsername(src));
+            int t = g.idOf(User.sanitizeUsername(dst));
+            if (s < 0 || t < 0) return null;
+            if (s == t) return List.of(g.nameOf(s));
+
+            // Dijkstra with decrease-key; labels are only written for users the search reaches
+            SearchLabels labels = SearchLabels.get(0, g.size());
+            IndexedMinHeap pq = labels.heap;
+            labels.set(s, 0, -1);
+            pq.push(s, 0);
+
+            while (!pq.isEmpty()) {
+                int u = pq.poll();
+                if (u == t) return buildPath(g, labels, t);
+                relax(g, u, labels, pq);
             }
+            return null;
         }
-        return false;
     }
 
-    public static List<String> findLightestPath(
-            String src, String dst,
-            Map<String, User> users,
-            Map<String, Map<String, Integer>> adj) {
-
-        if (src == null || dst == null) return null;
-        src = src.trim().toLowerCase(); dst = dst.trim().toLowerCase();
-        if (!users.containsKey(src) || !users.containsKey(dst)) return null;
-        if (src.equals(dst)) return List.of(src);
-
-        // Dijkstra
-        Map<String, Integer> dist = new HashMap<>();
-        Map<String, String> parent = new HashMap<>();
-        PriorityQueue<String> pq = new PriorityQueue<>(Comparator.comparingInt(dist::get));
-
-        for (String u : users.keySet()) dist.put(u, Integer.MAX_VALUE);
-        dist.put(src, 0); parent.put(src, null); pq.add(src);
-
-        while (!pq.isEmpty()) {
-            String u = pq.poll();
-            if (!adj.containsKey(u)) continue;
-            if (u.equals(dst)) break;
-
-            for (Map.Entry<String,Integer> e : adj.get(u).entrySet()) {
-                String v = e.getKey();
-                int w = e.getValue();
-                if (w <= 0) continue; // skip bad weights
-                int nd = dist.get(u) + w;
-                if (nd < dist.get(v)) {
-                    dist.put(v, nd);
-                    parent.put(v, u);
-                    pq.remove(v); // update key
-                    pq.add(v);
+    // Bidirectional Dijkstra: grow both searches, always advancing the smaller queue, and stop
+    // once the two queue minimums together can no longer beat the best meeting point.
+    public static List<String> findLightestPathBidirectional(String src, String dst, CompactGraph g) {
+        try (Metrics.Scope m = Metrics.begin("GraphOperations.findLightestPathBidirectional")) {
+            if (src == null || dst == null) return null;
+            int s = g.idOf(User.sanitizeUsername(src));
+            int t = g.idOf(User.sanitizeUsername(dst));
+            if (s < 0 || t < 0) return null;
+            if (s == t) return List.of(g.nameOf(s));
+
+            SearchLabels fwd = SearchLabels.get(0, g.size());
+            SearchLabels bwd = SearchLabels.get(1, g.size());
+            fwd.set(s, 0, -1); fwd.heap.push(s, 0);
+            bwd.set(t, 0, -1); bwd.heap.push(t, 0);
+            long best = Long.MAX_VALUE;
+            int meetF = -1, meetB = -1; // lightest known s..meetF - meetB..t join
+
+            while (!fwd.heap.isEmpty() && !bwd.heap.isEmpty()) {
+                if (fwd.heap.peekKey() + bwd.heap.peekKey() >= best) break;
+                boolean forward = fwd.heap.size() <= bwd.heap.size();
+                SearchLabels side = forward ? fwd : bwd;
+                SearchLabels other = forward ? bwd : fwd;
+
+                int u = side.heap.poll();
+                relax(g, u, side, side.heap);
+                for (int e = g.begin(u); e < g.end(u); e++) {
+                    int v = g.target(e);
+                    if (!other.reached(v) || g.weight(e) <= 0) continue;
+                    long through = side.dist(u) + g.weight(e) + other.dist(v);
+                    if (through < best) {
+                        best = through;
+                        meetF = forward ? u : v;
+                        meetB = forward ? v : u;
+                    }
                 }
             }
+            if (meetF < 0) return null;
+
+            List<String> path = buildPath(g, fwd, meetF);
+            for (int at = meetB; at >= 0; at = bwd.parent(at)) path.add(g.nameOf(at));
+            return path;
         }
+    }
 
-        if (dist.get(dst) == Integer.MAX_VALUE) return null;
+    // A* guided by landmark lower bounds (ALT); the bound is consistent, so a polled user is final
+    public static List<String> findLightestPath(String src, String dst, CompactGraph g, LandmarkOracle oracle) {
+        try (Metrics.Scope m = Metrics.begin("GraphOperations.findLightestPathAlt")) {
+            if (src == null || dst == null) return null;
+            int s = g.idOf(User.sanitizeUsername(src));
+            int t = g.idOf(User.sanitizeUsername(dst));
+            if (s < 0 || t < 0) return null;
+            if (s == t) return List.of(g.nameOf(s));
+            if (oracle.lowerBound(s, t) == LandmarkOracle.INF) return null;
+
+            SearchLabels labels = SearchLabels.get(0, g.size());
+            IndexedMinHeap pq = labels.heap;
+            labels.set(s, 0, -1);
+            pq.push(s, oracle.lowerBound(s, t));
+
+            while (!pq.isEmpty()) {
+                int u = pq.poll();
+                if (u == t) return buildPath(g, labels, t);
+                long du = labels.dist(u);
+                for (int e = g.begin(u); e < g.end(u); e++) {
+                    int v = g.target(e);
+                    int w = g.weight(e);
+                    if (w <= 0) continue; // skip bad weights
+                    long nd = du + w;
+                    if (nd < labels.dist(v)) {
+                        long h = oracle.lowerBound(v, t);
+                        if (h == LandmarkOracle.INF) continue;
+                        labels.set(v, nd, u);
+                        pq.push(v, nd + h);
+                    }
+                }
+            }
+            return null;
+        }
+    }
 
-        // reconstruct path
-        LinkedList<String> path = new LinkedList<>();
-        for (String at = dst; at != null; at = parent.get(at)) path.addFirst(at);
-        return path;
+    static void relax(CompactGraph g, int u, SearchLabels labels, IndexedMinHeap pq) {
+        long du = labels.dist(u);
+        for (int e = g.begin(u); e < g.end(u); e++) {
+            int v = g.target(e);
+            int w = g.weight(e);
+            if (w <= 0) continue; // skip bad weights
+            long nd = du + w;
+            if (nd < labels.dist(v)) {
+                labels.set(v, nd, u);
+                pq.push(v, nd);
+            }
+        }
     }
 
+    public static List<String> findShortestPath(String user1, String user2, CompactGraph g) {
+        try (Metrics.Scope m = Metrics.begin("GraphOperations.findShortestPath")) {
+            if (user1 == null || user2 == null) return null;
+            int src = g.idOf(User.sanitizeUsername(user1));
+            int dst = g.idOf(User.sanitizeUsername(user2));
+
+            if (src < 0 || dst < 0) return null;
+            if (src == dst) return Arrays.asList(g.nameOf(src));
+
+            SearchLabels fwd = SearchLabels.get(0, g.size());
+            SearchLabels bwd = SearchLabels.get(1, g.size());
+            long meet = bidirectionalBfs(g, src, dst, Integer.MAX_VALUE, fwd, bwd);
+            if (meet < 0) return null;
+
+            List<String> path = buildPath(g, fwd, (int) (meet >>> 32));
+            for (int at = (int) meet; at >= 0; at = bwd.parent(at)) path.add(g.nameOf(at));
+            return path;
+        }
+    }
 
-    public static List<String> findShortestPath(String user1, String user2, Map<String, User> users) {
-        if (user1 == null || user2 == null) return null;
-        user1 = user1.trim().toLowerCase();
-        user2 = user2.trim().toLowerCase();
-
-        if (!users.containsKey(user1) || !users.containsKey(user2)) return null;
-        if (user1.equals(user2)) return Arrays.asList(user1);
-
-        Map<String, String> parent = new HashMap<>();
-        Set<String> visited = new HashSet<>();
-        Queue<String> queue = new LinkedList<>();
-        queue.offer(user1);
-        visited.add(user1);
-        parent.put(user1, null);
-
-        while (!queue.isEmpty()) {
-            String current = queue.poll();
-            for (String neighbor : users.get(current).getFriends()) {
-                if (!visited.contains(neighbor)) {
-                    visited.add(neighbor);
-                    parent.put(neighbor, current);
-                    if (neighbor.equals(user2)) {
-                        List<String> path = new ArrayList<>();
-                        for (String at = user2; at != null; at = parent.get(at)) {
-                            path.add(at);
-                        }
-                        Collections.reverse(path);
-                        return path;
+    // Level-synchronous BFS from both ends, always expanding the frontier with fewer edges to scan.
+    // Returns the meeting edge packed as (forwardUser << 32 | backwardUser), or -1.
+    private static long bidirectionalBfs(CompactGraph g, int src, int dst, int maxDepth,
+                                         SearchLabels fwd, SearchLabels bwd) {
+        fwd.visit(src, 0, -1);
+        bwd.visit(dst, 0, -1);
+        int depthF = 0, depthB = 0;
+
+        while (fwd.head < fwd.tail && bwd.head < bwd.tail && depthF + depthB < maxDepth) {
+            boolean forward = frontierCost(g, fwd) <= frontierCost(g, bwd);
+            SearchLabels side = forward ? fwd : bwd;
+            SearchLabels other = forward ? bwd : fwd;
+            int depth = forward ? ++depthF : ++depthB;
+
+            // expand exactly one level; the first meeting found in it is a shortest one
+            long meet = -1;
+            int levelEnd = side.tail;
+            while (side.head < levelEnd && meet < 0) {
+                int current = side.queue[side.head++];
+                for (int e = g.begin(current); e < g.end(current); e++) {
+                    int neighbor = g.target(e);
+                    if (other.reached(neighbor)) {
+                        meet = forward ? ((long) current << 32) | neighbor : ((long) neighbor << 32) | current;
+                        break;
                     }
-                    queue.offer(neighbor);
+                    if (!side.reached(neighbor)) side.visit(neighbor, depth, current);
                 }
             }
+            if (meet >= 0) return meet;
         }
-        return null;
+        return -1;
     }
 
-    public static Set<String> findMutualFriends(String user1, String user2, Map<String, User> users) {
-        if (user1 == null || user2 == null) return new HashSet<>();
-        user1 = user1.trim().toLowerCase();
-        user2 = user2.trim().toLowerCase();
+    private static long frontierCost(CompactGraph g, SearchLabels side) {
+        long cost = 0;
+        for (int i = side.head; i < side.tail; i++) cost += g.degree(side.queue[i]);
+        return cost;
+    }
+
+    public static Set<String> findMutualFriends(String user1, String user2, CompactGraph g) {
+        try (Metrics.Scope m = Metrics.begin("GraphOperations.findMutualFriends")) {
+            if (user1 == null || user2 == null) return new HashSet<>();
+            int a = g.idOf(User.sanitizeUsername(user1));
+            int b = g.idOf(User.sanitizeUsername(user2));
 
-        if (!users.containsKey(user1) || !users.containsKey(user2)) return new HashSet<>();
+            if (a < 0 || b < 0) return new HashSet<>();
 
-        Set<String> friends1 = users.get(user1).getFriends();
-        Set<String> friends2 = users.get(user2).getFriends();
-        return friends1.stream().filter(friends2::contains).collect(Collectors.toSet());
+            Set<String> mutual = new HashSet<>();
+            Intersections.forEachCommon(g, a, b, z -> mutual.add(g.nameOf(z)));
+            return mutual;
+        }
     }
 
-    public static Set<String> suggestFriends(String username, Map<String, User> users) {
-        if (username == null) return new HashSet<>();
-        username = username.trim().toLowerCase();
-        if (!users.containsKey(username)) return new HashSet<>();
-
-        Set<String> directFriends = users.get(username).getFriends();
-        Set<String> suggestions = new HashSet<>();
-        Set<String> toExclude = new HashSet<>(directFriends);
-        toExclude.add(username);
-
-        for (String friend : directFriends) {
-            if (users.containsKey(friend)) {
-                for (String foaf : users.get(friend).getFriends()) {
-                    if (!toExclude.contains(foaf)) {
-                        suggestions.add(foaf);
+    public static Set<String> suggestFriends(String username, CompactGraph g) {
+        try (Metrics.Scope m = Metrics.begin("GraphOperations.suggestFriends")) {
+            if (username == null) return new HashSet<>();
+            int u = g.idOf(User.sanitizeUsername(username));
+            if (u < 0) return new HashSet<>();
+
+            boolean[] exclude = new boolean[g.size()];
+            exclude[u] = true;
+            for (int e = g.begin(u); e < g.end(u); e++) exclude[g.target(e)] = true;
+
+            Set<String> suggestions = new HashSet<>();
+            for (int e = g.begin(u); e < g.end(u); e++) {
+                int friend = g.target(e);
+                for (int f = g.begin(friend); f < g.end(friend); f++) {
+                    int foaf = g.target(f);
+                    if (!exclude[foaf]) {
+                        exclude[foaf] = true;
+                        suggestions.add(g.nameOf(foaf));
                     }
                 }
             }
+            return suggestions;
         }
-        return suggestions;
     }
+
+    static List<String> buildPath(CompactGraph g, SearchLabels labels, int dst) {
+        LinkedList<String> path = new LinkedList<>();
+        for (int at = dst; at >= 0; at = labels.parent(at)) path.addFirst(g.nameOf(at));
+        return path;
+    }
+
 }
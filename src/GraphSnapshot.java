@@ -0,0 +1,200 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+// Versioned, checksummed binary snapshot of a CompactGraph, loaded by memory-mapping so
+// queries read the file pages directly instead of copying the graph onto the heap.
+//
+// Layout (little-endian). A 64-byte header:
+//   0 int magic, 4 int version, 8 int users, 12 int slotCount,
+//   16 long edgeEntries (2 per friendship), 24 long totalWeight, 32 long nameBytes,
+//   40 long bodyCrc (CRC32C of everything after the header), 48 long reserved,
+//   56 int headerCrc (CRC32C of bytes 0..55), 60 int padding
+// then these sections, each starting on an 8-byte boundary:
+//   int[users + 1] offsets, int[edgeEntries] targets, int[edgeEntries] weights,
+//   int[users] component (union-find root of each user), long[users + 1] name offsets,
+//   byte[nameBytes] UTF-8 names, int[slotCount] username hash slots (id + 1, 0 = empty)
+public class GraphSnapshot {
+    static final int MAGIC = 0x53474E53; // "SNGS"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+
+    private final CompactGraph graph;
+    private final IntArray components;
+
+    private GraphSnapshot(CompactGraph graph, IntArray components) {
+        this.graph = graph;
+        this.components = components;
+    }
+
+    public CompactGraph graph() { return graph; }
+    public IntArray components() { return components; }
+
+    // Writes to a temporary file and renames it into place, so a crash never leaves a torn
+    // snapshot; the rename is durable once this returns
+    public static void write(CompactGraph g, int[] components, Path file) throws IOException {
+        int n = g.size();
+        long edgeEntries = 2L * g.edgeCount();
+        int slotCount = Integer.highestOneBit(Math.max(2, n * 2 - 1)) << 1;
+        byte[][] names = new byte[n][];
+        long nameBytes = 0;
+        for (int u = 0; u < n; u++) {
+            names[u] = g.nameOf(u).getBytes(StandardCharsets.UTF_8);
+            nameBytes += names[u].length;
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            SectionWriter out = new SectionWriter(ch, HEADER_BYTES);
+            for (int u = 0; u <= n; u++) out.putInt(u < n ? g.begin(u) : (int) edgeEntries);
+            out.align();
+            for (int e = 0; e < edgeEntries; e++) out.putInt(g.target(e));
+            out.align();
+            for (int e = 0; e < edgeEntries; e++) out.putInt(g.weight(e));
+            out.align();
+            for (int u = 0; u < n; u++) out.putInt(components[u]);
+            out.align();
+            long at = 0;
+            for (int u = 0; u <= n; u++) {
+                out.putLong(at);
+                if (u < n) at += names[u].length;
+            }
+            for (int u = 0; u < n; u++) out.putBytes(names[u]);
+            out.align();
+            int[] slots = new int[slotCount];
+            for (int u = 0; u < n; u++) {
+                int i = UserIndex.mix(g.nameOf(u).hashCode()) & (slotCount - 1);
+                while (slots[i] != 0) i = (i + 1) & (slotCount - 1);
+                slots[i] = u + 1;
+            }
+            for (int s : slots) out.putInt(s);
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(slotCount)
+                  .putLong(edgeEntries).putLong(g.totalWeight()).putLong(nameBytes)
+                  .putLong(out.crc.getValue()).putLong(0);
+            CRC32C headerCrc = new CRC32C();
+            headerCrc.update(header.array(), 0, 56);
+            header.putInt((int) headerCrc.getValue()).putInt(0).flip();
+            ch.write(header, 0);
+            ch.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(file.toAbsolutePath().getParent());
+    }
+
+    // fsyncs a directory, so files created or renamed in it survive a crash
+    static void syncDirectory(Path dir) throws IOException {
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        }
+    }
+
+    // Maps the snapshot read-only. Header fields are always validated; verifyBody also checks the
+    // body checksum, which reads the whole file once.
+    public static GraphSnapshot load(Path file, boolean verifyBody) throws IOException {
+        ByteRegion region;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() < HEADER_BYTES) throw new IOException("Not a graph snapshot: " + file);
+            region = ByteRegion.map(ch, FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        if (region.getInt(0) != MAGIC) throw new IOException("Not a graph snapshot: " + file);
+        if (region.getInt(4) != VERSION) {
+            throw new IOException("Unsupported snapshot version " + region.getInt(4) + " in " + file);
+        }
+        CRC32C headerCrc = new CRC32C();
+        for (ByteBuffer b : region.slices(0, 56)) headerCrc.update(b);
+        if (region.getInt(56) != (int) headerCrc.getValue()) throw new IOException("Corrupt snapshot header: " + file);
+
+        int n = region.getInt(8);
+        int slotCount = region.getInt(12);
+        long edgeEntries = region.getLong(16);
+        long totalWeight = region.getLong(24);
+        long nameBytes = region.getLong(32);
+
+        long offsetsPos = HEADER_BYTES;
+        long targetsPos = align(offsetsPos + 4L * (n + 1));
+        long weightsPos = align(targetsPos + 4L * edgeEntries);
+        long componentsPos = align(weightsPos + 4L * edgeEntries);
+        long nameOffsetsPos = align(componentsPos + 4L * n);
+        long namesPos = nameOffsetsPos + 8L * (n + 1);
+        long slotsPos = align(namesPos + nameBytes);
+        long end = slotsPos + 4L * slotCount;
+        if (end != region.size() || Integer.bitCount(slotCount) != 1 || edgeEntries > Integer.MAX_VALUE) {
+            throw new IOException("Corrupt snapshot layout: " + file);
+        }
+        if (verifyBody) {
+            CRC32C bodyCrc = new CRC32C();
+            for (ByteBuffer b : region.slices(HEADER_BYTES, end)) bodyCrc.update(b);
+            if (region.getLong(40) != bodyCrc.getValue()) throw new IOException("Snapshot checksum mismatch: " + file);
+        }
+
+        MappedUserIndex names = new MappedUserIndex(region, n, nameOffsetsPos, namesPos, slotsPos, slotCount);
+        CompactGraph g = new CompactGraph(names,
+                IntArray.view(region, offsetsPos, n + 1),
+                IntArray.view(region, targetsPos, (int) edgeEntries),
+                IntArray.view(region, weightsPos, (int) edgeEntries),
+                totalWeight, false);
+        return new GraphSnapshot(g, IntArray.view(region, componentsPos, n));
+    }
+
+    static long align(long pos) {
+        return (pos + 7) & ~7L;
+    }
+
+    // buffered little-endian section writer that checksums everything it writes
+    private static class SectionWriter {
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        final CRC32C crc = new CRC32C();
+        private long pos;
+
+        SectionWriter(FileChannel ch, long start) {
+            this.ch = ch;
+            this.pos = start;
+        }
+
+        void putInt(int v) throws IOException {
+            if (buf.remaining() < 4) flush();
+            buf.putInt(v);
+        }
+
+        void putLong(long v) throws IOException {
+            if (buf.remaining() < 8) flush();
+            buf.putLong(v);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            for (int i = 0; i < bytes.length; ) {
+                if (!buf.hasRemaining()) flush();
+                int len = Math.min(buf.remaining(), bytes.length - i);
+                buf.put(bytes, i, len);
+                i += len;
+            }
+        }
+
+        void align() throws IOException {
+            long written = pos + buf.position();
+            for (long p = written; p < GraphSnapshot.align(written); p++) {
+                if (!buf.hasRemaining()) flush();
+                buf.put((byte) 0);
+            }
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            crc.update(buf.duplicate());
+            while (buf.hasRemaining()) pos += ch.write(buf, pos);
+            buf.clear();
+        }
+    }
+}
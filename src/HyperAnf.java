@@ -0,0 +1,211 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+// Approximate neighbourhood function (HyperANF): every user holds a HyperLogLog counter of
+// 2^bits one-byte registers for the set of users within t hops. Round t + 1 sets each counter to
+// the register-wise max of its own and its friends' counters, which is the union of their balls,
+// so r rounds cost r sequential scans of the friendships and 2 * 2^bits bytes per user.
+// Sizes are estimated with relative standard error 1.04 / sqrt(2^bits) (13% at the default 6 bits,
+// much less for sums over many users). Registers are packed eight to a long and merged with a
+// broadword max; users whose friends did not change skip the merge.
+@SuppressWarnings("try") // Metrics scopes are never referenced inside their try blocks
+public class HyperAnf {
+    public static final int DEFAULT_BITS = 6;
+    public static final int REACH_HOPS = 4;   // per-user reach is kept for 1..REACH_HOPS hops
+    public static final int MAX_ROUNDS = 256;
+    private static final long HASH_SEED = 0x2545F4914F6CDD1DL;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    public static final class Result {
+        private final CompactGraph graph;
+        public final int bits;
+        public final int rounds;           // rounds until no counter changed
+        public final double[] neighbourhood; // [t]: estimated ordered pairs (incl. u, u) within t hops
+        private final float[][] reachByHop;  // [h - 1][user]: users within h hops, excluding the user
+        private final float[] reach;         // users reachable at any distance
+
+        Result(CompactGraph graph, int bits, double[] neighbourhood, float[][] reachByHop, float[] reach) {
+            this.graph = graph;
+            this.bits = bits;
+            this.rounds = neighbourhood.length - 1;
+            this.neighbourhood = neighbourhood;
+            this.reachByHop = reachByHop;
+            this.reach = reach;
+        }
+
+        public double relativeStandardError() {
+            return 1.04 / Math.sqrt(1 << bits);
+        }
+
+        // [t]: estimated ordered pairs of users exactly t hops apart, t >= 1
+        public double[] distanceDistribution() {
+            double[] pairs = new double[neighbourhood.length];
+            for (int t = 1; t < pairs.length; t++) pairs[t] = Math.max(0, neighbourhood[t] - neighbourhood[t - 1]);
+            return pairs;
+        }
+
+        public double connectedPairs() {
+            return Math.max(0, neighbourhood[rounds] - neighbourhood[0]);
+        }
+
+        // mean hops over connected pairs
+        public double averageDistance() {
+            double[] pairs = distanceDistribution();
+            double sum = 0, weighted = 0;
+            for (int t = 1; t < pairs.length; t++) {
+                sum += pairs[t];
+                weighted += t * pairs[t];
+            }
+            return sum == 0 ? 0.0 : weighted / sum;
+        }
+
+        // hops within which the given fraction (e.g. 0.9) of connected pairs lie, interpolated
+        public double effectiveDiameter(double fraction) {
+            double total = connectedPairs();
+            if (total == 0) return 0.0;
+            double goal = neighbourhood[0] + fraction * total;
+            for (int t = 1; t <= rounds; t++) {
+                if (neighbourhood[t] >= goal) {
+                    double below = neighbourhood[t - 1];
+                    return t - 1 + (goal - below) / Math.max(1e-9, neighbourhood[t] - below);
+                }
+            }
+            return rounds;
+        }
+
+        // estimated users within hops of id (hops in 1..REACH_HOPS), not counting id
+        public double reach(int id, int hops) {
+            if (hops < 1 || hops > reachByHop.length) throw new IllegalArgumentException("hops must be 1.." + reachByHop.length);
+            return reachByHop[hops - 1][id];
+        }
+
+        // estimated users reachable from id at any distance
+        public double reach(int id) {
+            return reach[id];
+        }
+
+        public int idOf(String username) {
+            return graph.idOf(User.sanitizeUsername(username));
+        }
+    }
+
+    public static Result run(CompactGraph g) {
+        return run(g, DEFAULT_BITS);
+    }
+
+    public static Result run(CompactGraph g, int bits) {
+        try (Metrics.Scope m = Metrics.begin("HyperAnf.run")) {
+            int n = g.size();
+            bits = Math.max(4, Math.min(16, bits));
+            // registers for all users must fit one array
+            while (bits > 4 && ((long) n << (bits - 3)) > Integer.MAX_VALUE - 8) bits--;
+            int regs = 1 << bits, words = regs / 8, shift = bits - 3, hashBits = bits;
+            IntArray offsets = g.offsets(), targets = g.targets();
+
+            long[] current = new long[n << shift], next = new long[n << shift];
+            IntStream.range(0, n).parallel().forEach(v -> add(current, v << shift, hashBits, v));
+            boolean[] changed = new boolean[n], changedNext = new boolean[n];
+            Arrays.fill(changed, true);
+
+            double[] estimate = new double[n];
+            float[][] reachByHop = new float[REACH_HOPS][n];
+            double[] neighbourhood = new double[MAX_ROUNDS + 1];
+            neighbourhood[0] = IntStream.range(0, n).parallel().mapToDouble(v -> estimate[v] = size(current, v << shift, regs)).sum();
+            int rounds = 0;
+            long[] from = current, to = next;
+            boolean[] fresh = changed, marked = changedNext;
+            while (rounds < MAX_ROUNDS) {
+                long[] src = from, dst = to;
+                boolean[] before = fresh, after = marked;
+                LongAdder updates = new LongAdder();
+                double total = IntStream.range(0, n).parallel().mapToDouble(v -> {
+                    int base = v << shift;
+                    System.arraycopy(src, base, dst, base, words);
+                    boolean grew = false;
+                    for (int e = offsets.get(v), end = offsets.get(v + 1); e < end; e++) {
+                        int w = targets.get(e);
+                        if (before[w]) grew |= union(dst, base, src, w << shift, words);
+                    }
+                    after[v] = grew;
+                    if (grew) {
+                        updates.increment();
+                        estimate[v] = size(dst, base, regs);
+                    }
+                    return estimate[v];
+                }).sum();
+                rounds++;
+                if (rounds <= REACH_HOPS) {
+                    float[] hop = reachByHop[rounds - 1];
+                    IntStream.range(0, n).parallel().forEach(v -> hop[v] = (float) Math.max(0, estimate[v] - 1));
+                }
+                neighbourhood[rounds] = total;
+                from = dst;
+                to = src;
+                fresh = after;
+                marked = before;
+                if (updates.sum() == 0) {
+                    rounds--; // the last round changed nothing
+                    break;
+                }
+            }
+            // hops beyond the last round reach no one new
+            for (int h = rounds + 1; h <= REACH_HOPS; h++) {
+                reachByHop[h - 1] = rounds == 0 ? reachByHop[h - 1] : reachByHop[rounds - 1];
+            }
+            float[] reach = new float[n];
+            for (int v = 0; v < n; v++) reach[v] = (float) Math.max(0, estimate[v] - 1);
+            return new Result(g, bits, Arrays.copyOf(neighbourhood, rounds + 1), reachByHop, reach);
+        }
+    }
+
+    // Register-wise max of other into dst; true if any register grew. Registers stay below 128, so
+    // (x | H) - y never borrows across bytes and its top bit in each byte says x >= y.
+    private static boolean union(long[] dst, int base, long[] src, int other, int words) {
+        boolean grew = false;
+        for (int i = 0; i < words; i++) {
+            long x = dst[base + i], y = src[other + i];
+            long xAtLeastY = (((x | HIGH_BITS) - y) & HIGH_BITS) >>> 7;
+            long max = x & (xAtLeastY * 0xFF) | y & ~(xAtLeastY * 0xFF);
+            if (max != x) {
+                dst[base + i] = max;
+                grew = true;
+            }
+        }
+        return grew;
+    }
+
+    private static int register(long[] registers, int base, int i) {
+        return (int) (registers[base + (i >>> 3)] >>> ((i & 7) << 3)) & 0xFF;
+    }
+
+    // adds user v to the counter at base: the hash picks a register and a rank (leading zeros + 1)
+    private static void add(long[] registers, int base, int bits, int v) {
+        long z = v * 0x9E3779B97F4A7C15L + HASH_SEED;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        int register = (int) (z >>> (64 - bits));
+        int rank = Math.min(64 - bits, Long.numberOfLeadingZeros(z << bits)) + 1;
+        int slot = (register & 7) << 3;
+        if (rank > register(registers, base, register)) {
+            long word = registers[base + (register >>> 3)] & ~(0xFFL << slot);
+            registers[base + (register >>> 3)] = word | (long) rank << slot;
+        }
+    }
+
+    // HyperLogLog estimate, with linear counting while many registers are still empty
+    private static double size(long[] registers, int base, int regs) {
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < regs; i++) {
+            int r = register(registers, base, i);
+            sum += Double.longBitsToDouble((1023L - r) << 52); // 2^-r
+            if (r == 0) zeros++;
+        }
+        double alpha = regs == 16 ? 0.673 : regs == 32 ? 0.697 : regs == 64 ? 0.709 : 0.7213 / (1 + 1.079 / regs);
+        double raw = alpha * regs * regs / sum;
+        if (raw <= 2.5 * regs && zeros > 0) return regs * Math.log((double) regs / zeros);
+        return raw;
+    }
+}
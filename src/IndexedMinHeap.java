@@ -0,0 +1,87 @@
+import java.util.Arrays;
+
+// Binary min-heap over user ids with long keys and a position index, so decreaseKey is O(log n)
+public class IndexedMinHeap {
+    private int[] heap;
+    private long[] keys; // indexed by user id
+    private int[] pos;   // heap slot of each user id, -1 when not queued
+    private int size;
+
+    public IndexedMinHeap(int capacity) {
+        heap = new int[Math.max(1, capacity)];
+        keys = new long[Math.max(1, capacity)];
+        pos = new int[Math.max(1, capacity)];
+        Arrays.fill(pos, -1);
+    }
+
+    // empties the heap and makes room for ids below capacity; only queued slots are touched
+    public void reset(int capacity) {
+        for (int i = 0; i < size; i++) pos[heap[i]] = -1;
+        size = 0;
+        if (capacity > pos.length) {
+            heap = new int[capacity];
+            keys = new long[capacity];
+            pos = new int[capacity];
+            Arrays.fill(pos, -1);
+        }
+    }
+
+    public boolean isEmpty() { return size == 0; }
+    public int size() { return size; }
+    public boolean contains(int v) { return pos[v] >= 0; }
+    public long peekKey() { return keys[heap[0]]; }
+
+    // inserts v, or lowers its key; a larger key is ignored
+    public void push(int v, long key) {
+        if (pos[v] < 0) {
+            heap[size] = v;
+            pos[v] = size++;
+            keys[v] = key;
+            siftUp(pos[v]);
+        } else if (key < keys[v]) {
+            keys[v] = key;
+            siftUp(pos[v]);
+        }
+    }
+
+    public int poll() {
+        int top = heap[0];
+        pos[top] = -1;
+        if (--size > 0) {
+            heap[0] = heap[size];
+            pos[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int i) {
+        int v = heap[i];
+        long k = keys[v];
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (keys[heap[p]] <= k) break;
+            heap[i] = heap[p];
+            pos[heap[i]] = i;
+            i = p;
+        }
+        heap[i] = v;
+        pos[v] = i;
+    }
+
+    private void siftDown(int i) {
+        int v = heap[i];
+        long k = keys[v];
+        int half = size >>> 1;
+        while (i < half) {
+            int c = 2 * i + 1;
+            if (c + 1 < size && keys[heap[c + 1]] < keys[heap[c]]) c++;
+            if (k <= keys[heap[c]]) break;
+            heap[i] = heap[c];
+            pos[heap[i]] = i;
+            i = c;
+        }
+        heap[i] = v;
+        pos[v] = i;
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.Arrays;
+
+// Read-only int sequence used by CompactGraph: either a heap int[] or a view into a ByteRegion,
+// so the same graph code runs on arrays and on memory-mapped snapshots.
+public abstract class IntArray {
+    public abstract int get(int i);
+    public abstract int length();
+
+    public static IntArray wrap(int[] values) {
+        return new Heap(values);
+    }
+
+    // length ints starting at byte offset pos of region (pos must be 4-byte aligned)
+    public static IntArray view(ByteRegion region, long pos, int length) {
+        return new Region(region, pos, length);
+    }
+
+    public void copyTo(int from, int[] dst, int dstPos, int len) {
+        for (int i = 0; i < len; i++) dst[dstPos + i] = get(from + i);
+    }
+
+    // index of key in the sorted range [from, to), or a negative value if absent
+    public int binarySearch(int from, int to, int key) {
+        int lo = from, hi = to - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int v = get(mid);
+            if (v < key) lo = mid + 1;
+            else if (v > key) hi = mid - 1;
+            else return mid;
+        }
+        return -(lo + 1);
+    }
+
+    static final class Heap extends IntArray {
+        private final int[] values;
+
+        Heap(int[] values) {
+            this.values = values;
+        }
+
+        @Override public int get(int i) { return values[i]; }
+        @Override public int length() { return values.length; }
+
+        @Override
+        public void copyTo(int from, int[] dst, int dstPos, int len) {
+            System.arraycopy(values, from, dst, dstPos, len);
+        }
+
+        @Override
+        public int binarySearch(int from, int to, int key) {
+            return Arrays.binarySearch(values, from, to, key);
+        }
+    }
+
+    static final class Region extends IntArray {
+        private final ByteRegion region;
+        private final long pos;
+        private final int length;
+
+        Region(ByteRegion region, long pos, int length) {
+            this.region = region;
+            this.pos = pos;
+            this.length = length;
+        }
+
+        @Override public int get(int i) { return region.getInt(pos + 4L * i); }
+        @Override public int length() { return length; }
+    }
+}
@@ -0,0 +1,105 @@
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+// Allocation-free neighbourhood intersection on CompactGraph rows.
+// Picks per pair: bitmap AND + popcount, bitmap probes, galloping search for skewed degrees,
+// or a linear merge of the two sorted rows.
+public class Intersections {
+    private static final int GALLOP_RATIO = 16;
+
+    public static int countCommon(CompactGraph g, int a, int b) {
+        if (g.hasBitmap(a) && g.hasBitmap(b)) {
+            long[] x = g.bitmap(a), y = g.bitmap(b);
+            int count = 0;
+            for (int i = 0; i < x.length; i++) count += Long.bitCount(x[i] & y[i]);
+            return count;
+        }
+        return intersect(g, a, b, null);
+    }
+
+    // calls action for every common friend of a and b, in ascending id order
+    public static void forEachCommon(CompactGraph g, int a, int b, IntConsumer action) {
+        intersect(g, a, b, action);
+    }
+
+    // counts common friends, reporting each to action when it is not null
+    private static int intersect(CompactGraph g, int a, int b, IntConsumer action) {
+        if (g.degree(a) > g.degree(b)) { int t = a; a = b; b = t; }
+        int small = g.degree(a), large = g.degree(b);
+        int count = 0;
+        if (small == 0) return 0;
+
+        if (g.hasBitmap(b)) {
+            long[] bits = g.bitmap(b);
+            for (int e = g.begin(a); e < g.end(a); e++) {
+                int z = g.target(e); // users added since the bitmap was built are not in it
+                if (z >>> 6 < bits.length && (bits[z >>> 6] & (1L << z)) != 0) { count++; if (action != null) action.accept(z); }
+            }
+        } else if ((long) small * GALLOP_RATIO < large) {
+            int lo = g.begin(b), hi = g.end(b);
+            for (int e = g.begin(a); e < g.end(a) && lo < hi; e++) {
+                int z = g.target(e);
+                lo = gallop(g, lo, hi, z);
+                if (lo < hi && g.target(lo) == z) { count++; if (action != null) action.accept(z); }
+            }
+        } else {
+            int i = g.begin(a), j = g.begin(b);
+            while (i < g.end(a) && j < g.end(b)) {
+                int x = g.target(i), y = g.target(j);
+                if (x == y) { count++; if (action != null) action.accept(x); i++; j++; }
+                else if (x < y) i++;
+                else j++;
+            }
+        }
+        return count;
+    }
+
+    // |N(a) ∩ N(b)| / |N(a) ∪ N(b)|
+    public static double jaccard(CompactGraph g, int a, int b) {
+        int common = countCommon(g, a, b);
+        int union = g.degree(a) + g.degree(b) - common;
+        return union == 0 ? 0.0 : (double) common / union;
+    }
+
+    // sum of 1 / ln(degree) over common friends, favouring friends who know few people;
+    // 0 for a user against themselves, whose degree-1 friends would divide by ln 1
+    public static double adamicAdar(CompactGraph g, int a, int b) {
+        if (a == b) return 0.0;
+        double[] score = new double[1];
+        forEachCommon(g, a, b, z -> { if (g.degree(z) >= 2) score[0] += 1.0 / Math.log(g.degree(z)); });
+        return score[0];
+    }
+
+    // batch similarity for pairs (first[i], second[i]); ids < 0 score 0
+    public static double[] jaccard(CompactGraph g, int[] first, int[] second) {
+        double[] out = new double[first.length];
+        IntStream.range(0, first.length).parallel().forEach(i ->
+                out[i] = first[i] < 0 || second[i] < 0 ? 0.0 : jaccard(g, first[i], second[i]));
+        return out;
+    }
+
+    public static double[] adamicAdar(CompactGraph g, int[] first, int[] second) {
+        double[] out = new double[first.length];
+        IntStream.range(0, first.length).parallel().forEach(i ->
+                out[i] = first[i] < 0 || second[i] < 0 ? 0.0 : adamicAdar(g, first[i], second[i]));
+        return out;
+    }
+
+    // first edge index in [lo, hi) whose target is >= z, probing 1, 2, 4, ... steps ahead
+    private static int gallop(CompactGraph g, int lo, int hi, int z) {
+        int step = 1;
+        int bound = lo;
+        while (bound < hi && g.target(bound) < z) {
+            lo = bound + 1;
+            bound += step;
+            step <<= 1;
+        }
+        hi = Math.min(hi, bound + 1);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (g.target(mid) < z) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
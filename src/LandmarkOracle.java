@@ -0,0 +1,166 @@
+import java.util.Arrays;
+
+// ALT distance oracle: exact weighted distances from K landmark users to everyone.
+// By the triangle inequality |d(L,t) - d(L,u)| <= d(u,t) <= d(u,L) + d(L,t), which gives
+// admissible A* bounds and O(K) distance estimates without running a search.
+public class LandmarkOracle {
+    public static final int MAX_LANDMARKS = 32;
+    static final int INF = Integer.MAX_VALUE;
+
+    private final int[] landmarks;
+    private final int[][] dist; // dist[k][u], INF when u is not reachable from landmark k
+    private int n;
+    private IndexedMinHeap heap; // reused by every addEdge; only the owner patches an oracle
+
+    private LandmarkOracle(int[] landmarks, int[][] dist, int n) {
+        this.landmarks = landmarks;
+        this.dist = dist;
+        this.n = n;
+    }
+
+    // keeps as many landmarks as fit in memoryBudgetBytes (4 bytes per user per landmark)
+    public static LandmarkOracle build(CompactGraph g, long memoryBudgetBytes) {
+        int n = g.size();
+        long perLandmark = 4L * Math.max(1, n);
+        int k = (int) Math.min(Math.min(MAX_LANDMARKS, n), memoryBudgetBytes / perLandmark);
+        int[] landmarks = new int[k];
+        int[][] dist = new int[k][];
+        if (k == 0) return new LandmarkOracle(landmarks, dist, n);
+
+        // farthest-point selection: start at the best-connected user, then repeatedly take the
+        // user farthest from every chosen landmark (unreachable users first, covering components)
+        int first = 0;
+        for (int u = 1; u < n; u++) if (g.degree(u) > g.degree(first)) first = u;
+        long[] nearest = new long[n];
+        Arrays.fill(nearest, Long.MAX_VALUE);
+        for (int u = 0; u < n; u++) if (g.nameOf(u) == null) nearest[u] = -1; // removed, awaiting compaction
+        int next = first;
+        for (int i = 0; i < k; i++) {
+            landmarks[i] = next;
+            dist[i] = shortestDistances(g, next);
+            nearest[next] = -1;
+            next = -1;
+            for (int u = 0; u < n; u++) {
+                if (nearest[u] < 0) continue;
+                nearest[u] = Math.min(nearest[u], dist[i][u] == INF ? Long.MAX_VALUE : dist[i][u]);
+                if (next < 0 || nearest[u] > nearest[next]) next = u;
+            }
+            if (next < 0) return new LandmarkOracle(Arrays.copyOf(landmarks, i + 1), Arrays.copyOf(dist, i + 1), n);
+        }
+        return new LandmarkOracle(landmarks, dist, n);
+    }
+
+    // independent copy, so a published oracle is never patched under a reader
+    LandmarkOracle copy() {
+        int[][] d = new int[dist.length][];
+        for (int i = 0; i < d.length; i++) d[i] = dist[i].clone();
+        return new LandmarkOracle(landmarks, d, n);
+    }
+
+    // the same distances after the graph was compacted: user u is now newId[u] (-1: removed,
+    // and with it any landmark it was) among size users
+    LandmarkOracle renumbered(int[] newId, int size) {
+        int kept = 0;
+        for (int l : landmarks) if (newId[l] >= 0) kept++;
+        int[] ls = new int[kept];
+        int[][] d = new int[kept][];
+        for (int i = 0, j = 0; i < landmarks.length; i++) {
+            if (newId[landmarks[i]] < 0) continue;
+            ls[j] = newId[landmarks[i]];
+            d[j] = new int[size];
+            Arrays.fill(d[j], INF);
+            for (int u = 0; u < Math.min(n, newId.length); u++) if (newId[u] >= 0) d[j][newId[u]] = dist[i][u];
+            j++;
+        }
+        return new LandmarkOracle(ls, d, size);
+    }
+
+    public int landmarkCount() {
+        return landmarks.length;
+    }
+
+    public long memoryBytes() {
+        return 4L * landmarks.length * n;
+    }
+
+    // admissible lower bound on d(u, t); INF if some landmark proves they are disconnected
+    public long lowerBound(int u, int t) {
+        long best = 0;
+        for (int[] d : dist) {
+            int du = u < n ? d[u] : INF, dt = t < n ? d[t] : INF;
+            if (du == INF && dt == INF) continue;
+            if (du == INF || dt == INF) return INF;
+            best = Math.max(best, Math.abs((long) dt - du));
+        }
+        return best;
+    }
+
+    // path length through the best landmark; INF if no landmark reaches both users
+    public long upperBound(int u, int t) {
+        long best = INF;
+        for (int[] d : dist) {
+            int du = u < n ? d[u] : INF, dt = t < n ? d[t] : INF;
+            if (du != INF && dt != INF) best = Math.min(best, (long) du + dt);
+        }
+        return best;
+    }
+
+    // Patch distances after edge u-v (weight w) was added; g must already contain the edge.
+    // Distances only shrink on insertion, so each landmark re-runs Dijkstra from the improved end only.
+    public void addEdge(CompactGraph g, int u, int v, int w) {
+        grow(g.size());
+        if (heap == null) heap = new IndexedMinHeap(n);
+        IndexedMinHeap pq = heap;
+        for (int[] d : dist) {
+            improve(g, d, pq, u, v, w);
+            improve(g, d, pq, v, u, w);
+        }
+    }
+
+    private void grow(int size) {
+        if (size <= n) return;
+        for (int i = 0; i < dist.length; i++) {
+            dist[i] = Arrays.copyOf(dist[i], size);
+            Arrays.fill(dist[i], n, size, INF);
+        }
+        n = size;
+    }
+
+    private static void improve(CompactGraph g, int[] d, IndexedMinHeap pq, int from, int to, int w) {
+        if (d[from] == INF || (long) d[from] + w >= d[to]) return;
+        d[to] = d[from] + w;
+        pq.reset(d.length);
+        pq.push(to, d[to]);
+        while (!pq.isEmpty()) {
+            int x = pq.poll();
+            for (int e = g.begin(x); e < g.end(x); e++) {
+                int y = g.target(e);
+                long nd = (long) d[x] + g.weight(e);
+                if (nd < d[y]) {
+                    d[y] = (int) Math.min(nd, INF - 1);
+                    pq.push(y, d[y]);
+                }
+            }
+        }
+    }
+
+    private static int[] shortestDistances(CompactGraph g, int src) {
+        int[] d = new int[g.size()];
+        Arrays.fill(d, INF);
+        IndexedMinHeap pq = new IndexedMinHeap(g.size());
+        d[src] = 0;
+        pq.push(src, 0);
+        while (!pq.isEmpty()) {
+            int x = pq.poll();
+            for (int e = g.begin(x); e < g.end(x); e++) {
+                int y = g.target(e);
+                long nd = (long) d[x] + g.weight(e);
+                if (nd < d[y]) {
+                    d[y] = (int) Math.min(nd, INF - 1);
+                    pq.push(y, d[y]);
+                }
+            }
+        }
+        return d;
+    }
+}
@@ -1,6 +1,104 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 public class Main {
-    public static void main(String[] args) {
-        SocialNetworkUI ui = new SocialNetworkUI();
-        ui.run();
+    // usage: Main [--data <dir>] [--metrics <file.json>] [--off-heap [<dir>]]
+    //             [--server <port> [--sample] [--cache <MB>]] [--shards <k> [--sample]]
+    //   --data    keeps the network durable in dir across restarts
+    //   --server  serves the network over a localhost line protocol instead of the menu
+    //   --cache   caches query answers within the given memory budget
+    //   --metrics collects per-operation metrics and writes them to the file on exit
+    //   --shards  splits the network across k local shard processes and answers path queries
+    //             ("CONNECTED a b", "PATH a b", "LIGHTEST a b" per line) with their cross-shard traffic
+    //   --off-heap keeps the graph and usernames outside the Java heap (in files mapped from dir if given)
+    public static void main(String[] args) throws IOException {
+        SocialNetwork network = null;
+        int port = -1, shards = 0;
+        boolean sample = false;
+        long cacheBytes = 0;
+        String metricsFile = null;
+        boolean offHeap = false;
+        Path offHeapDir = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--data") && i + 1 < args.length) network = NetworkStore.open(Paths.get(args[++i]));
+            else if (args[i].equals("--server") && i + 1 < args.length) port = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--shards") && i + 1 < args.length) shards = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--sample")) sample = true;
+            else if (args[i].equals("--cache") && i + 1 < args.length) cacheBytes = Long.parseLong(args[++i]) << 20;
+            else if (args[i].equals("--metrics") && i + 1 < args.length) metricsFile = args[++i];
+            else if (args[i].equals("--off-heap")) {
+                offHeap = true;
+                if (i + 1 < args.length && !args[i + 1].startsWith("--")) offHeapDir = Paths.get(args[++i]);
+            }
+        }
+        if (offHeap) {
+            if (network == null) network = new SocialNetwork();
+            network.enableOffHeapStorage(offHeapDir);
+        }
+        if (metricsFile != null) {
+            Metrics.setEnabled(true);
+            String file = metricsFile;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Metrics.writeJson(Paths.get(file));
+                } catch (IOException e) {
+                    System.err.println("Could not write metrics: " + e.getMessage());
+                }
+            }));
+        }
+        if (shards > 0) {
+            if (network == null) network = new SocialNetwork();
+            if (sample && network.getStats().getTotalUsers() == 0) network.initializeSampleData();
+            runSharded(network, shards);
+            network.close();
+            return;
+        }
+        if (port < 0) {
+            SocialNetworkUI ui = network == null ? new SocialNetworkUI() : new SocialNetworkUI(network);
+            ui.run();
+            return;
+        }
+
+        SocialNetwork served = network == null ? new SocialNetwork() : network;
+        if (sample && served.getStats().getTotalUsers() == 0) served.initializeSampleData();
+        if (cacheBytes > 0) served.enableQueryCache(cacheBytes);
+        NetworkServer server = new NetworkServer(served, port);
+        System.out.println("Serving " + served.getStats().getTotalUsers() + " users on 127.0.0.1:" + server.port()
+                + " (Ctrl-C to stop)");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                for (String line : server.latencyReport()) System.out.println(line);
+                served.close();
+            } catch (IOException e) {
+                System.err.println("Shutdown error: " + e.getMessage());
+            }
+        }));
+    }
+
+    // reads queries from stdin until QUIT or end of input
+    private static void runSharded(SocialNetwork network, int shards) throws IOException {
+        try (ShardedNetwork sharded = ShardedNetwork.launch(network, shards)) {
+            System.out.println(sharded.partitionReport());
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            for (String line; (line = in.readLine()) != null; ) {
+                String[] parts = line.trim().split("\\s+");
+                if (parts[0].equalsIgnoreCase("QUIT")) break;
+                if (parts.length != 3) {
+                    System.out.println("Usage: CONNECTED a b | PATH a b | LIGHTEST a b | QUIT");
+                    continue;
+                }
+                switch (parts[0].toUpperCase()) {
+                    case "CONNECTED": System.out.println(sharded.areConnected(parts[1], parts[2])); break;
+                    case "PATH": System.out.println(sharded.findShortestPath(parts[1], parts[2])); break;
+                    case "LIGHTEST": System.out.println(sharded.findLightestPath(parts[1], parts[2])); break;
+                    default: System.out.println("Unknown query " + parts[0]);
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,69 @@
+import java.nio.charset.StandardCharsets;
+
+// Read-only username table stored in a ByteRegion (see GraphSnapshot): UTF-8 names addressed
+// by a long offset table, plus an open-addressing slot table built with UserIndex's hash.
+public class MappedUserIndex extends UserIndex {
+    private final ByteRegion region;
+    private final int users;
+    private final long nameOffsetsPos; // long[users + 1]
+    private final long namesPos;       // UTF-8 bytes
+    private final long slotsPos;       // int[slotCount], id + 1, 0 means empty
+    private final int slotMask;
+
+    MappedUserIndex(ByteRegion region, int users, long nameOffsetsPos, long namesPos,
+                    long slotsPos, int slotCount) {
+        super(1);
+        this.region = region;
+        this.users = users;
+        this.nameOffsetsPos = nameOffsetsPos;
+        this.namesPos = namesPos;
+        this.slotsPos = slotsPos;
+        this.slotMask = slotCount - 1;
+    }
+
+    @Override
+    public int size() {
+        return users;
+    }
+
+    @Override
+    public int idOf(String username) {
+        if (username == null) return -1;
+        byte[] key = username.getBytes(StandardCharsets.UTF_8);
+        for (int i = mix(username.hashCode()) & slotMask; ; i = (i + 1) & slotMask) {
+            int s = region.getInt(slotsPos + 4L * i);
+            if (s == 0) return -1;
+            if (nameEquals(s - 1, key)) return s - 1;
+        }
+    }
+
+    @Override
+    public int add(String username) {
+        int id = idOf(username);
+        if (id >= 0) return id;
+        throw new UnsupportedOperationException("Snapshot user table is read-only");
+    }
+
+    @Override
+    public String nameOf(int id) {
+        if (id < 0 || id >= users) return null;
+        long from = region.getLong(nameOffsetsPos + 8L * id);
+        long to = region.getLong(nameOffsetsPos + 8L * (id + 1));
+        byte[] bytes = new byte[(int) (to - from)];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = region.getByte(namesPos + from + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public UserIndex copy() {
+        return this; // immutable
+    }
+
+    private boolean nameEquals(int id, byte[] key) {
+        long from = region.getLong(nameOffsetsPos + 8L * id);
+        long to = region.getLong(nameOffsetsPos + 8L * (id + 1));
+        if (to - from != key.length) return false;
+        for (int i = 0; i < key.length; i++) if (region.getByte(namesPos + from + i) != key[i]) return false;
+        return true;
+    }
+}
@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Process-wide operation metrics: call counts, latency histograms, graph-search work (nodes
+// visited, edges relaxed, from SearchLabels) and bytes allocated by the calling thread.
+// Instrumented code does
+//     try (Metrics.Scope m = Metrics.begin("SocialNetwork.findShortestPath")) { ... }
+// which, while metrics are disabled, is one field read: begin returns null and nothing is closed.
+public final class Metrics {
+    private static volatile boolean enabled;
+    private static final Map<String, Operation> OPERATIONS = new ConcurrentHashMap<>();
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationCounter();
+
+    // totals for one operation name
+    public static final class Operation {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder nodesVisited = new LongAdder();
+        final LongAdder edgesRelaxed = new LongAdder();
+        final LongAdder bytesAllocated = new LongAdder();
+
+        public long calls() { return latency.count(); }
+        public LatencyHistogram latency() { return latency; }
+        public long nodesVisited() { return nodesVisited.sum(); }
+        public long edgesRelaxed() { return edgesRelaxed.sum(); }
+        public long bytesAllocated() { return bytesAllocated.sum(); }
+    }
+
+    // one timed call; nested scopes are counted in full by each (their work overlaps)
+    public static final class Scope implements AutoCloseable {
+        private final Operation op;
+        private final long startBytes, startVisited, startRelaxed;
+        private final long start;
+
+        private Scope(Operation op) {
+            this.op = op;
+            this.startBytes = allocatedBytes();
+            this.startVisited = SearchLabels.threadVisited();
+            this.startRelaxed = SearchLabels.threadRelaxed();
+            this.start = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            op.latency.record(System.nanoTime() - start);
+            op.nodesVisited.add(SearchLabels.threadVisited() - startVisited);
+            op.edgesRelaxed.add(SearchLabels.threadRelaxed() - startRelaxed);
+            if (startBytes >= 0) op.bytesAllocated.add(allocatedBytes() - startBytes);
+        }
+    }
+
+    private Metrics() {}
+
+    // null (nothing to close) when metrics are off
+    public static Scope begin(String operation) {
+        if (!enabled) return null;
+        Operation op = OPERATIONS.get(operation);
+        if (op == null) op = OPERATIONS.computeIfAbsent(operation, name -> new Operation());
+        return new Scope(op);
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static void reset() {
+        OPERATIONS.clear();
+    }
+
+    // operation name -> totals, sorted by name
+    public static Map<String, Operation> snapshot() {
+        return new TreeMap<>(OPERATIONS);
+    }
+
+    // one line per operation, slowest p99 first
+    public static String report() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-48s %8s %9s %9s %9s %12s %12s %12s%n",
+                "operation", "calls", "p50", "p99", "max", "nodes/call", "edges/call", "bytes/call"));
+        snapshot().entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue().latency.percentile(0.99), a.getValue().latency.percentile(0.99)))
+                .forEach(e -> {
+                    Operation op = e.getValue();
+                    long calls = Math.max(1, op.calls());
+                    out.append(String.format("%-48s %8d %9s %9s %9s %12d %12d %12s%n", e.getKey(), op.calls(),
+                            LatencyHistogram.format(op.latency.percentile(0.50)),
+                            LatencyHistogram.format(op.latency.percentile(0.99)),
+                            LatencyHistogram.format(op.latency.max()),
+                            op.nodesVisited() / calls, op.edgesRelaxed() / calls,
+                            ALLOCATIONS == null ? "n/a" : Long.toString(op.bytesAllocated() / calls)));
+                });
+        return out.toString();
+    }
+
+    // {"enabled":..., "operations": {"name": {"calls":..., "p50Nanos":..., ...}, ...}}
+    public static String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"enabled\":").append(enabled).append(",\"operations\":{");
+        boolean first = true;
+        for (Map.Entry<String, Operation> e : snapshot().entrySet()) {
+            Operation op = e.getValue();
+            if (!first) json.append(',');
+            first = false;
+            json.append('"').append(e.getKey().replace("\\", "\\\\").replace("\"", "\\\"")).append("\":{")
+                .append("\"calls\":").append(op.calls())
+                .append(",\"meanNanos\":").append(Math.round(op.latency.mean()))
+                .append(",\"p50Nanos\":").append(op.latency.percentile(0.50))
+                .append(",\"p90Nanos\":").append(op.latency.percentile(0.90))
+                .append(",\"p99Nanos\":").append(op.latency.percentile(0.99))
+                .append(",\"p999Nanos\":").append(op.latency.percentile(0.999))
+                .append(",\"maxNanos\":").append(op.latency.max())
+                .append(",\"nodesVisited\":").append(op.nodesVisited())
+                .append(",\"edgesRelaxed\":").append(op.edgesRelaxed())
+                .append(",\"bytesAllocated\":").append(ALLOCATIONS == null ? -1 : op.bytesAllocated())
+                .append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    public static void writeJson(Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(toJson());
+            out.write('\n');
+        }
+    }
+
+    // -1 when the JVM cannot count per-thread allocation
+    private static long allocatedBytes() {
+        return ALLOCATIONS == null ? -1 : ALLOCATIONS.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        try {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (!threads.isThreadAllocatedMemorySupported()) return null;
+            threads.setThreadAllocatedMemoryEnabled(true);
+            return threads;
+        } catch (UnsupportedOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
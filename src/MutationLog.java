@@ -0,0 +1,255 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+// Append-only log of SocialNetwork mutations with group commit.
+// Writers append records to an in-memory batch and wait on awaitDurable; one flusher thread
+// writes and fsyncs whatever has accumulated, so concurrent writers share a single fsync.
+//
+// Record: int payloadLength, int CRC32C(payload), payload (little-endian), where payload is
+//   byte ADD_USER, int nameLength, name bytes   or
+//   byte ADD_FRIENDSHIP, int len1, user1 bytes, int len2, user2 bytes, int weight   or
+//   byte REMOVE_USER, int nameLength, name bytes   or
+//   byte REMOVE_FRIENDSHIP, int len1, user1 bytes, int len2, user2 bytes
+public class MutationLog implements Closeable {
+    static final byte ADD_USER = 1;
+    static final byte ADD_FRIENDSHIP = 2;
+    static final byte REMOVE_USER = 3;
+    static final byte REMOVE_FRIENDSHIP = 4;
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+
+    private final FileChannel channel;
+    private final Object lock = new Object();
+    private ByteBuffer batch = newBuffer(64 << 10);
+    private ByteBuffer spare = newBuffer(64 << 10);
+    private long appendedSeq;
+    private long durableSeq;
+    private long size;
+    private boolean closed;
+    private IOException failure;
+    private final Thread flusher;
+
+    private MutationLog(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        channel.position(size);
+        this.flusher = new Thread(this::flushLoop, "mutation-log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // opens (or creates) a log for appending at its end
+    public static MutationLog open(Path file) throws IOException {
+        return new MutationLog(FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    // returns a sequence number to pass to awaitDurable
+    public long appendAddUser(String username) throws IOException {
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = newBuffer(5 + name.length);
+        payload.put(ADD_USER).putInt(name.length).put(name);
+        return append(payload);
+    }
+
+    public long appendAddFriendship(String user1, String user2, int weight) throws IOException {
+        byte[] a = user1.getBytes(StandardCharsets.UTF_8), b = user2.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = newBuffer(13 + a.length + b.length);
+        payload.put(ADD_FRIENDSHIP).putInt(a.length).put(a).putInt(b.length).put(b).putInt(weight);
+        return append(payload);
+    }
+
+    public long appendRemoveUser(String username) throws IOException {
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = newBuffer(5 + name.length);
+        payload.put(REMOVE_USER).putInt(name.length).put(name);
+        return append(payload);
+    }
+
+    public long appendRemoveFriendship(String user1, String user2) throws IOException {
+        byte[] a = user1.getBytes(StandardCharsets.UTF_8), b = user2.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = newBuffer(9 + a.length + b.length);
+        payload.put(REMOVE_FRIENDSHIP).putInt(a.length).put(a).putInt(b.length).put(b);
+        return append(payload);
+    }
+
+    private long append(ByteBuffer payload) throws IOException {
+        payload.flip();
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+        int recordBytes = 8 + payload.remaining();
+        synchronized (lock) {
+            if (failure != null) throw failure;
+            if (closed) throw new IOException("Mutation log is closed");
+            if (batch.remaining() < recordBytes) {
+                ByteBuffer bigger = newBuffer(Math.max(batch.capacity() * 2, batch.position() + recordBytes));
+                batch.flip();
+                bigger.put(batch);
+                batch = bigger;
+            }
+            batch.putInt(payload.remaining()).putInt((int) crc.getValue()).put(payload);
+            size += recordBytes;
+            lock.notifyAll();
+            return ++appendedSeq;
+        }
+    }
+
+    // blocks until every record up to seq has been fsynced
+    public void awaitDurable(long seq) throws IOException {
+        synchronized (lock) {
+            while (durableSeq < seq && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for log flush");
+                }
+            }
+            if (durableSeq < seq) throw failure;
+        }
+    }
+
+    public void sync() throws IOException {
+        long seq;
+        synchronized (lock) {
+            seq = appendedSeq;
+        }
+        awaitDurable(seq);
+    }
+
+    // sequence number of the last record appended
+    public long lastSeq() {
+        synchronized (lock) {
+            return appendedSeq;
+        }
+    }
+
+    // bytes in the log file, including records not yet flushed
+    public long size() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer toWrite;
+            long seq;
+            synchronized (lock) {
+                while (batch.position() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (batch.position() == 0) return;
+                toWrite = batch;
+                batch = spare;
+                seq = appendedSeq;
+            }
+            IOException error = null;
+            try {
+                toWrite.flip();
+                while (toWrite.hasRemaining()) channel.write(toWrite);
+                channel.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+            synchronized (lock) {
+                toWrite.clear();
+                spare = toWrite;
+                if (error != null) failure = error;
+                else durableSeq = seq;
+                lock.notifyAll();
+                if (error != null) return;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) throw failure;
+    }
+
+    // Applies every intact record to network (which must not have a store attached), then cuts
+    // off a torn or corrupt tail left by a crash. Returns the number of records applied.
+    public static long replay(Path file, SocialNetwork network) throws IOException {
+        if (!Files.exists(file)) return 0;
+        long applied = 0;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long end = ch.size(), pos = 0;
+            ByteBuffer header = newBuffer(8);
+            while (pos + 8 <= end) {
+                header.clear();
+                ch.read(header, pos);
+                int len = header.getInt(0), crc = header.getInt(4);
+                if (len <= 0 || len > MAX_RECORD_BYTES || pos + 8 + len > end) break;
+                ByteBuffer payload = newBuffer(len);
+                while (payload.hasRemaining()) ch.read(payload, pos + 8 + payload.position());
+                payload.flip();
+                CRC32C check = new CRC32C();
+                check.update(payload.duplicate());
+                if ((int) check.getValue() != crc || !apply(payload, network)) break;
+                pos += 8 + len;
+                applied++;
+            }
+            if (pos < end) {
+                ch.truncate(pos);
+                ch.force(true);
+            }
+        }
+        return applied;
+    }
+
+    private static boolean apply(ByteBuffer payload, SocialNetwork network) {
+        byte type = payload.get();
+        if (type == ADD_USER) {
+            network.addUser(readString(payload));
+            return true;
+        }
+        if (type == ADD_FRIENDSHIP) {
+            String a = readString(payload), b = readString(payload);
+            network.addFriendship(a, b, payload.getInt());
+            return true;
+        }
+        if (type == REMOVE_USER) {
+            network.removeUser(readString(payload));
+            return true;
+        }
+        if (type == REMOVE_FRIENDSHIP) {
+            String a = readString(payload), b = readString(payload);
+            network.removeFriendship(a, b);
+            return true;
+        }
+        return false;
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
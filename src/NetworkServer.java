@@ -0,0 +1,263 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Line-protocol query server on localhost. One request per line, one response line per request,
+// in order, so clients may pipeline. Fields are separated by tabs (or by spaces if the line has
+// no tab, for usernames without spaces):
+//   ADD_USER name | ADD_FRIEND a b [weight] | REMOVE_USER name | REMOVE_FRIEND a b | FRIENDS a
+//   CONNECTED a b | MUTUAL a b | SUGGEST a [k] | PATH a b | LIGHTEST a b | STATS | LATENCY
+//   METRICS | CACHE | SYNC | QUIT
+// Responses are "OK [result]" or "ERR message"; lists are comma-separated.
+// The network runs in concurrent mode: queries never lock, and writes become visible within the
+// publish delay (SYNC publishes at once). Each connection gets a virtual thread when available;
+// searches (SUGGEST, PATH, LIGHTEST) run on a fixed pool of one worker per core, so per-thread
+// search scratch, O(users) each, exists once per core rather than once per connection.
+public class NetworkServer implements Closeable {
+    private static final int MAX_SUGGESTIONS = 100;
+    private static final long PUBLISH_DELAY_MILLIS = 5;
+
+    enum Op {
+        ADD_USER(1), ADD_FRIEND(2), REMOVE_USER(1), REMOVE_FRIEND(2), FRIENDS(1), CONNECTED(2), MUTUAL(2),
+        SUGGEST(1, true), PATH(2, true), LIGHTEST(2, true), STATS(0), LATENCY(0), METRICS(0), CACHE(0), SYNC(0), QUIT(0);
+
+        final int args; // required arguments; some take one optional extra
+        final boolean search; // needs per-thread search scratch, so runs on a query worker
+        Op(int args) { this(args, false); }
+        Op(int args, boolean search) { this.args = args; this.search = search; }
+    }
+
+    private final SocialNetwork network;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final ExecutorService workers; // bounded, for searches
+    private final Map<Op, LatencyHistogram> latency = new EnumMap<>(Op.class);
+    private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+    private volatile boolean closed;
+
+    // binds 127.0.0.1:port (0 picks a free port) and starts accepting
+    public NetworkServer(SocialNetwork network, int port) throws IOException {
+        this.network = network;
+        for (Op op : Op.values()) latency.put(op, new LatencyHistogram());
+        network.enableConcurrentMode(PUBLISH_DELAY_MILLIS);
+        this.serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+        this.connections = newConnectionExecutor();
+        this.workers = newWorkerPool(Runtime.getRuntime().availableProcessors());
+        this.acceptor = new Thread(this::acceptLoop, "network-server-acceptor");
+        acceptor.start();
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    // virtual thread per connection on Java 21+, else a cached pool of daemon threads
+    static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicInteger ids = new AtomicInteger();
+            ThreadFactory daemons = r -> {
+                Thread t = new Thread(r, "network-client-" + ids.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            };
+            return Executors.newCachedThreadPool(daemons);
+        }
+    }
+
+    static ExecutorService newWorkerPool(int threads) {
+        AtomicInteger ids = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "network-query-" + ids.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                open.add(socket);
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!closed) System.err.println("Accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String response = handle(line);
+                if (response == null) break; // QUIT
+                out.write(response);
+                out.write('\n');
+                // answer a pipelined burst with one write
+                if (!in.ready()) out.flush();
+            }
+            out.flush();
+        } catch (SocketException e) {
+            // client went away
+        } catch (IOException e) {
+            if (!closed) System.err.println("Connection error: " + e.getMessage());
+        } finally {
+            open.remove(socket);
+        }
+    }
+
+    // one request line -> one response line; null closes the connection
+    String handle(String line) {
+        String[] f = line.indexOf('\t') >= 0 ? line.split("\t") : line.trim().split("\\s+");
+        Op op;
+        try {
+            op = Op.valueOf(f[0].trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return "ERR unknown command " + f[0].trim();
+        }
+        if (op == Op.QUIT) return null;
+        if (f.length - 1 < op.args) return "ERR " + op + " needs " + op.args + " argument(s)";
+        long start = System.nanoTime();
+        try {
+            return op.search ? onWorker(op, f) : execute(op, f);
+        } catch (NumberFormatException e) {
+            return "ERR not a number: " + e.getMessage();
+        } catch (UncheckedIOException e) {
+            return "ERR storage failure: " + e.getCause().getMessage();
+        } catch (RuntimeException e) {
+            // a failed request must not take the client's connection down with it
+            return "ERR " + (e.getMessage() != null ? e.getMessage() : e.toString());
+        } finally {
+            latency.get(op).record(System.nanoTime() - start);
+        }
+    }
+
+    // the connection's thread waits, so responses stay in request order
+    private String onWorker(Op op, String[] f) {
+        Future<String> answer = workers.submit(() -> execute(op, f));
+        try {
+            return answer.get();
+        } catch (InterruptedException e) {
+            answer.cancel(true);
+            Thread.currentThread().interrupt();
+            return "ERR interrupted";
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            return "ERR " + e.getCause();
+        } catch (RejectedExecutionException e) {
+            return "ERR server closing";
+        }
+    }
+
+    private String execute(Op op, String[] f) {
+        switch (op) {
+            case ADD_USER:
+                return network.addUser(f[1]) ? "OK" : "ERR invalid or existing user";
+            case ADD_FRIEND: {
+                int weight = f.length > 3 ? Integer.parseInt(f[3].trim()) : 1;
+                return network.addFriendship(f[1], f[2], weight) ? "OK" : "ERR unknown users, already friends or bad weight";
+            }
+            case REMOVE_USER:
+                return network.removeUser(f[1]) ? "OK" : "ERR no such user";
+            case REMOVE_FRIEND:
+                return network.removeFriendship(f[1], f[2]) ? "OK" : "ERR not friends";
+            case FRIENDS: {
+                if (!network.userExists(f[1])) return "ERR no such user";
+                List<String> friends = new ArrayList<>(network.getUserFriends(f[1]));
+                Collections.sort(friends);
+                return "OK " + String.join(",", friends);
+            }
+            case CONNECTED:
+                return "OK " + network.areConnected(f[1], f[2]);
+            case MUTUAL: {
+                List<String> mutual = new ArrayList<>(network.findMutualFriends(f[1], f[2]));
+                Collections.sort(mutual);
+                return "OK " + String.join(",", mutual);
+            }
+            case SUGGEST: {
+                int k = f.length > 2 ? Math.min(MAX_SUGGESTIONS, Integer.parseInt(f[2].trim())) : 10;
+                return "OK " + String.join(",", network.suggestFriends(f[1], k));
+            }
+            case PATH:
+                return pathResponse(network.findShortestPath(f[1], f[2]));
+            case LIGHTEST:
+                return pathResponse(network.findLightestPath(f[1], f[2]));
+            case STATS: {
+                NetworkStats s = network.getStats();
+                return "OK users=" + s.getTotalUsers() + " friendships=" + s.getTotalConnections()
+                        + " components=" + s.getComponentCount() + " largest=" + s.getLargestComponentSize()
+                        + " maxDegree=" + s.getMaxDegree() + " totalWeight=" + s.getTotalEdgeWeight();
+            }
+            case LATENCY:
+                return "OK " + String.join("; ", latencyReport());
+            case METRICS:
+                return Metrics.isEnabled() ? "OK " + Metrics.toJson() : "OK off";
+            case CACHE: {
+                QueryCache cache = network.getQueryCache();
+                return cache == null ? "OK off" : "OK " + cache;
+            }
+            case SYNC:
+                network.publish();
+                return "OK";
+            default:
+                return "ERR unsupported";
+        }
+    }
+
+    private static String pathResponse(List<String> path) {
+        return path == null || path.isEmpty() ? "OK none" : "OK " + String.join(",", path);
+    }
+
+    // "OP n=... p50=... p99=... max=..." for every operation that has been called
+    public List<String> latencyReport() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<Op, LatencyHistogram> e : latency.entrySet()) {
+            if (e.getValue().count() > 0) lines.add(e.getKey() + " " + e.getValue().summary());
+        }
+        return lines;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket s : open) s.close();
+        connections.shutdown();
+        workers.shutdown();
+        try {
+            acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
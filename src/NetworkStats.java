@@ -1,68 +1,372 @@
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.SortedMap;
 
+// Network statistics kept up to date by SocialNetwork on every mutation, so reads are O(1).
+// Users are held in one array ordered by degree, highest first: degree d is the slice
+// [first[d], first[d] + histogram[d]), and a degree change is one swap at a bucket edge.
 public class NetworkStats {
-    private Map<String, User> users;
+    private static final long BETWEENNESS_SEED = 0x5eedL;
+    private static final long TRIANGLE_SEED = 0x7e1aL;
+    private final SocialNetwork network;
+    private final UserIndex names;
+    private final ConnectivityIndex connectivity;
+    private int users;
+    private int connections;
+    private long totalWeight;
+    private int maxDegree;
+    private int[] degree = new int[16];    // by user id
+    private int[] order = new int[16];     // user ids, by degree descending
+    private int[] pos = new int[16];       // slot of each user id in order
+    private int[] histogram = new int[4];  // degree -> number of users
+    private int[] first = new int[4];      // degree -> first slot of its bucket
 
-    public NetworkStats(Map<String, User> users) {
-        this.users = users;
+    public NetworkStats(SocialNetwork network) {
+        this(network, network.userIndex(), network.getConnectivity());
+    }
+
+    private NetworkStats(SocialNetwork network, UserIndex names, ConnectivityIndex connectivity) {
+        this.network = network;
+        this.names = names;
+        this.connectivity = connectivity;
+    }
+
+    // read-only copy over frozen names and components, published to concurrent readers
+    NetworkStats copy(UserIndex names, ConnectivityIndex connectivity) {
+        NetworkStats c = new NetworkStats(network, names, connectivity);
+        c.users = users;
+        c.connections = connections;
+        c.totalWeight = totalWeight;
+        c.maxDegree = maxDegree;
+        c.degree = Arrays.copyOf(degree, users);
+        c.order = Arrays.copyOf(order, users);
+        c.pos = Arrays.copyOf(pos, users);
+        c.histogram = Arrays.copyOf(histogram, maxDegree + 2);
+        c.first = Arrays.copyOf(first, maxDegree + 2);
+        return c;
+    }
+
+    void onUserAdded(int id) {
+        if (id >= degree.length) {
+            degree = Arrays.copyOf(degree, Math.max(id + 1, degree.length * 2));
+            order = Arrays.copyOf(order, degree.length);
+            pos = Arrays.copyOf(pos, degree.length);
+        }
+        // a new user has degree 0, which is the last bucket
+        order[users] = id;
+        pos[id] = users;
+        users++;
+        histogram[0]++;
+    }
+
+    // fills an empty NetworkStats from a whole graph in O(users), bucketing users by degree
+    void loadGraph(CompactGraph g) {
+        int n = g.size();
+        degree = new int[Math.max(16, n)];
+        order = new int[degree.length];
+        pos = new int[degree.length];
+        maxDegree = 0;
+        for (int u = 0; u < n; u++) {
+            degree[u] = g.degree(u);
+            maxDegree = Math.max(maxDegree, degree[u]);
+        }
+        histogram = new int[Math.max(4, maxDegree + 2)];
+        first = new int[histogram.length];
+        for (int u = 0; u < n; u++) histogram[degree[u]]++;
+        for (int d = maxDegree - 1; d >= 0; d--) first[d] = first[d + 1] + histogram[d + 1];
+        int[] fill = first.clone();
+        for (int u = 0; u < n; u++) {
+            order[fill[degree[u]]] = u;
+            pos[u] = fill[degree[u]]++;
+        }
+        users = n;
+        connections = g.edgeCount();
+        totalWeight = g.totalWeight();
+    }
+
+    void onFriendshipAdded(int u, int v, int weight) {
+        connections++;
+        totalWeight += weight;
+        incrementDegree(u);
+        incrementDegree(v);
+    }
+
+    private void incrementDegree(int u) {
+        int d = degree[u]++;
+        if (d + 1 >= histogram.length) {
+            histogram = Arrays.copyOf(histogram, histogram.length * 2);
+            first = Arrays.copyOf(first, first.length * 2);
+        }
+        // swap u to the front of bucket d, then shrink bucket d by one: u now ends bucket d + 1
+        swap(pos[u], first[d]);
+        first[d]++;
+        histogram[d]--;
+        histogram[d + 1]++;
+        maxDegree = Math.max(maxDegree, d + 1);
+    }
+
+    void onFriendshipRemoved(int u, int v, int weight) {
+        connections--;
+        totalWeight -= weight;
+        decrementDegree(u);
+        decrementDegree(v);
+    }
+
+    private void decrementDegree(int u) {
+        int d = degree[u]--;
+        // swap u to the back of bucket d, then shrink bucket d by one: u now starts bucket d - 1
+        swap(pos[u], first[d] + histogram[d] - 1);
+        histogram[d]--;
+        histogram[d - 1]++;
+        first[d - 1]--;
+        while (maxDegree > 0 && histogram[maxDegree] == 0) maxDegree--;
+    }
+
+    // drops a user whose friendships are all removed: it leaves the end of the last bucket
+    void onUserRemoved(int id) {
+        swap(pos[id], users - 1);
+        users--;
+        histogram[0]--;
+        pos[id] = -1;
+    }
+
+    // renumbers the users once removed ones are dropped: newId[u] is u's new id, n the users left
+    void renumber(int[] newId, int n) {
+        int cap = Math.max(16, n);
+        int[] degree2 = new int[cap], order2 = new int[cap], pos2 = new int[cap];
+        for (int i = 0; i < users; i++) {
+            int u = order[i], v = newId[u];
+            order2[i] = v;
+            pos2[v] = i;
+            degree2[v] = degree[u];
+        }
+        degree = degree2;
+        order = order2;
+        pos = pos2;
+    }
+
+    private void swap(int i, int j) {
+        int a = order[i], b = order[j];
+        order[i] = b; pos[b] = i;
+        order[j] = a; pos[a] = j;
     }
 
     public int getTotalUsers() {
-        return users.size();
+        return users;
     }
 
     public int getTotalConnections() {
-        return users.values().stream().mapToInt(User::getFriendCount).sum() / 2;
+        return connections;
     }
 
     public double getAverageFriendsPerUser() {
-        if (users.isEmpty()) return 0.0;
-        return (double) (getTotalConnections() * 2) / users.size();
+        if (users == 0) return 0.0;
+        return (double) (connections * 2L) / users;
     }
 
+    public int getMaxDegree() {
+        return maxDegree;
+    }
+
+    public int getFriendCount(int id) {
+        return degree[id];
+    }
+
+    public String getMostPopularUsername() {
+        return users == 0 ? null : names.nameOf(order[0]);
+    }
+
+    // every user, most friends first; already in order, no sort needed
+    public List<String> getUsernamesByPopularity() {
+        return getTopUsersByDegree(users);
+    }
+
+    // The original User-based API, kept for existing callers. Each call builds User objects with
+    // their friend sets; the username variants above avoid that.
     public User getMostPopularUser() {
-        return users.values().stream().max(Comparator.comparing(User::getFriendCount)).orElse(null);
+        String name = getMostPopularUsername();
+        return name == null ? null : toUser(name);
     }
 
     public List<User> getUsersByPopularity() {
-        return users.values().stream()
-                .sorted(Comparator.comparing(User::getFriendCount).reversed())
-                .collect(Collectors.toList());
+        List<User> all = new ArrayList<>(users);
+        for (String name : getUsernamesByPopularity()) all.add(toUser(name));
+        return all;
+    }
+
+    private User toUser(String name) {
+        User user = new User(name);
+        for (String friend : network.getUserFriends(name)) user.addFriend(friend);
+        return user;
+    }
+
+    public List<String> getTopUsersByDegree(int k) {
+        List<String> top = new ArrayList<>();
+        for (int i = 0; i < Math.min(k, users); i++) top.add(names.nameOf(order[i]));
+        return top;
     }
 
-    public int getTotalEdgeWeight(Map<String, Map<String,Integer>> adj) {
-        // sum all weights divided by 2 (undirected stored twice)
+    // degree -> number of users with that many friends, for degrees 0..max
+    public int[] getDegreeHistogram() {
+        return Arrays.copyOf(histogram, maxDegree + 1);
+    }
+
+    public long getTotalEdgeWeight() {
+        return totalWeight;
+    }
+
+    public double getAverageEdgeWeight() {
+        if (connections == 0) return 0.0;
+        return (double) totalWeight / connections;
+    }
+
+    // Original signatures, summing the given adjacency map (both directions) as they always did
+    @Deprecated
+    public int getTotalEdgeWeight(Map<String, Map<String, Integer>> adj) {
         int sum = 0;
-        for (var m : adj.values()) for (int w : m.values()) sum += w;
+        for (Map<String, Integer> m : adj.values()) for (int w : m.values()) sum += w;
         return sum / 2;
     }
 
-    public double getAverageEdgeWeight(Map<String, Map<String,Integer>> adj) {
-        int edges = getTotalConnections();
-        if (edges == 0) return 0.0;
-        return (double) getTotalEdgeWeight(adj) / edges;
+    @Deprecated
+    public double getAverageEdgeWeight(Map<String, Map<String, Integer>> adj) {
+        if (connections == 0) return 0.0;
+        return (double) getTotalEdgeWeight(adj) / connections;
+    }
+
+    // component reads fold removals first: the splits they cause are found only then
+    public int getComponentCount() {
+        network.view();
+        return connectivity.componentCount();
+    }
+
+    public int getLargestComponentSize() {
+        network.view();
+        return connectivity.largestComponentSize();
+    }
+
+    // component size -> number of components of that size
+    public SortedMap<Integer, Integer> getComponentSizes() {
+        network.view();
+        return connectivity.componentSizeCounts();
+    }
+
+    // The k biggest brokers: users on the most shortest paths between others (Brandes
+    // betweenness, on hops or on friendship weights). Computed on demand, O(users * friendships);
+    // epsilon > 0 samples sources instead, within epsilon of every normalized score (a fraction
+    // of the pairs, in [0, 1]).
+    public List<String> getTopUsersByBetweenness(int k, boolean weighted, double epsilon) {
+        CompactGraph g = network.getGraph();
+        List<String> top = new ArrayList<>();
+        for (int id : betweenness(g, weighted, epsilon).top(k)) top.add(g.nameOf(id));
+        return top;
+    }
+
+    public void displayBetweenness(int k, boolean weighted, double epsilon) {
+        CompactGraph g = network.getGraph();
+        Centrality.Betweenness b = betweenness(g, weighted, epsilon);
+        System.out.println("\n=== Top " + k + " Brokers (" + (weighted ? "weighted" : "hop") + " betweenness) ===");
+        int rank = 1;
+        for (int id : b.top(k)) {
+            System.out.printf("%2d. %-20s %14.1f  (%.4f of pairs)\n", rank++, g.nameOf(id), b.scores[id], b.normalized(id));
+        }
+        if (b.errorBound > 0) {
+            System.out.printf("Estimated from %d of %d sources: within +/-%.1f (+/-%.4f) at %.0f%% confidence\n",
+                    b.sources, g.size(), b.errorBound, b.normalizedErrorBound(), 100 * Centrality.CONFIDENCE);
+        }
+    }
+
+    private static Centrality.Betweenness betweenness(CompactGraph g, boolean weighted, double epsilon) {
+        return epsilon > 0
+                ? Centrality.approximateBetweenness(g, weighted, epsilon, BETWEENNESS_SEED)
+                : Centrality.betweenness(g, weighted);
+    }
+
+    // the k most central users by (weighted) PageRank, computed on demand by power iteration
+    public List<String> getTopUsersByPageRank(int k) {
+        CompactGraph g = network.getGraph();
+        List<String> top = new ArrayList<>();
+        for (int id : PageRank.pageRank(g).top(k)) top.add(g.nameOf(id));
+        return top;
+    }
+
+    public void displayPageRank(int k) {
+        CompactGraph g = network.getGraph();
+        PageRank.Result pr = PageRank.pageRank(g);
+        System.out.println("\n=== Top " + k + " Users by PageRank ===");
+        int rank = 1;
+        for (int id : pr.top(k)) System.out.printf("%2d. %-20s %.6f\n", rank++, g.nameOf(id), pr.scores[id]);
+        System.out.printf("%s after %d iterations (last change %.2e)\n",
+                pr.converged ? "Converged" : "Stopped", pr.iterations, pr.residual);
     }
 
-    public void displayStats(Map<String, Map<String,Integer>> adj) {
+    // Triangles and clustering over the whole graph, computed on demand. A sampleProbability
+    // below 1 estimates them from that fraction of the friendships (much faster on huge graphs).
+    public Triangles.Result getTriangles(double sampleProbability) {
+        CompactGraph g = network.getGraph();
+        return sampleProbability < 1 ? Triangles.estimate(g, sampleProbability, TRIANGLE_SEED) : Triangles.count(g);
+    }
+
+    // fraction of the user's friend pairs who are friends too; -1 for an unknown user
+    public double getClusteringCoefficient(String username) {
+        CompactGraph g = network.getGraph();
+        int id = g.idOf(User.sanitizeUsername(username));
+        return id < 0 ? -1 : Triangles.localClustering(g, id);
+    }
+
+    public void displayClustering(double sampleProbability) {
+        Triangles.Result t = getTriangles(sampleProbability);
+        System.out.println("\n=== Triangles and Clustering" + (t.isExact() ? "" : " (estimated)") + " ===");
+        System.out.println("Triangles: " + t.triangles);
+        System.out.printf("Global clustering coefficient: %.4f\n", t.globalClustering());
+        System.out.printf("Average local clustering coefficient: %.4f\n", t.averageClustering);
+        if (!t.isExact()) System.out.printf("Sampled %.1f%% of friendships\n", 100 * t.sampleProbability);
+    }
+
+    // approximate degrees-of-separation picture of the whole network (HyperANF), computed on demand
+    public HyperAnf.Result getNeighbourhoodFunction() {
+        return HyperAnf.run(network.getGraph());
+    }
+
+    public void displaySeparation(HyperAnf.Result anf) {
+        System.out.println("\n=== Degrees of Separation (estimated) ===");
+        double[] pairs = anf.distanceDistribution();
+        double total = anf.connectedPairs(), seen = 0;
+        System.out.println("Hops  Pairs            Cumulative");
+        for (int t = 1; t < pairs.length; t++) {
+            seen += pairs[t];
+            System.out.printf("%4d  %-15.0f  %6.2f%%\n", t, pairs[t] / 2, total == 0 ? 0.0 : 100 * seen / total);
+        }
+        System.out.printf("Average separation: %.2f hops\n", anf.averageDistance());
+        System.out.printf("Effective diameter (90%% of pairs): %.2f hops\n", anf.effectiveDiameter(0.9));
+        System.out.printf("Counters of %d registers: about %.0f%% error per user\n",
+                1 << anf.bits, 100 * anf.relativeStandardError());
+    }
+
+    // the network's own weights are shown; adj is no longer needed
+    @Deprecated
+    public void displayStats(Map<String, Map<String, Integer>> adj) {
+        displayStats();
+    }
+
+    public void displayStats() {
         System.out.println("\n=== Network Statistics ===");
         System.out.println("Total users: " + getTotalUsers());
         System.out.println("Total friendships: " + getTotalConnections());
         System.out.printf("Average friends per user: %.2f\n", getAverageFriendsPerUser());
-        System.out.println("Total edge weight: " + getTotalEdgeWeight(adj));
-        System.out.printf("Average edge weight: %.2f\n", getAverageEdgeWeight(adj));
-
-        // (optional) print all most-popular users (ties)
-        int maxFriends = users.values().stream().mapToInt(User::getFriendCount).max().orElse(0);
-        List<String> tops = users.values().stream()
-                .filter(u -> u.getFriendCount() == maxFriends)
-                .map(User::getUsername)
-                .sorted().toList();
-        if (!tops.isEmpty()) {
+        System.out.println("Total edge weight: " + getTotalEdgeWeight());
+        System.out.printf("Average edge weight: %.2f\n", getAverageEdgeWeight());
+        System.out.println("Connected components: " + getComponentCount()
+                + " (largest has " + getLargestComponentSize() + " users)");
+
+        // (optional) print all most-popular users (ties): the whole top bucket
+        if (users > 0) {
+            List<String> tops = getTopUsersByDegree(histogram[maxDegree]);
+            tops.sort(null);
             System.out.println("Most popular user(s): " + String.join(", ", tops)
-                    + " (" + maxFriends + " friends)");
+                    + " (" + maxDegree + " friends)");
         }
     }
 
@@ -0,0 +1,283 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Durable home for a SocialNetwork: a directory of generation-numbered files.
+//   snapshot-G.snap  the whole graph at the start of generation G (absent for an empty start)
+//   log-G.log        every mutation made during generation G
+// Recovery loads the newest intact snapshot G and replays log-G and every later log.
+// Once the live log passes the compaction threshold, a new generation is started and its
+// snapshot is written in the background; older files are deleted only after it is durable.
+public class NetworkStore implements Closeable {
+    public static final long DEFAULT_COMPACT_BYTES = 64L << 20;
+    private static final Pattern FILE = Pattern.compile("(snapshot|log)-(\\d{8})\\.(snap|log)");
+
+    private final Path dir;
+    private final SocialNetwork network;
+    private final long compactBytes;
+    private final Object logLock = new Object(); // guards the switch of log and sealedSeq
+    private volatile MutationLog log;
+    private long sealedSeq; // records in the logs closed by this store; later ones number on from here
+    private int generation;
+    private Thread compactor;
+
+    private NetworkStore(Path dir, SocialNetwork network, long compactBytes, int generation) throws IOException {
+        this.dir = dir;
+        this.network = network;
+        this.compactBytes = compactBytes;
+        this.generation = generation;
+        this.log = MutationLog.open(logFile(generation));
+        GraphSnapshot.syncDirectory(dir);
+    }
+
+    public static SocialNetwork open(Path dir) throws IOException {
+        return open(dir, DEFAULT_COMPACT_BYTES);
+    }
+
+    // recovers the network stored in dir (creating it if needed) and logs every later change there
+    public static SocialNetwork open(Path dir, long compactBytes) throws IOException {
+        Files.createDirectories(dir);
+        List<Integer> snapshots = generations(dir, "snapshot");
+        List<Integer> logs = generations(dir, "log");
+
+        SocialNetwork network = null;
+        int base = logs.isEmpty() ? 0 : logs.get(0);
+        for (int i = snapshots.size() - 1; i >= 0 && network == null; i--) {
+            try {
+                network = SocialNetwork.openSnapshot(snapshotFile(dir, snapshots.get(i)), true);
+                base = snapshots.get(i);
+            } catch (IOException e) {
+                // corrupt or half-written snapshot: fall back to an older generation
+            }
+        }
+        if (network == null) network = new SocialNetwork();
+
+        int current = base;
+        for (int g : logs) {
+            if (g < base) continue;
+            MutationLog.replay(logFile(dir, g), network);
+            current = g;
+        }
+        NetworkStore store = new NetworkStore(dir, network, compactBytes, current);
+        store.deleteBefore(base);
+        network.attachStore(store);
+        return network;
+    }
+
+    // Appends are made with the network locked, so records are logged in the order they were
+    // applied. They return a sequence number for awaitDurable.
+    long appendAddUser(String username) {
+        try {
+            return sealedSeq + log.appendAddUser(username);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    long appendAddFriendship(String user1, String user2, int weight) {
+        try {
+            return sealedSeq + log.appendAddFriendship(user1, user2, weight);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    long appendRemoveUser(String username) {
+        try {
+            return sealedSeq + log.appendRemoveUser(username);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    long appendRemoveFriendship(String user1, String user2) {
+        try {
+            return sealedSeq + log.appendRemoveFriendship(user1, user2);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Blocks until record seq is fsynced. Called without the network lock, so writers that
+    // append meanwhile share the same fsync.
+    void awaitDurable(long seq) {
+        MutationLog current;
+        long sealed;
+        synchronized (logLock) {
+            current = log;
+            sealed = sealedSeq;
+        }
+        try {
+            if (seq > sealed) current.awaitDurable(seq - sealed);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        maybeCompact();
+    }
+
+    private synchronized void maybeCompact() {
+        if (log.size() < compactBytes || compactor != null) return;
+        try {
+            startGeneration(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Writes a snapshot of the current state right away, e.g. after a bulk import that bypassed the
+    // log. A background compaction is waited for without holding the store's lock, which the
+    // compactor needs to finish.
+    public void checkpoint() throws IOException {
+        while (true) {
+            Thread running;
+            synchronized (this) {
+                running = compactor;
+                if (running == null || running == Thread.currentThread()) {
+                    startGeneration(true);
+                    return;
+                }
+            }
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for compaction");
+            }
+        }
+    }
+
+    // what checkpointAfter runs on the locked network
+    interface Change<T> {
+        T apply() throws IOException;
+    }
+
+    // Applies a change that bypasses the log, e.g. a bulk import, and checkpoints it without
+    // letting go of the network in between: no writer can log on top of the change until its
+    // snapshot is durable, so recovery never replays later records onto a state without it.
+    // Writers wait for the snapshot as well as the change.
+    <T> T checkpointAfter(Change<T> change) throws IOException {
+        while (true) {
+            Thread running;
+            synchronized (this) { // before the network's lock, the same order as maybeCompact
+                running = compactor;
+                if (running == null || running == Thread.currentThread()) {
+                    synchronized (network) {
+                        T result = change.apply();
+                        startGeneration(true);
+                        return result;
+                    }
+                }
+            }
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for compaction");
+            }
+        }
+    }
+
+    // Seals the current log and starts the next generation from a captured immutable graph.
+    private void startGeneration(boolean synchronous) throws IOException {
+        CompactGraph graph;
+        int[] components;
+        int next = generation + 1;
+        MutationLog fresh = MutationLog.open(logFile(next));
+        GraphSnapshot.syncDirectory(dir); // records acknowledged in the new log must find it after a crash
+        synchronized (network) {
+            // no writer can log between capturing the state and switching logs
+            graph = network.frozenGraph();
+            components = network.componentRoots();
+            MutationLog sealed = log;
+            sealed.close(); // flushes, so waiters on it are released before sealedSeq moves past them
+            synchronized (logLock) {
+                sealedSeq += sealed.lastSeq();
+                log = fresh;
+            }
+            generation = next;
+        }
+
+        Runnable write = () -> {
+            try {
+                GraphSnapshot.write(graph, components, snapshotFile(dir, next)); // durable, rename included
+                deleteBefore(next);
+            } catch (IOException e) {
+                // keep the older snapshot and logs; recovery still has everything it needs
+                System.err.println("Snapshot compaction failed: " + e.getMessage());
+            } finally {
+                synchronized (this) {
+                    compactor = null;
+                }
+            }
+        };
+        if (synchronous) {
+            compactor = Thread.currentThread();
+            write.run();
+        } else {
+            compactor = new Thread(write, "network-compactor");
+            compactor.setDaemon(true);
+            compactor.start();
+        }
+    }
+
+    public int generation() {
+        return generation;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Thread running;
+        synchronized (this) {
+            running = compactor;
+        }
+        if (running != null && running != Thread.currentThread()) {
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.close();
+    }
+
+    private void deleteBefore(int keep) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                Matcher m = FILE.matcher(p.getFileName().toString());
+                if (m.matches() && Integer.parseInt(m.group(2)) < keep) Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    private Path logFile(int g) {
+        return logFile(dir, g);
+    }
+
+    private static Path logFile(Path dir, int g) {
+        return dir.resolve(String.format("log-%08d.log", g));
+    }
+
+    private static Path snapshotFile(Path dir, int g) {
+        return dir.resolve(String.format("snapshot-%08d.snap", g));
+    }
+
+    private static List<Integer> generations(Path dir, String kind) throws IOException {
+        List<Integer> found = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(p -> {
+                Matcher m = FILE.matcher(p.getFileName().toString());
+                if (m.matches() && m.group(1).equals(kind)) found.add(Integer.parseInt(m.group(2)));
+            });
+        }
+        found.sort(null);
+        return found;
+    }
+}
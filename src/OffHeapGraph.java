@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Builds CompactGraphs whose rows, weights and username table live outside the Java heap, in
+// direct memory or in a temporary file mapped from a directory (which the OS can page out).
+// The heap then holds only a few int arrays per user elsewhere, so it and GC pauses stay small
+// as the graph grows; every CompactGraph algorithm reads the region through IntArray views.
+//
+// Region layout (little-endian, sections 8-byte aligned, as in GraphSnapshot):
+//   int[users + 1] offsets, int[edgeEntries] targets, int[edgeEntries] weights,
+//   long[users + 1] name offsets, byte[nameBytes] UTF-8 names, int[slotCount] hash slots
+public class OffHeapGraph {
+    private final Path directory; // null for direct memory
+
+    public OffHeapGraph(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    // New off-heap CSR over every user in names: the rows of base plus count new friendships,
+    // none of them already in base. Rows are merged one user at a time, straight into the
+    // region, so the heap only ever holds the new edges.
+    CompactGraph merge(CompactGraph base, UserIndex names, int[] from, int[] to, int[] w, int count) {
+        return merge(base, names, null, from, to, w, count, new long[0]);
+    }
+
+    // Same, also dropping the base edges in removed (both directions, u << 32 | v, sorted) and,
+    // when newId is given, the users it maps to -1: user u of base and names becomes newId[u].
+    // The new edges already use the new ids.
+    CompactGraph merge(CompactGraph base, UserIndex names, int[] newId, int[] from, int[] to, int[] w, int count,
+                       long[] removed) {
+        int oldN = names.size();
+        int n = oldN;
+        if (newId != null) for (int u = 0; u < oldN; u++) if (newId[u] < 0) n--;
+        int baseN = base.size();
+        long edgeEntries = 2L * base.edgeCount() + 2L * count - removed.length;
+        if (edgeEntries > Integer.MAX_VALUE) throw new IllegalStateException("Too many friendships for one CSR");
+        long nameBytes = 0;
+        for (int u = 0; u < oldN; u++) {
+            if (newId == null || newId[u] >= 0) nameBytes += names.nameOf(u).getBytes(StandardCharsets.UTF_8).length;
+        }
+        int slotCount = Integer.highestOneBit(Math.max(2, n * 2 - 1)) << 1;
+
+        long offsetsPos = 0;
+        long targetsPos = GraphSnapshot.align(offsetsPos + 4L * (n + 1));
+        long weightsPos = GraphSnapshot.align(targetsPos + 4L * edgeEntries);
+        long nameOffsetsPos = GraphSnapshot.align(weightsPos + 4L * edgeEntries);
+        long namesPos = nameOffsetsPos + 8L * (n + 1);
+        long slotsPos = GraphSnapshot.align(namesPos + nameBytes);
+        ByteRegion region = allocate(slotsPos + 4L * slotCount);
+
+        // both directions of each new friendship, ordered by owner: owner << 32 | entry
+        long[] added = new long[2 * count];
+        for (int i = 0; i < count; i++) {
+            added[2 * i] = (long) from[i] << 32 | 2 * i;
+            added[2 * i + 1] = (long) to[i] << 32 | 2 * i + 1;
+        }
+        Arrays.sort(added);
+
+        long[] row = new long[16]; // new entries of one user: target << 32 | weight
+        int e = 0, next = 0, r = 0;
+        long removedWeight = 0;
+        for (int old = 0; old < oldN; old++) {
+            int u = newId == null ? old : newId[old];
+            if (u < 0) {
+                for (; r < removed.length && (int) (removed[r] >>> 32) == old; r++) removedWeight += base.weight(old, (int) removed[r]);
+                continue;
+            }
+            region.putInt(offsetsPos + 4L * u, e);
+            int len = 0;
+            for (; next < added.length && (int) (added[next] >>> 32) == u; next++) {
+                int i = (int) added[next];
+                int v = (i & 1) == 0 ? to[i >> 1] : from[i >> 1];
+                if (len == row.length) row = Arrays.copyOf(row, len * 2);
+                row[len++] = (long) v << 32 | w[i >> 1];
+            }
+            Arrays.sort(row, 0, len);
+            // merge with the base row, less its removed entries; both are sorted by target, and
+            // renumbering keeps the order
+            int b = old < baseN ? base.begin(old) : 0, bEnd = old < baseN ? base.end(old) : 0, a = 0;
+            while (b < bEnd || a < len) {
+                if (b < bEnd && r < removed.length && removed[r] == ((long) old << 32 | base.target(b))) {
+                    removedWeight += base.weight(b++);
+                    r++;
+                    continue;
+                }
+                if (a == len || (b < bEnd && mapped(newId, base.target(b)) < (int) (row[a] >>> 32))) {
+                    region.putInt(targetsPos + 4L * e, mapped(newId, base.target(b)));
+                    region.putInt(weightsPos + 4L * e++, base.weight(b++));
+                } else {
+                    region.putInt(targetsPos + 4L * e, (int) (row[a] >>> 32));
+                    region.putInt(weightsPos + 4L * e++, (int) row[a++]);
+                }
+            }
+        }
+        region.putInt(offsetsPos + 4L * n, e);
+
+        long at = 0;
+        for (int old = 0, u = 0; old < oldN; old++) {
+            if (newId != null && newId[old] < 0) continue;
+            String name = names.nameOf(old);
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            region.putLong(nameOffsetsPos + 8L * u, at);
+            for (byte x : bytes) region.putByte(namesPos + at++, x);
+            int i = UserIndex.mix(name.hashCode()) & (slotCount - 1);
+            while (region.getInt(slotsPos + 4L * i) != 0) i = (i + 1) & (slotCount - 1);
+            region.putInt(slotsPos + 4L * i, ++u);
+        }
+        region.putLong(nameOffsetsPos + 8L * n, at);
+
+        MappedUserIndex table = new MappedUserIndex(region, n, nameOffsetsPos, namesPos, slotsPos, slotCount);
+        return new CompactGraph(table,
+                IntArray.view(region, offsetsPos, n + 1),
+                IntArray.view(region, targetsPos, (int) edgeEntries),
+                IntArray.view(region, weightsPos, (int) edgeEntries),
+                base.totalWeight() + sum(w, count) - removedWeight / 2, false);
+    }
+
+    private static int mapped(int[] newId, int u) {
+        return newId == null ? u : newId[u];
+    }
+
+    private ByteRegion allocate(long size) {
+        if (directory == null) return ByteRegion.allocateDirect(size);
+        try {
+            return ByteRegion.allocateFile(directory, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long sum(int[] values, int count) {
+        long sum = 0;
+        for (int i = 0; i < count; i++) sum += values[i];
+        return sum;
+    }
+}
@@ -0,0 +1,215 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// PageRank over friendships, weighted: a walker at u moves to friend v with probability
+// w(u, v) / strength(u), where strength is u's total friendship weight, and teleports with
+// probability 1 - damping (to a uniform user, or back to the seed for personalized PageRank).
+// Whole-graph scores come from parallel power iteration on primitive arrays; a single user's
+// personalized scores can instead be approximated locally by pushing residual mass outwards.
+@SuppressWarnings("try") // Metrics scopes are never referenced inside their try blocks
+public class PageRank {
+    public static final double DEFAULT_DAMPING = 0.85;
+    public static final double DEFAULT_TOLERANCE = 1e-9;  // L1 change between iterations
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+    public static final double DEFAULT_PUSH_EPSILON = 1e-6;
+
+    private static final ThreadLocal<LocalPush> LOCAL = ThreadLocal.withInitial(LocalPush::new);
+
+    // scores by user id, summing to 1
+    public static final class Result {
+        public final double[] scores;
+        public final int iterations;
+        public final double residual;   // L1 change in the last iteration
+        public final boolean converged;
+
+        Result(double[] scores, int iterations, double residual, boolean converged) {
+            this.scores = scores;
+            this.iterations = iterations;
+            this.residual = residual;
+            this.converged = converged;
+        }
+
+        // ids of the k highest scores, highest first (ties by id)
+        public int[] top(int k) {
+            return Centrality.topIds(scores, k);
+        }
+    }
+
+    // the users a local push reached, with their approximate scores (parallel arrays)
+    public static final class LocalResult {
+        public final int[] users;
+        public final double[] scores;
+        public final int pushes;
+
+        LocalResult(int[] users, double[] scores, int pushes) {
+            this.users = users;
+            this.scores = scores;
+            this.pushes = pushes;
+        }
+    }
+
+    public static Result pageRank(CompactGraph g) {
+        return pageRank(g, DEFAULT_DAMPING, DEFAULT_TOLERANCE, DEFAULT_MAX_ITERATIONS);
+    }
+
+    public static Result pageRank(CompactGraph g, double damping, double tolerance, int maxIterations) {
+        try (Metrics.Scope m = Metrics.begin("PageRank.pageRank")) {
+            return iterate(g, -1, damping, tolerance, maxIterations);
+        }
+    }
+
+    // personalized PageRank: every teleport returns to seed, so scores measure closeness to it
+    public static Result personalized(CompactGraph g, int seed, double damping, double tolerance, int maxIterations) {
+        try (Metrics.Scope m = Metrics.begin("PageRank.personalized")) {
+            if (seed < 0 || seed >= g.size()) throw new IllegalArgumentException("no user " + seed);
+            return iterate(g, seed, damping, tolerance, maxIterations);
+        }
+    }
+
+    // seed < 0 teleports uniformly
+    private static Result iterate(CompactGraph g, int seed, double damping, double tolerance, int maxIterations) {
+        int n = g.size();
+        if (n == 0) return new Result(new double[0], 0, 0.0, true);
+        IntArray offsets = g.offsets(), targets = g.targets(), weights = g.weights();
+        double[] strength = new double[n];
+        IntStream.range(0, n).parallel().forEach(u -> strength[u] = strength(offsets, weights, u));
+
+        double[] rank = new double[n], next = new double[n], share = new double[n];
+        if (seed < 0) Arrays.fill(rank, 1.0 / n);
+        else rank[seed] = 1;
+        int iterations = 0;
+        double residual = Double.MAX_VALUE;
+        while (iterations < maxIterations && residual > tolerance) {
+            double[] current = rank;
+            // users without friends hand their whole rank to the teleport target
+            double dangling = IntStream.range(0, n).parallel().mapToDouble(u -> {
+                share[u] = strength[u] > 0 ? current[u] / strength[u] : 0;
+                return strength[u] > 0 ? 0 : current[u];
+            }).sum();
+            double teleport = 1 - damping + damping * dangling;
+            double uniform = teleport / n;
+            double[] out = next;
+            // pull from friends: each user writes only its own slot
+            residual = IntStream.range(0, n).parallel().mapToDouble(v -> {
+                double sum = 0;
+                for (int e = offsets.get(v), end = offsets.get(v + 1); e < end; e++) {
+                    int w = weights.get(e);
+                    if (w > 0) sum += share[targets.get(e)] * w;
+                }
+                double r = damping * sum + (seed < 0 ? uniform : v == seed ? teleport : 0);
+                out[v] = r;
+                return Math.abs(r - current[v]);
+            }).sum();
+            next = rank;
+            rank = out;
+            iterations++;
+        }
+        return new Result(rank, iterations, residual, residual <= tolerance);
+    }
+
+    // Local personalized PageRank (Andersen, Chung & Lang push): the seed starts with all the
+    // residual mass; pushing a user keeps 1 - damping of its residual as score and spreads the
+    // rest over its friends by weight. Stops once every residual is below epsilon * strength, so
+    // only the seed's neighbourhood is touched and each score is low by at most about that much.
+    public static LocalResult approximatePersonalized(CompactGraph g, int seed, double damping, double epsilon) {
+        try (Metrics.Scope m = Metrics.begin("PageRank.approximatePersonalized")) {
+            if (seed < 0 || seed >= g.size()) throw new IllegalArgumentException("no user " + seed);
+            return LOCAL.get().run(g, seed, damping, epsilon);
+        }
+    }
+
+    private static double strength(IntArray offsets, IntArray weights, int u) {
+        double sum = 0;
+        for (int e = offsets.get(u), end = offsets.get(u + 1); e < end; e++) {
+            int w = weights.get(e);
+            if (w > 0) sum += w;
+        }
+        return sum;
+    }
+
+    // per-thread push state; entries are valid only when stamped with the current epoch
+    private static final class LocalPush {
+        private double[] score = new double[0];
+        private double[] residual = new double[0];
+        private double[] strength = new double[0];
+        private boolean[] queued = new boolean[0];
+        private int[] stamp = new int[0];
+        private int[] touched = new int[0];
+        private int[] queue = new int[0]; // circular; a user is queued at most once at a time
+        private int epoch, count;
+
+        LocalResult run(CompactGraph g, int seed, double damping, double epsilon) {
+            reset(g.size());
+            touch(g, seed);
+            if (strength[seed] == 0) return new LocalResult(new int[] { seed }, new double[] { 1.0 }, 0);
+            residual[seed] = 1;
+            int head = 0, size = 0, pushes = 0, n = queue.length;
+            queue[size++] = seed;
+            queued[seed] = true;
+            while (size > 0) {
+                int u = queue[head];
+                head = (head + 1) % n;
+                size--;
+                queued[u] = false;
+                double r = residual[u];
+                residual[u] = 0;
+                score[u] += (1 - damping) * r;
+                double spread = damping * r / strength[u];
+                pushes++;
+                for (int e = g.begin(u); e < g.end(u); e++) {
+                    int w = g.weight(e);
+                    if (w <= 0) continue; // skip bad weights
+                    int v = g.target(e);
+                    touch(g, v);
+                    residual[v] += spread * w;
+                    if (!queued[v] && residual[v] >= epsilon * strength[v]) {
+                        queue[(head + size++) % n] = v;
+                        queued[v] = true;
+                    }
+                }
+            }
+            int kept = 0;
+            int[] users = new int[count];
+            double[] scores = new double[count];
+            for (int i = 0; i < count; i++) {
+                int v = touched[i];
+                if (score[v] > 0) {
+                    users[kept] = v;
+                    scores[kept++] = score[v];
+                }
+            }
+            return new LocalResult(Arrays.copyOf(users, kept), Arrays.copyOf(scores, kept), pushes);
+        }
+
+        // first visit this query: clear v's slots and cache its strength
+        private void touch(CompactGraph g, int v) {
+            if (stamp[v] == epoch) return;
+            stamp[v] = epoch;
+            score[v] = 0;
+            residual[v] = 0;
+            queued[v] = false;
+            double sum = 0;
+            for (int e = g.begin(v); e < g.end(v); e++) if (g.weight(e) > 0) sum += g.weight(e);
+            strength[v] = sum;
+            touched[count++] = v;
+        }
+
+        private void reset(int n) {
+            if (n > stamp.length) {
+                score = new double[n];
+                residual = new double[n];
+                strength = new double[n];
+                queued = new boolean[n];
+                stamp = new int[n];
+                touched = new int[n];
+                queue = new int[n];
+                epoch = 0;
+            }
+            count = 0;
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(stamp, 0);
+                epoch = 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Many path queries at once. Pairs are grouped by a shared endpoint (the source, or the target
+// when there are fewer distinct targets, since friendships are undirected) and each group is
+// answered by a single BFS or Dijkstra that stops once all of its targets are settled. Groups
+// run on the fork-join pool, and every answer goes to the listener as soon as its target is
+// settled, from whichever worker found it. A group of one pair uses the faster point-to-point
+// search (bidirectional, or ALT when landmarks are given).
+@SuppressWarnings("try") // Metrics scopes are never referenced inside their try blocks
+public class PathBatch {
+    private static final int SAMPLES = 8; // point-to-point answers before choosing a shared search
+    private static final ThreadLocal<Targets> LOCAL = ThreadLocal.withInitial(Targets::new);
+
+    // path is null when the users are unknown or not connected; called concurrently
+    public interface Listener {
+        void onPath(int index, List<String> path);
+    }
+
+    // pairs[i] = {user1, user2}; returns once every pair has been answered
+    public static void findPaths(CompactGraph g, List<String[]> pairs, boolean weighted, LandmarkOracle oracle,
+                                 Listener listener) {
+        try (Metrics.Scope m = Metrics.begin("PathBatch.findPaths")) {
+            int count = pairs.size();
+            int[] from = new int[count], to = new int[count];
+            List<Integer> searched = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                String[] pair = pairs.get(i);
+                from[i] = pair[0] == null ? -1 : g.idOf(User.sanitizeUsername(pair[0]));
+                to[i] = pair[1] == null ? -1 : g.idOf(User.sanitizeUsername(pair[1]));
+                if (from[i] < 0 || to[i] < 0) listener.onPath(i, null);
+                else if (from[i] == to[i]) listener.onPath(i, new ArrayList<>(List.of(g.nameOf(from[i]))));
+                else searched.add(i);
+            }
+            if (searched.isEmpty()) return;
+
+            boolean bySource = distinct(from, searched) <= distinct(to, searched);
+            int[] root = bySource ? from : to, other = bySource ? to : from;
+            // pair indices ordered by root: root << 32 | index
+            long[] order = new long[searched.size()];
+            for (int i = 0; i < order.length; i++) order[i] = (long) root[searched.get(i)] << 32 | searched.get(i);
+            Arrays.parallelSort(order);
+            List<int[]> groups = new ArrayList<>(); // [start, end) in order
+            for (int start = 0, end; start < order.length; start = end) {
+                end = start + 1;
+                while (end < order.length && order[end] >>> 32 == order[start] >>> 32) end++;
+                groups.add(new int[] { start, end });
+            }
+
+            int[] nextPair = new int[count]; // chains of pairs per target, each owned by one group
+            IntStream.range(0, groups.size()).parallel().forEach(gi -> LOCAL.get().search(
+                    g, order, groups.get(gi)[0], groups.get(gi)[1], other, nextPair, weighted, oracle, !bySource, listener));
+        }
+    }
+
+    private static int distinct(int[] ids, List<Integer> pairs) {
+        int[] values = new int[pairs.size()];
+        for (int i = 0; i < values.length; i++) values[i] = ids[pairs.get(i)];
+        Arrays.sort(values);
+        int count = 0;
+        for (int i = 0; i < values.length; i++) if (i == 0 || values[i] != values[i - 1]) count++;
+        return count;
+    }
+
+    private static List<String> pointToPoint(CompactGraph g, int s, int t, boolean weighted, LandmarkOracle oracle) {
+        String a = g.nameOf(s), b = g.nameOf(t);
+        if (!weighted) return GraphOperations.findShortestPath(a, b, g);
+        return oracle != null
+                ? GraphOperations.findLightestPath(a, b, g, oracle)
+                : GraphOperations.findLightestPathBidirectional(a, b, g);
+    }
+
+    // per-thread target marks: first[v] heads the chain of pairs whose target is v (valid only
+    // when stamped with the current epoch; -1 once answered)
+    private static final class Targets {
+        private int[] first = new int[0];
+        private int[] stamp = new int[0];
+        private int[] distinct = new int[0];
+        private int epoch;
+
+        void search(CompactGraph g, long[] order, int start, int end, int[] other, int[] nextPair,
+                    boolean weighted, LandmarkOracle oracle, boolean reversed, Listener listener) {
+            reset(g.size());
+            int root = (int) (order[start] >>> 32);
+            int remaining = 0;
+            for (int k = start; k < end; k++) {
+                int i = (int) order[k], t = other[i];
+                if (stamp[t] != epoch) {
+                    stamp[t] = epoch;
+                    first[t] = -1;
+                    distinct[remaining++] = t;
+                }
+                nextPair[i] = first[t];
+                first[t] = i;
+            }
+
+            // A shared search runs until its farthest target, which for scattered targets means
+            // scanning most friendships, while a point-to-point search labels users around its two
+            // ends and scans few of their friendships. So answer targets one at a time until the
+            // users they label on average, times the targets left, exceed the friendship count.
+            long visited = 0, arcs = 2L * g.edgeCount();
+            for (int done = 0; remaining > 0; done++) {
+                if (done >= SAMPLES && visited / done * remaining >= arcs) break;
+                int t = distinct[done];
+                long before = SearchLabels.threadVisited();
+                List<String> path = reversed
+                        ? pointToPoint(g, t, root, weighted, oracle)
+                        : pointToPoint(g, root, t, weighted, oracle);
+                visited += SearchLabels.threadVisited() - before;
+                emit(t, path, nextPair, listener);
+                remaining--;
+            }
+            if (remaining > 0) shared(g, root, remaining, nextPair, weighted, reversed, listener);
+        }
+
+        // one BFS or Dijkstra from root that answers targets as they are settled
+        private void shared(CompactGraph g, int root, int remaining, int[] nextPair, boolean weighted,
+                            boolean reversed, Listener listener) {
+            SearchLabels labels = SearchLabels.get(0, g.size());
+            if (weighted) {
+                IndexedMinHeap pq = labels.heap;
+                labels.set(root, 0, -1);
+                pq.push(root, 0);
+                while (!pq.isEmpty() && remaining > 0) {
+                    int u = pq.poll();
+                    if (isPending(u)) {
+                        emit(u, path(g, labels, u, reversed), nextPair, listener);
+                        remaining--;
+                    }
+                    GraphOperations.relax(g, u, labels, pq);
+                }
+            } else {
+                // BFS parents are final when first labelled, so targets are answered on discovery
+                labels.visit(root, 0, -1);
+                while (labels.head < labels.tail && remaining > 0) {
+                    int u = labels.queue[labels.head++];
+                    for (int e = g.begin(u); e < g.end(u) && remaining > 0; e++) {
+                        int v = g.target(e);
+                        if (labels.reached(v)) continue;
+                        labels.visit(v, labels.dist(u) + 1, u);
+                        if (isPending(v)) {
+                            emit(v, path(g, labels, v, reversed), nextPair, listener);
+                            remaining--;
+                        }
+                    }
+                }
+            }
+            // targets the search never reached are in other components
+            for (int k = 0; remaining > 0; k++) {
+                int t = distinct[k];
+                if (!isPending(t)) continue;
+                emit(t, null, nextPair, listener);
+                remaining--;
+            }
+        }
+
+        private boolean isPending(int v) {
+            return stamp[v] == epoch && first[v] >= 0;
+        }
+
+        private static List<String> path(CompactGraph g, SearchLabels labels, int t, boolean reversed) {
+            List<String> path = new ArrayList<>(GraphOperations.buildPath(g, labels, t));
+            if (reversed) Collections.reverse(path);
+            return path;
+        }
+
+        // hands the path to every pair waiting on t, each with its own copy
+        private void emit(int t, List<String> path, int[] nextPair, Listener listener) {
+            for (int i = first[t]; i >= 0; i = nextPair[i]) {
+                listener.onPath(i, path != null && nextPair[i] >= 0 ? new ArrayList<>(path) : path);
+            }
+            first[t] = -1;
+        }
+
+        private void reset(int n) {
+            if (n > stamp.length) {
+                first = new int[n];
+                stamp = new int[n];
+                distinct = new int[n];
+                epoch = 0;
+            }
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(stamp, 0);
+                epoch = 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,331 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+// LRU cache of query answers (mutual friends, suggestions, shortest paths) under a memory budget.
+// New friendships are recorded as they are made and applied when they become visible to queries
+// (SocialNetwork calls invalidate with the new graph), evicting only answers they can change:
+//   MUTUAL(a, b)   if a or b is an endpoint
+//   SUGGEST(a, k)  if a is an endpoint or a friend of one (a's friends-of-friends changed)
+//   PATH(a, b)     if a and b were disconnected and now are not, or if the edge u-v creates a
+//                  shorter route: d(a, u) + 1 + d(v, b) < cached length (bounded BFS from u and v)
+// Removed friendships and users are recorded by name and evict the same MUTUAL and SUGGEST
+// entries; a cached path goes stale only if it runs along a removed friendship or through a
+// removed user (a removal never connects anyone, so "no path" answers stay valid).
+public class QueryCache {
+    enum Kind { MUTUAL, SUGGEST, PATH }
+
+    static final Object NONE = new Object(); // cached "no answer" (e.g. no path)
+    static final Object MISS = new Object();
+    private static final int PATH_CHECK_EDGES = 32;  // larger batches drop path entries instead
+    private static final int MAX_RECORDED_EDGES = 1 << 16;
+
+    static final class Key {
+        final Kind kind;
+        final String a, b; // sanitized usernames; b is null for SUGGEST
+        final int k;
+
+        Key(Kind kind, String a, String b, int k) {
+            this.kind = kind;
+            this.a = a;
+            this.b = b;
+            this.k = k;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return kind == other.kind && k == other.k && a.equals(other.a) && Objects.equals(b, other.b);
+        }
+
+        @Override
+        public int hashCode() {
+            return (kind.hashCode() * 31 + a.hashCode()) * 31 + Objects.hashCode(b) + k;
+        }
+    }
+
+    private static final class Entry {
+        final Object value;
+        final long bytes;
+
+        Entry(Object value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    private final long budgetBytes;
+    private long usedBytes;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, Set<Key>> byUser = new HashMap<>(); // MUTUAL and SUGGEST keys of each user
+    private final Set<Key> paths = new HashSet<>();
+    private long epoch; // bumped by every invalidation; puts computed before one are dropped
+    private int[] recorded = new int[32]; // endpoints of friendships not yet invalidated
+    private int recordedCount;
+    private boolean overflow;
+    private final Set<List<String>> removedEdges = new HashSet<>(); // {a, b}, a < b
+    private final Set<String> removedUsers = new HashSet<>();
+    private boolean changed; // friendships made or removed since the last invalidate
+    private long hits, misses, evictions, invalidations;
+
+    public QueryCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    synchronized long epoch() {
+        return epoch;
+    }
+
+    // the cached value, NONE for a cached empty answer, or MISS
+    synchronized Object get(Key key) {
+        Entry e = entries.get(key);
+        if (e == null) {
+            misses++;
+            return MISS;
+        }
+        hits++;
+        return e.value;
+    }
+
+    // stores an answer computed after reading epoch; dropped if an invalidation ran meanwhile
+    synchronized void put(Key key, Object value, long computedAtEpoch) {
+        if (computedAtEpoch != epoch) return;
+        long bytes = estimateBytes(key, value);
+        if (bytes > budgetBytes) return;
+        remove(key);
+        entries.put(key, new Entry(value == null ? NONE : value, bytes));
+        usedBytes += bytes;
+        if (key.kind == Kind.PATH) paths.add(key);
+        else {
+            byUser.computeIfAbsent(key.a, x -> new HashSet<>()).add(key);
+            if (key.b != null) byUser.computeIfAbsent(key.b, x -> new HashSet<>()).add(key);
+        }
+        // least recently used first
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (usedBytes > budgetBytes && it.hasNext()) {
+            Map.Entry<Key, Entry> lru = it.next();
+            it.remove();
+            unlink(lru.getKey(), lru.getValue());
+            evictions++;
+        }
+    }
+
+    // called by the writer (holding the network lock) for each new friendship
+    synchronized void recordEdge(int u, int v) {
+        changed = true;
+        if (overflow) return;
+        if (recordedCount == MAX_RECORDED_EDGES) {
+            overflow = true;
+            return;
+        }
+        if (recordedCount * 2 == recorded.length) recorded = Arrays.copyOf(recorded, recorded.length * 2);
+        recorded[recordedCount * 2] = u;
+        recorded[recordedCount * 2 + 1] = v;
+        recordedCount++;
+    }
+
+    // called by the writer for each removed friendship (a, b), or removed user a (b null)
+    synchronized void recordRemoval(String a, String b) {
+        changed = true;
+        if (overflow) return;
+        if (removedEdges.size() + removedUsers.size() == MAX_RECORDED_EDGES) {
+            overflow = true;
+            return;
+        }
+        if (b == null) removedUsers.add(a);
+        else removedEdges.add(a.compareTo(b) < 0 ? List.of(a, b) : List.of(b, a));
+    }
+
+    // the recorded friendships in the ids of a graph without some users: newId[u] is u's new id,
+    // -1 for removed users (whose friendships are gone too)
+    synchronized void renumber(int[] newId) {
+        int kept = 0;
+        for (int i = 0; i < recordedCount; i++) {
+            int u = newId[recorded[i * 2]], v = newId[recorded[i * 2 + 1]];
+            if (u < 0 || v < 0) continue;
+            recorded[kept * 2] = u;
+            recorded[kept * 2 + 1] = v;
+            kept++;
+        }
+        recordedCount = kept;
+    }
+
+    // Applies the recorded changes, all of which are now in g; components must match g.
+    synchronized void invalidate(CompactGraph g, ConnectivityIndex components) {
+        if (!changed) return;
+        changed = false;
+        epoch++;
+        if (overflow) {
+            // a bulk import: cheaper to start over than to trace millions of edges
+            invalidations += entries.size();
+            clear();
+            return;
+        }
+        int before = entries.size();
+        for (int i = 0; i < recordedCount * 2; i++) evictAround(g, g.nameOf(recorded[i]));
+        for (List<String> edge : removedEdges) {
+            evictAround(g, edge.get(0));
+            evictAround(g, edge.get(1));
+        }
+        for (String name : removedUsers) evictUser(name, null);
+        if (!paths.isEmpty()) {
+            invalidatePaths(g, components);
+            if (!removedEdges.isEmpty() || !removedUsers.isEmpty()) invalidateRemovedPaths();
+        }
+        invalidations += before - entries.size();
+        recordedCount = 0;
+        removedEdges.clear();
+        removedUsers.clear();
+    }
+
+    // an endpoint's own entries, and the suggestions of its friends in g
+    private void evictAround(CompactGraph g, String name) {
+        evictUser(name, null);
+        int x = g.idOf(name);
+        if (x < 0) return;
+        for (int e = g.begin(x); e < g.end(x); e++) evictUser(g.nameOf(g.target(e)), Kind.SUGGEST);
+    }
+
+    private void invalidateRemovedPaths() {
+        List<Key> stale = new ArrayList<>();
+        for (Key key : paths) {
+            Object path = entries.get(key).value;
+            if (path == NONE) continue;
+            List<?> names = (List<?>) path;
+            for (int i = 0; i < names.size(); i++) {
+                String x = (String) names.get(i);
+                if (removedUsers.contains(x)) { stale.add(key); break; }
+                if (i == 0) continue;
+                String p = (String) names.get(i - 1);
+                if (removedEdges.contains(p.compareTo(x) < 0 ? List.of(p, x) : List.of(x, p))) { stale.add(key); break; }
+            }
+        }
+        for (Key key : stale) remove(key);
+    }
+
+    private void invalidatePaths(CompactGraph g, ConnectivityIndex components) {
+        int longest = 0;
+        List<Key> stale = new ArrayList<>();
+        for (Key key : paths) {
+            Object path = entries.get(key).value;
+            if (path == NONE) {
+                int a = g.idOf(key.a), b = g.idOf(key.b);
+                if (a >= 0 && b >= 0 && components.connected(a, b)) stale.add(key);
+            } else {
+                longest = Math.max(longest, ((List<?>) path).size() - 1);
+            }
+        }
+        if (recordedCount > PATH_CHECK_EDGES) {
+            for (Key key : paths) if (entries.get(key).value != NONE) stale.add(key);
+        } else if (longest >= 2) {
+            // an edge u-v can only shorten a path of length L if d(a, u) + d(v, b) <= L - 2
+            for (int i = 0; i < recordedCount; i++) {
+                SearchLabels fromU = bfs(g, recorded[i * 2], 0, longest - 2);
+                SearchLabels fromV = bfs(g, recorded[i * 2 + 1], 1, longest - 2);
+                for (Key key : paths) {
+                    Object path = entries.get(key).value;
+                    if (path == NONE) continue;
+                    int a = g.idOf(key.a), b = g.idOf(key.b);
+                    long through = Math.min(hops(fromU, a) + hops(fromV, b), hops(fromV, a) + hops(fromU, b));
+                    if (through + 1 < ((List<?>) path).size() - 1) stale.add(key);
+                }
+            }
+        }
+        for (Key key : stale) remove(key);
+    }
+
+    private static long hops(SearchLabels labels, int v) {
+        return v >= 0 && labels.reached(v) ? labels.dist(v) : Integer.MAX_VALUE;
+    }
+
+    private static SearchLabels bfs(CompactGraph g, int src, int side, int maxDepth) {
+        SearchLabels labels = SearchLabels.get(side, g.size());
+        labels.visit(src, 0, -1);
+        while (labels.head < labels.tail) {
+            int x = labels.queue[labels.head++];
+            long d = labels.dist(x);
+            if (d >= maxDepth) continue;
+            for (int e = g.begin(x); e < g.end(x); e++) {
+                int y = g.target(e);
+                if (!labels.reached(y)) labels.visit(y, d + 1, x);
+            }
+        }
+        return labels;
+    }
+
+    // removes the user's MUTUAL and SUGGEST entries, or only those of one kind
+    private void evictUser(String name, Kind only) {
+        Set<Key> keys = byUser.get(name);
+        if (keys == null) return;
+        for (Key key : new ArrayList<>(keys)) if (only == null || key.kind == only) remove(key);
+    }
+
+    private void remove(Key key) {
+        Entry e = entries.remove(key);
+        if (e != null) unlink(key, e);
+    }
+
+    private void unlink(Key key, Entry e) {
+        usedBytes -= e.bytes;
+        if (key.kind == Kind.PATH) {
+            paths.remove(key);
+            return;
+        }
+        unlinkUser(key.a, key);
+        if (key.b != null) unlinkUser(key.b, key);
+    }
+
+    private void unlinkUser(String name, Key key) {
+        Set<Key> keys = byUser.get(name);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) byUser.remove(name);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        byUser.clear();
+        paths.clear();
+        usedBytes = 0;
+        recordedCount = 0;
+        removedEdges.clear();
+        removedUsers.clear();
+        overflow = false;
+        changed = false;
+        epoch++;
+    }
+
+    // rough retained size: entry and key objects, strings at 2 bytes per char, list/set slots
+    private static long estimateBytes(Key key, Object value) {
+        long bytes = 160 + 2L * key.a.length() + (key.b == null ? 0 : 48 + 2L * key.b.length());
+        if (value instanceof Iterable) {
+            for (Object o : (Iterable<?>) value) bytes += 48 + 2L * o.toString().length();
+        }
+        return bytes;
+    }
+
+    public synchronized long hits() { return hits; }
+    public synchronized long misses() { return misses; }
+    public synchronized long evictions() { return evictions; }     // dropped to stay within budget
+    public synchronized long invalidations() { return invalidations; } // dropped because a friendship changed them
+    public synchronized int size() { return entries.size(); }
+    public synchronized long usedBytes() { return usedBytes; }
+    public long budgetBytes() { return budgetBytes; }
+
+    public synchronized double hitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d entries, %d/%d KB, hit rate %.1f%% (%d hits, %d misses), %d evictions, %d invalidations",
+                entries.size(), usedBytes >> 10, budgetBytes >> 10, 100 * hitRate(), hits, misses, evictions, invalidations);
+    }
+}
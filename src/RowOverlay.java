@@ -0,0 +1,145 @@
+import java.util.Arrays;
+
+// Rows of a CompactGraph rewritten since its CSR was built, so a write costs the degrees of the
+// users it touches instead of a rebuild. Each rewritten row is stored whole, sorted, in an arena
+// that later overlays go on appending to (entries past an overlay's own are never read through
+// it); a two-level directory maps a user to their row, and a new overlay copies only the
+// directory pages it changes. Rows replaced again stay behind in the arena until the graph is
+// compacted into a fresh CSR.
+public final class RowOverlay {
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE = 1 << PAGE_BITS;
+
+    final int size;            // users, possibly more than the CSR has
+    final long edgeEntries;    // row entries of the whole graph, both directions of every friendship
+    final long totalWeight;
+    final int[] targets;       // the arena as of this overlay
+    final int[] weights;
+    final int used;            // arena entries written so far, live rows and replaced ones
+    private final long[][] pages; // user -> (arena start + 1) << 32 | length; 0 while the row is the CSR's
+    private final Arena arena;
+
+    // shared by an overlay and every overlay patched from it; only the writer that owns the graph appends
+    private static final class Arena {
+        int[] targets, weights;
+        int used;
+
+        Arena(int capacity) {
+            targets = new int[Math.max(16, capacity)];
+            weights = new int[targets.length];
+        }
+
+        // room for len more entries; a bigger arena leaves the old arrays to the overlays reading them
+        int reserve(int len) {
+            if (used + len > targets.length) {
+                long cap = Math.max(used + (long) len, 2L * targets.length);
+                if (cap > Integer.MAX_VALUE - 8) throw new IllegalStateException("Row overlay too large; compact the graph");
+                targets = Arrays.copyOf(targets, (int) cap);
+                weights = Arrays.copyOf(weights, (int) cap);
+            }
+            int start = used;
+            used += len;
+            return start;
+        }
+    }
+
+    private RowOverlay(int size, long edgeEntries, long totalWeight, long[][] pages, Arena arena) {
+        this.size = size;
+        this.edgeEntries = edgeEntries;
+        this.totalWeight = totalWeight;
+        this.pages = pages;
+        this.arena = arena;
+        this.targets = arena.targets;
+        this.weights = arena.weights;
+        this.used = arena.used;
+    }
+
+    // packed row of u, or 0 if u still has its CSR row
+    long row(int u) {
+        int p = u >>> PAGE_BITS;
+        long[] page = p < pages.length ? pages[p] : null;
+        return page == null ? 0 : page[u & (PAGE - 1)];
+    }
+
+    static int start(long row) {
+        return (int) (row >>> 32) - 1;
+    }
+
+    static int length(long row) {
+        return (int) row;
+    }
+
+    // Overlay of g (whose own overlay is prev, or null) over size users, with the entries of
+    // added (row << 32 | target, both directions, sorted; weights alongside) inserted and those
+    // of removed (same form, all present in g) dropped. O(degrees of the rows touched).
+    static RowOverlay patch(CompactGraph g, RowOverlay prev, int size, long[] added, int[] addedWeights, long[] removed) {
+        Arena arena = prev != null ? prev.arena : new Arena(2 * (added.length + removed.length));
+        long[][] old = prev != null ? prev.pages : new long[0][];
+        long[][] pages = Arrays.copyOf(old, (size + PAGE - 1) >>> PAGE_BITS);
+        long entries = 2L * g.edgeCount(), weightChange = 0; // weightChange counts both directions
+        int a = 0, r = 0;
+        while (a < added.length || r < removed.length) {
+            int u = (int) (Math.min(a < added.length ? added[a] : Long.MAX_VALUE,
+                    r < removed.length ? removed[r] : Long.MAX_VALUE) >>> 32);
+            int aEnd = a, rEnd = r;
+            while (aEnd < added.length && (int) (added[aEnd] >>> 32) == u) aEnd++;
+            while (rEnd < removed.length && (int) (removed[rEnd] >>> 32) == u) rEnd++;
+            int len = g.degree(u) + (aEnd - a) - (rEnd - r);
+            int start = arena.reserve(len), at = start;
+            int[] targets = arena.targets, weights = arena.weights;
+            // merge the sorted row with the sorted additions, skipping the removed targets
+            for (int e = g.begin(u), end = g.end(u); e < end || a < aEnd; ) {
+                if (a < aEnd && (e == end || (int) added[a] < g.target(e))) {
+                    targets[at] = (int) added[a];
+                    weights[at++] = addedWeights[a];
+                    weightChange += addedWeights[a++];
+                } else if (r < rEnd && (int) removed[r] == g.target(e)) {
+                    weightChange -= g.weight(e++);
+                    r++;
+                } else {
+                    targets[at] = g.target(e);
+                    weights[at++] = g.weight(e++);
+                }
+            }
+            entries += len - g.degree(u);
+            a = aEnd;
+            r = rEnd;
+
+            int p = u >>> PAGE_BITS;
+            if (pages[p] == null) pages[p] = new long[PAGE];
+            else if (p < old.length && pages[p] == old[p]) pages[p] = pages[p].clone();
+            pages[p][u & (PAGE - 1)] = (long) (start + 1) << 32 | len;
+        }
+        return new RowOverlay(size, entries, g.totalWeight() + weightChange / 2, pages, arena);
+    }
+
+    // Overlay over base, a CSR compacted from captured, holding the rows of live (patched from
+    // captured since) that differ from captured's, copied into a fresh arena
+    static RowOverlay carry(RowOverlay liveRows, RowOverlay capturedRows) {
+        long[][] kept = new long[liveRows.pages.length][];
+        long[][] before = capturedRows != null ? capturedRows.pages : new long[0][];
+        int count = 0;
+        for (int p = 0; p < kept.length; p++) {
+            long[] page = liveRows.pages[p], was = p < before.length ? before[p] : null;
+            if (page == null || page == was) continue;
+            for (int i = 0; i < PAGE; i++) {
+                if (page[i] == 0 || (was != null && was[i] == page[i])) continue;
+                if (kept[p] == null) kept[p] = new long[PAGE];
+                kept[p][i] = page[i];
+                count += length(page[i]);
+            }
+        }
+        Arena arena = new Arena(2 * count);
+        for (long[] page : kept) {
+            if (page == null) continue;
+            for (int i = 0; i < PAGE; i++) {
+                if (page[i] == 0) continue;
+                int len = length(page[i]), start = arena.reserve(len);
+                System.arraycopy(liveRows.targets, start(page[i]), arena.targets, start, len);
+                System.arraycopy(liveRows.weights, start(page[i]), arena.weights, start, len);
+                page[i] = (long) (start + 1) << 32 | len;
+            }
+        }
+        return new RowOverlay(liveRows.size, liveRows.edgeEntries, liveRows.totalWeight, kept, arena);
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.Arrays;
+
+// Per-thread distance/parent labels for graph searches.
+// Entries are valid only when stamped with the current epoch, so a new query costs O(1) to
+// "clear" and only the vertices it actually reaches are ever written.
+public class SearchLabels {
+    private static final ThreadLocal<SearchLabels[]> LOCAL =
+            ThreadLocal.withInitial(() -> new SearchLabels[] { new SearchLabels(), new SearchLabels() });
+
+    private long[] dist = new long[0];
+    private int[] parent = new int[0];
+    private int[] stamp = new int[0];
+    private int epoch;
+    final IndexedMinHeap heap = new IndexedMinHeap(1);
+    int[] queue = new int[0]; // BFS queue; [head, tail) is the part not yet expanded
+    int head, tail;
+    long visited, relaxed; // lifetime totals for Metrics: distinct vertices labelled, label writes
+
+    // the calling thread's forward (0) or backward (1) labels, reset for a graph of n users
+    public static SearchLabels get(int side, int n) {
+        SearchLabels labels = LOCAL.get()[side];
+        labels.reset(n);
+        return labels;
+    }
+
+    // the calling thread's totals over both sides
+    static long threadVisited() {
+        SearchLabels[] both = LOCAL.get();
+        return both[0].visited + both[1].visited;
+    }
+
+    static long threadRelaxed() {
+        SearchLabels[] both = LOCAL.get();
+        return both[0].relaxed + both[1].relaxed;
+    }
+
+    public void reset(int n) {
+        if (n > stamp.length) {
+            dist = new long[n];
+            parent = new int[n];
+            stamp = new int[n];
+            queue = new int[n];
+            epoch = 0;
+        }
+        head = tail = 0;
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            epoch = 1;
+        }
+        heap.reset(n);
+    }
+
+    public boolean reached(int v) { return stamp[v] == epoch; }
+    public long dist(int v) { return stamp[v] == epoch ? dist[v] : Long.MAX_VALUE; }
+    public int parent(int v) { return stamp[v] == epoch ? parent[v] : -1; }
+
+    // label v and append it to the BFS queue
+    public void visit(int v, long d, int p) {
+        set(v, d, p);
+        queue[tail++] = v;
+    }
+
+    public void set(int v, long d, int p) {
+        if (stamp[v] != epoch) visited++;
+        relaxed++;
+        stamp[v] = epoch;
+        dist[v] = d;
+        parent[v] = p;
+    }
+}
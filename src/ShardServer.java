@@ -0,0 +1,172 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+// One shard of a ShardedNetwork, run as its own process: "java ShardServer <shard file>". It holds
+// the users it owns with their friendship rows, plus ghost entries for friends owned by other
+// shards, prints "PORT n" once it listens on 127.0.0.1 and serves the coordinator's connection.
+// A search runs in rounds; each round brings the frontier entries relaxed into this shard by the
+// others, settles its users up to the round's distance bound, and answers with the entries it
+// relaxed across the cut, all batched in one message each way.
+public class ShardServer {
+    static final byte QUIT = 0, ROUND = 1, PATH = 2;
+    static final byte HOPS = 0, WEIGHTS = 1, REACH = 2; // search modes
+    static final long UNREACHED = Long.MAX_VALUE;
+    static final int ENTRY_BYTES = 16; // global id, distance, parent's global id
+
+    private final int owned;        // local ids below owned are this shard's users, the rest ghosts
+    private final int[] global;     // global id of each local id; both ranges sorted
+    private final int[] offsets, targets, weights; // rows of the owned users, targets as local ids
+    private final long[] dist;
+    private final int[] parent;     // parent's global id, -1 at the source
+    private final int[] stamp;      // query that labelled each local id
+    private final int[] sentIn;     // round each ghost was last queued for sending
+    private final int[] out;
+    private final IndexedMinHeap heap;
+    private int query = -1, round;
+    private byte mode;
+
+    ShardServer(DataInputStream in) throws IOException {
+        owned = in.readInt();
+        int ghosts = in.readInt();
+        global = readInts(in, owned + ghosts);
+        offsets = readInts(in, owned + 1);
+        targets = readInts(in, offsets[owned]);
+        weights = readInts(in, offsets[owned]);
+        dist = new long[owned + ghosts];
+        parent = new int[owned + ghosts];
+        stamp = new int[owned + ghosts];
+        Arrays.fill(stamp, -1);
+        sentIn = new int[owned + ghosts];
+        out = new int[ghosts];
+        heap = new IndexedMinHeap(owned);
+    }
+
+    public static void main(String[] args) throws IOException {
+        ShardServer shard;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(args[0]))))) {
+            shard = new ShardServer(in);
+        }
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            System.out.println("PORT " + server.getLocalPort());
+            System.out.flush();
+            try (Socket socket = server.accept()) {
+                socket.setTcpNoDelay(true);
+                shard.serve(new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+                        new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())));
+            }
+        }
+    }
+
+    void serve(DataInputStream in, DataOutputStream out) throws IOException {
+        while (true) {
+            byte op;
+            try {
+                op = in.readByte();
+            } catch (EOFException e) {
+                return; // coordinator gone
+            }
+            if (op == QUIT) return;
+            if (op == ROUND) round(in, out);
+            else if (op == PATH) path(in.readInt(), out);
+            else throw new IOException("Unknown shard request " + op);
+            out.flush();
+        }
+    }
+
+    // request: query, mode, bound, target, count, count entries
+    // reply: least queued distance, target's distance, users settled, count, count ghost entries
+    private void round(DataInputStream in, DataOutputStream reply) throws IOException {
+        int q = in.readInt();
+        byte m = in.readByte();
+        long bound = in.readLong();
+        int target = localOwned(in.readInt());
+        int count = in.readInt();
+        if (q != query) {
+            query = q;
+            mode = m;
+            heap.reset(owned);
+        }
+        round++;
+        for (int i = 0; i < count; i++) {
+            int v = localOwned(in.readInt());
+            long d = in.readLong();
+            int p = in.readInt();
+            if (v >= 0 && improves(v, d)) label(v, d, p);
+        }
+        int settled = 0, sent = 0;
+        while (!heap.isEmpty() && heap.peekKey() <= bound) {
+            if (mode == REACH && target >= 0 && stamp[target] == query) break;
+            int u = heap.poll();
+            settled++;
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int v = targets[e];
+                long d = dist[u] + (mode == WEIGHTS ? weights[e] : 1);
+                if (!improves(v, d)) continue;
+                label(v, d, global[u]);
+                if (v >= owned && sentIn[v] != round) {
+                    sentIn[v] = round;
+                    out[sent++] = v;
+                }
+            }
+        }
+        reply.writeLong(heap.isEmpty() ? UNREACHED : heap.peekKey());
+        reply.writeLong(target >= 0 && stamp[target] == query ? dist[target] : UNREACHED);
+        reply.writeInt(settled);
+        reply.writeInt(sent);
+        for (int i = 0; i < sent; i++) {
+            reply.writeInt(global[out[i]]);
+            reply.writeLong(dist[out[i]]);
+            reply.writeInt(parent[out[i]]);
+        }
+    }
+
+    // reply: the users on the parent chain from v that this shard owns, then the next user on the
+    // chain (owned by another shard), or -1 at the source
+    private void path(int v, DataOutputStream reply) throws IOException {
+        int[] chain = new int[16];
+        int n = 0, x = localOwned(v), next = -1;
+        while (x >= 0) {
+            if (n == chain.length) chain = Arrays.copyOf(chain, n * 2);
+            chain[n++] = global[x];
+            next = parent[x];
+            x = next < 0 ? -1 : localOwned(next);
+        }
+        reply.writeInt(n);
+        for (int i = 0; i < n; i++) reply.writeInt(chain[i]);
+        reply.writeInt(next);
+    }
+
+    // ghosts keep the best distance already sent, so each is sent again only when it improves
+    private boolean improves(int v, long d) {
+        return stamp[v] != query || mode != REACH && d < dist[v];
+    }
+
+    private void label(int v, long d, int p) {
+        stamp[v] = query;
+        dist[v] = d;
+        parent[v] = p;
+        if (v < owned) heap.push(v, d);
+    }
+
+    private int localOwned(int g) {
+        if (g < 0) return -1;
+        int i = Arrays.binarySearch(global, 0, owned, g);
+        return i < 0 ? -1 : i;
+    }
+
+    private static int[] readInts(DataInputStream in, int n) throws IOException {
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++) a[i] = in.readInt();
+        return a;
+    }
+}
@@ -0,0 +1,389 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// A read-only copy of a network split across shard processes on this machine. Users are
+// partitioned by edge cut (linear deterministic greedy: each user joins the shard holding most of
+// its friends, discounted by how full that shard is); every shard keeps ghost entries for friends
+// across the cut. Searches run as coordinated rounds of frontier exchange: each round every busy
+// shard gets one batched message with the entries other shards relaxed into it and settles its
+// users up to a common distance bound (the least queued distance plus the lightest friendship,
+// minus one), so a user settled in a round is final. Every query reports its cross-shard traffic.
+public class ShardedNetwork implements Closeable {
+    private static final int ROUND_HEADER_BYTES = 1 + 4 + 1 + 8 + 4 + 4;
+    private static final int ROUND_REPLY_HEADER_BYTES = 8 + 8 + 4 + 4;
+    private static final double CAPACITY_SLACK = 1.05;
+
+    private final UserIndex index;
+    private final int[] owner; // shard of each user
+    private final int[] ownedCounts, ghostCounts;
+    private final long cutEdges, edges;
+    private final int lightest; // least friendship weight
+    private final Process[] processes;
+    private final DataInputStream[] in;
+    private final DataOutputStream[] out;
+    private final Socket[] sockets;
+    private int query;
+
+    // what a query found, and what it cost in shard traffic
+    public static class Result {
+        public boolean connected;
+        public List<String> path;    // null unless a path query found one
+        public long distance = -1;   // hops or total weight of path
+        public int rounds;
+        public int messages;         // requests and replies
+        public long bytes;           // both ways, payload only
+        public long frontierEntries; // relaxations sent across the cut
+        public final long[] settled; // users settled on each shard
+
+        Result(int shards) {
+            settled = new long[shards];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            if (path != null) sb.append(String.join(" -> ", path)).append(" (distance ").append(distance).append(')');
+            else sb.append(connected ? "connected" : "not connected");
+            sb.append(String.format("%n  %d rounds, %d messages, %d bytes, %d cross-shard frontier entries, settled per shard %s",
+                    rounds, messages, bytes, frontierEntries, Arrays.toString(settled)));
+            return sb.toString();
+        }
+    }
+
+    // pending frontier entries for one shard
+    private static class Batch {
+        int[] ids = new int[16], parents = new int[16];
+        long[] dists = new long[16];
+        int size;
+
+        void add(int id, long dist, int parent) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                parents = Arrays.copyOf(parents, size * 2);
+                dists = Arrays.copyOf(dists, size * 2);
+            }
+            ids[size] = id; dists[size] = dist; parents[size] = parent;
+            size++;
+        }
+
+        long min() {
+            long m = ShardServer.UNREACHED;
+            for (int i = 0; i < size; i++) m = Math.min(m, dists[i]);
+            return m;
+        }
+    }
+
+    private ShardedNetwork(CompactGraph g, int[] owner, int shards, Path dir) throws IOException {
+        this.owner = owner;
+        this.index = new UserIndex(g.size());
+        for (int u = 0; u < g.size(); u++) index.add(g.nameOf(u));
+        int[][] ownedBy = usersByShard(owner, shards);
+        ownedCounts = new int[shards];
+        ghostCounts = new int[shards];
+        long cut = 0;
+        int least = Integer.MAX_VALUE;
+        for (int u = 0; u < g.size(); u++) {
+            for (int e = g.begin(u); e < g.end(u); e++) {
+                if (owner[g.target(e)] != owner[u]) cut++;
+                least = Math.min(least, g.weight(e));
+            }
+        }
+        cutEdges = cut / 2;
+        edges = g.edgeCount();
+        lightest = least == Integer.MAX_VALUE ? 1 : least;
+        processes = new Process[shards];
+        in = new DataInputStream[shards];
+        out = new DataOutputStream[shards];
+        sockets = new Socket[shards];
+        try {
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            for (int s = 0; s < shards; s++) {
+                Path file = dir.resolve("shard-" + s + ".bin");
+                ghostCounts[s] = writeShard(g, owner, s, ownedBy[s], file);
+                ownedCounts[s] = ownedBy[s].length;
+                processes[s] = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "ShardServer", file.toString())
+                        .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            }
+            for (int s = 0; s < shards; s++) {
+                BufferedReader lines = new BufferedReader(new InputStreamReader(processes[s].getInputStream(), StandardCharsets.UTF_8));
+                String line = lines.readLine();
+                if (line == null || !line.startsWith("PORT ")) throw new IOException("Shard " + s + " failed to start");
+                sockets[s] = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(line.substring(5).trim()));
+                sockets[s].setTcpNoDelay(true);
+                in[s] = new DataInputStream(new BufferedInputStream(sockets[s].getInputStream()));
+                out[s] = new DataOutputStream(new BufferedOutputStream(sockets[s].getOutputStream()));
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    // partitions the network's current graph and starts one local process per shard
+    public static ShardedNetwork launch(SocialNetwork network, int shards) throws IOException {
+        if (shards < 1) throw new IllegalArgumentException("Need at least one shard");
+        CompactGraph g = network.getGraph();
+        Path dir = Files.createTempDirectory("shards");
+        try {
+            return new ShardedNetwork(g, partition(g, shards), shards, dir);
+        } finally {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path f : (Iterable<Path>) files::iterator) Files.deleteIfExists(f);
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    // Linear deterministic greedy edge-cut partitioning, streaming the users in BFS order so
+    // friends arrive close together: each joins the shard with most already-placed friends,
+    // weighted by the room left under a capacity of n / shards plus 5%.
+    static int[] partition(CompactGraph g, int shards) {
+        int n = g.size();
+        int[] owner = new int[n];
+        Arrays.fill(owner, -1);
+        int[] load = new int[shards], friends = new int[shards];
+        double capacity = Math.max(1, Math.ceil(n * CAPACITY_SLACK / shards));
+        SearchLabels order = SearchLabels.get(0, n);
+        for (int s = 0; s < n; s++) {
+            if (order.reached(s)) continue;
+            order.visit(s, 0, -1);
+            while (order.head < order.tail) {
+                int u = order.queue[order.head++];
+                for (int e = g.begin(u); e < g.end(u); e++) {
+                    int v = g.target(e);
+                    if (owner[v] >= 0) friends[owner[v]]++;
+                    if (!order.reached(v)) order.visit(v, 0, u);
+                }
+                int best = -1;
+                double bestScore = -1;
+                for (int k = 0; k < shards; k++) {
+                    if (load[k] >= capacity) continue;
+                    double score = friends[k] * (1 - load[k] / capacity);
+                    if (score > bestScore || score == bestScore && load[k] < load[best]) { best = k; bestScore = score; }
+                }
+                owner[u] = best;
+                load[best]++;
+                Arrays.fill(friends, 0);
+            }
+        }
+        return owner;
+    }
+
+    private static int[][] usersByShard(int[] owner, int shards) {
+        int[] counts = new int[shards];
+        for (int s : owner) counts[s]++;
+        int[][] users = new int[shards][];
+        for (int s = 0; s < shards; s++) users[s] = new int[counts[s]];
+        Arrays.fill(counts, 0);
+        for (int u = 0; u < owner.length; u++) users[owner[u]][counts[owner[u]]++] = u;
+        return users;
+    }
+
+    // owned count, ghost count, global ids (owned, then ghosts), CSR of the owned rows over
+    // local ids, weights; returns the ghost count
+    private static int writeShard(CompactGraph g, int[] owner, int shard, int[] owned, Path file) throws IOException {
+        int[] ghosts = new int[16];
+        int ghostCount = 0, rowEntries = 0;
+        for (int u : owned) {
+            rowEntries += g.degree(u);
+            for (int e = g.begin(u); e < g.end(u); e++) {
+                int v = g.target(e);
+                if (owner[v] == shard) continue;
+                if (ghostCount == ghosts.length) ghosts = Arrays.copyOf(ghosts, ghostCount * 2);
+                ghosts[ghostCount++] = v;
+            }
+        }
+        Arrays.sort(ghosts, 0, ghostCount);
+        int unique = 0;
+        for (int i = 0; i < ghostCount; i++) if (unique == 0 || ghosts[i] != ghosts[unique - 1]) ghosts[unique++] = ghosts[i];
+        try (DataOutputStream w = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            w.writeInt(owned.length);
+            w.writeInt(unique);
+            for (int u : owned) w.writeInt(u);
+            for (int i = 0; i < unique; i++) w.writeInt(ghosts[i]);
+            int offset = 0;
+            for (int u : owned) {
+                w.writeInt(offset);
+                offset += g.degree(u);
+            }
+            w.writeInt(rowEntries);
+            for (int u : owned) {
+                for (int e = g.begin(u); e < g.end(u); e++) {
+                    int v = g.target(e);
+                    w.writeInt(owner[v] == shard
+                            ? Arrays.binarySearch(owned, v)
+                            : owned.length + Arrays.binarySearch(ghosts, 0, unique, v));
+                }
+            }
+            for (int u : owned) for (int e = g.begin(u); e < g.end(u); e++) w.writeInt(g.weight(e));
+        }
+        return unique;
+    }
+
+    public int shardCount() {
+        return processes.length;
+    }
+
+    public int shardOf(String username) {
+        int u = username == null ? -1 : index.idOf(User.sanitizeUsername(username));
+        return u < 0 ? -1 : owner[u];
+    }
+
+    // users, ghosts and the share of friendships cut, per shard
+    public String partitionReport() {
+        StringBuilder sb = new StringBuilder(String.format("%d shards, %d of %d friendships cut (%.1f%%)",
+                shardCount(), cutEdges, edges, edges == 0 ? 0 : 100.0 * cutEdges / edges));
+        for (int s = 0; s < shardCount(); s++) {
+            sb.append(String.format("%n  shard %d: %d users, %d ghosts", s, ownedCounts[s], ghostCounts[s]));
+        }
+        return sb.toString();
+    }
+
+    public synchronized Result areConnected(String user1, String user2) throws IOException {
+        return search(user1, user2, ShardServer.REACH);
+    }
+
+    // fewest hops
+    public synchronized Result findShortestPath(String user1, String user2) throws IOException {
+        return search(user1, user2, ShardServer.HOPS);
+    }
+
+    // least total friendship weight
+    public synchronized Result findLightestPath(String user1, String user2) throws IOException {
+        return search(user1, user2, ShardServer.WEIGHTS);
+    }
+
+    private Result search(String user1, String user2, byte mode) throws IOException {
+        int shards = shardCount();
+        Result result = new Result(shards);
+        if (!User.areValidUsernames(user1, user2)) return result;
+        int src = index.idOf(User.sanitizeUsername(user1)), dst = index.idOf(User.sanitizeUsername(user2));
+        if (src < 0 || dst < 0) return result;
+        if (src == dst) return found(result, mode, 0, Collections.singletonList(index.nameOf(src)));
+
+        int q = query++;
+        Batch[] batches = new Batch[shards];
+        for (int s = 0; s < shards; s++) batches[s] = new Batch();
+        long[] queued = new long[shards]; // least queued distance per shard
+        Arrays.fill(queued, ShardServer.UNREACHED);
+        batches[owner[src]].add(src, 0, -1);
+        boolean[] active = new boolean[shards];
+        long best = ShardServer.UNREACHED;
+        while (true) {
+            long min = ShardServer.UNREACHED;
+            for (int s = 0; s < shards; s++) min = Math.min(min, Math.min(queued[s], batches[s].min()));
+            // nothing left to settle, or nothing left that could beat the target's distance
+            if (min == ShardServer.UNREACHED || mode != ShardServer.REACH && best <= min) break;
+            long bound = mode == ShardServer.REACH ? ShardServer.UNREACHED
+                    : min + (mode == ShardServer.WEIGHTS ? lightest : 1) - 1;
+            for (int s = 0; s < shards; s++) {
+                Batch b = batches[s];
+                active[s] = b.size > 0 || queued[s] != ShardServer.UNREACHED && queued[s] <= bound;
+                if (!active[s]) continue;
+                out[s].writeByte(ShardServer.ROUND);
+                out[s].writeInt(q);
+                out[s].writeByte(mode);
+                out[s].writeLong(bound);
+                out[s].writeInt(dst);
+                out[s].writeInt(b.size);
+                for (int i = 0; i < b.size; i++) {
+                    out[s].writeInt(b.ids[i]);
+                    out[s].writeLong(b.dists[i]);
+                    out[s].writeInt(b.parents[i]);
+                }
+                out[s].flush();
+                result.bytes += ROUND_HEADER_BYTES + (long) ShardServer.ENTRY_BYTES * b.size;
+                result.messages++;
+                b.size = 0;
+            }
+            // the shards work in parallel; collect their replies
+            for (int s = 0; s < shards; s++) {
+                if (!active[s]) continue;
+                queued[s] = in[s].readLong();
+                best = Math.min(best, in[s].readLong());
+                result.settled[s] += in[s].readInt();
+                int sent = in[s].readInt();
+                for (int i = 0; i < sent; i++) {
+                    int v = in[s].readInt();
+                    batches[owner[v]].add(v, in[s].readLong(), in[s].readInt());
+                }
+                result.frontierEntries += sent;
+                result.bytes += ROUND_REPLY_HEADER_BYTES + (long) ShardServer.ENTRY_BYTES * sent;
+                result.messages++;
+            }
+            result.rounds++;
+            if (mode == ShardServer.REACH && best != ShardServer.UNREACHED) break;
+        }
+        if (best == ShardServer.UNREACHED) return result;
+        return found(result, mode, best, mode == ShardServer.REACH ? null : path(dst, result));
+    }
+
+    private static Result found(Result result, byte mode, long distance, List<String> path) {
+        result.connected = true;
+        if (mode != ShardServer.REACH) {
+            result.distance = distance;
+            result.path = path;
+        }
+        return result;
+    }
+
+    // follows the parent chain back to the source, one request per shard crossed
+    private List<String> path(int dst, Result result) throws IOException {
+        List<String> path = new ArrayList<>();
+        for (int v = dst; v >= 0; ) {
+            int s = owner[v];
+            out[s].writeByte(ShardServer.PATH);
+            out[s].writeInt(v);
+            out[s].flush();
+            int n = in[s].readInt();
+            for (int i = 0; i < n; i++) path.add(index.nameOf(in[s].readInt()));
+            v = in[s].readInt();
+            result.messages += 2;
+            result.bytes += 1 + 4 + 4 + 4L * n + 4;
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    @Override
+    public void close() {
+        for (int s = 0; s < processes.length; s++) {
+            try {
+                if (out[s] != null) {
+                    out[s].writeByte(ShardServer.QUIT);
+                    out[s].flush();
+                }
+                if (sockets[s] != null) sockets[s].close();
+            } catch (IOException e) {
+                // the process is stopped below either way
+            }
+        }
+        for (Process p : processes) {
+            if (p == null) continue;
+            try {
+                if (!p.waitFor(2, TimeUnit.SECONDS)) p.destroyForcibly();
+            } catch (InterruptedException e) {
+                p.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -1,54 +1,283 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
-public class SocialNetwork {
-    private final Map<String, Map<String, Integer>> adj = new HashMap<>();
-    private Map<String, User> users;
+// Writers are serialized on this object. By default queries run on the caller's thread against
+// the live state; in concurrent mode they read an immutable published Version without locking.
+// Public operations are timed by Metrics scopes (a null check while metrics are off).
+@SuppressWarnings("try") // the scopes are never referenced inside their try blocks
+public class SocialNetwork implements Closeable {
+    // usernames are interned to dense ids; edges live once, in the graph or the pending buffer.
+    // The graph is a compacted CSR plus the rows rewritten since (see RowOverlay); writes are
+    // buffered until a read folds them in: new edges in pending, removed graph edges in removed,
+    // every removed friendship in cuts for the connectivity index and removed users in dropped.
+    // Removed users stay hidden in the index, keeping their ids, until the next compaction.
+    // Compaction waits until the overlay or the removed users pass 1/COMPACT_FRACTION of the graph.
+    private static final int COMPACT_FRACTION = 8;
+    private static final int MIN_OVERLAY_ENTRIES = 1 << 14;
+    private final UserIndex index;
+    private final EdgeBuffer pending = new EdgeBuffer();
+    private final EdgeBuffer removed = new EdgeBuffer();
+    private long[] cuts = new long[16]; // u << 32 | v, in the order they were removed
+    private int cutCount;
+    private int[] dropped = new int[16]; // users removed since the last fold
+    private int droppedCount;
+    private final ConnectivityIndex connectivity = new ConnectivityIndex();
+    private CompactGraph graph = CompactGraph.empty();
     private NetworkStats stats;
+    // Landmarks are patched as friendships are added; removals make them stale (oracle null
+    // while enabled) until a background build catches up, searches falling back to Dijkstra
+    private LandmarkOracle oracle;
+    private long oracleBudgetBytes;
+    private boolean oracleEnabled;
+    private long oracleEpoch; // bumped whenever a build in progress can no longer be installed
+    private final EdgeBuffer oracleAdds = new EdgeBuffer(); // folded in since that build began
+    private Thread oracleBuilder;
+    private NetworkStore store; // null unless opened through NetworkStore
+    private OffHeapGraph offHeap; // null: CSRs are built on the heap
+    private volatile QueryCache cache;
 
-    private void ensureAdj(String u) {
-        adj.computeIfAbsent(u, k -> new HashMap<>());
+    // concurrent mode: everything a query needs, frozen together and swapped in atomically
+    private static final class Version {
+        final CompactGraph graph; // over a frozen copy of the names
+        final ConnectivityIndex connectivity;
+        final NetworkStats stats;
+        final LandmarkOracle oracle;
+
+        Version(CompactGraph graph, ConnectivityIndex connectivity, NetworkStats stats, LandmarkOracle oracle) {
+            this.graph = graph;
+            this.connectivity = connectivity;
+            this.stats = stats;
+            this.oracle = oracle;
+        }
     }
 
+    private volatile Version published; // non-null in concurrent mode
+    private Thread publisher;
+    private long publishDelayMillis;
+    private boolean dirty; // writes not yet published
+    private boolean compacting; // a compaction is running outside the lock (see publish)
+
     public SocialNetwork() {
-        this.users = new HashMap<>();
-        this.stats = new NetworkStats(users);
+        this.index = new UserIndex();
+        this.stats = new NetworkStats(this);
     }
 
-    public boolean addUser(String username) {
-        if (!User.isValidUsername(username)) return false;
-        username = User.sanitizeUsername(username);
-        if (users.containsKey(username)) return false;
+    // network whose graph is a memory-mapped snapshot; new users and friendships go on top
+    private SocialNetwork(GraphSnapshot snapshot) {
+        this.graph = snapshot.graph();
+        this.index = new UserIndex(graph.index());
+        this.stats = new NetworkStats(this);
+        stats.loadGraph(graph);
+        connectivity.loadComponents(snapshot.components());
+    }
+
+    // Opens a snapshot written by saveSnapshot. Queries run straight off the mapped file, with
+    // changes rewritten on top of it, until the first compaction builds a heap CSR.
+    public static SocialNetwork openSnapshot(Path file, boolean verifyChecksum) throws IOException {
+        return new SocialNetwork(GraphSnapshot.load(file, verifyChecksum));
+    }
+
+    public void saveSnapshot(Path file) throws IOException {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.saveSnapshot")) {
+            CompactGraph g;
+            int[] components;
+            synchronized (this) {
+                g = frozenGraph();
+                components = componentRoots();
+            }
+            GraphSnapshot.write(g, components, file);
+        }
+    }
+
+    // union-find root of every user, as stored in snapshots
+    synchronized int[] componentRoots() {
+        int[] roots = new int[index.size()];
+        for (int u = 0; u < roots.length; u++) roots[u] = connectivity.find(u);
+        return roots;
+    }
+
+    // from now on every change is logged to store before the call returns
+    synchronized void attachStore(NetworkStore store) {
+        this.store = store;
+    }
+
+    public synchronized NetworkStore getStore() {
+        return store;
+    }
+
+    // stops the publisher and flushes and closes the attached store, if any
+    @Override
+    public void close() throws IOException {
+        NetworkStore s;
+        synchronized (this) {
+            disableConcurrentMode();
+            s = store;
+            store = null;
+        }
+        if (s != null) s.close();
+    }
+
+    // Concurrent mode: queries stop locking and read the latest published version, so they scale
+    // with cores, while writers batch into the next one. A background thread publishes at most
+    // publishDelayMillis after a write (plus the copies, see publish); call publish() to see
+    // your own writes.
+    public synchronized void enableConcurrentMode(long publishDelayMillis) {
+        this.publishDelayMillis = publishDelayMillis;
+        if (publisher != null) return;
+        publishVersion();
+        dirty = false;
+        publisher = new Thread(this::publishLoop, "graph-publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+    }
+
+    public synchronized void disableConcurrentMode() {
+        if (publisher == null) return;
+        publisher = null;
+        published = null;
+        notifyAll();
+    }
+
+    public boolean isConcurrent() {
+        return published != null;
+    }
+
+    // Publishes every write made so far. Writers wait while the lock is held for the fold
+    // (O(degrees of the rows touched)) and the version's copies of the names, components and
+    // stats (O(users)). A compaction that is due then runs outside the lock, on a frozen view,
+    // and its CSR is swapped in with the rows written meanwhile carried over; compactions that
+    // drop removed users or go off the heap renumber or take over the live names, so they
+    // still run under it (see foldPending).
+    public void publish() {
+        CompactGraph view;
+        synchronized (this) {
+            if (published == null) return;
+            dirty = false;
+            if (foldPending() != published.graph || oracle != published.oracle) publishVersion();
+            if (compacting || !compactsOffLock() || !compactionDue()) return;
+            compacting = true;
+            view = graph;
+        }
+        CompactGraph compacted = null;
+        try {
+            compacted = CompactGraph.merge(view, view.index(), new int[0], new int[0], new int[0], 0);
+        } finally {
+            synchronized (this) {
+                compacting = false;
+                // a rebuild under the lock meanwhile (bulk import, renumbering) wins
+                if (compacted != null && graph.sameBase(view)) {
+                    graph = compacted.carrying(graph, view);
+                    changed();
+                }
+            }
+        }
+    }
+
+    // concurrent mode leaves compactions that keep every id and stay on the heap to publish
+    private boolean compactsOffLock() {
+        return published != null && offHeap == null && index.removedCount() == 0;
+    }
+
+    private void publishLoop() {
+        Thread self = Thread.currentThread();
         try {
-            users.put(username, new User(username));
+            while (true) {
+                synchronized (this) {
+                    while (!dirty && publisher == self) wait();
+                    if (publisher != self) return;
+                }
+                Thread.sleep(publishDelayMillis); // let a burst of writes share one rebuild
+                publish();
+            }
+        } catch (InterruptedException e) {
+            // daemon thread; nothing to clean up
+        }
+    }
+
+    // O(users + edges): the graph, a compressed copy of the components and a copy of the stats
+    private void publishVersion() {
+        CompactGraph g = frozenView();
+        ConnectivityIndex components = connectivity.copy();
+        published = new Version(g, components, stats.copy(g.index(), components), oracle);
+        if (cache != null) cache.invalidate(g, components);
+    }
+
+    // called by every writer, holding the lock
+    private void changed() {
+        if (published == null) return;
+        dirty = true;
+        notifyAll();
+    }
+
+    public boolean addUser(String username) {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.addUser")) {
+            if (!User.isValidUsername(username)) return false;
+            username = User.sanitizeUsername(username);
+            NetworkStore s;
+            long seq = 0;
+            synchronized (this) {
+                if (index.idOf(username) >= 0) return false;
+                internUser(username);
+                s = store;
+                if (s != null) seq = s.appendAddUser(username);
+            }
+            // wait for the fsync outside the lock so concurrent writers share it
+            if (s != null) s.awaitDurable(seq);
             return true;
-        } catch (IllegalArgumentException e) {
-            return false;
         }
     }
 
+    // id of a sanitized, valid username, adding the user if it is new
+    synchronized int internUser(String username) {
+        int id = index.idOf(username);
+        if (id >= 0) return id;
+        id = index.add(username);
+        connectivity.addUser();
+        stats.onUserAdded(id);
+        changed();
+        return id;
+    }
+
     public boolean userExists(String username) {
-        return users.containsKey(User.sanitizeUsername(username));
+        String name = User.sanitizeUsername(username);
+        Version v = published;
+        if (v != null) return v.graph.idOf(name) >= 0;
+        synchronized (this) {
+            return index.idOf(name) >= 0;
+        }
     }
 
     // weighted friendship
     public boolean addFriendship(String user1, String user2, int weight) {
-        if (!User.areValidUsernames(user1, user2)) return false;
-        user1 = User.sanitizeUsername(user1);
-        user2 = User.sanitizeUsername(user2);
-        if (user1.equals(user2)) return false;
-        if (!users.containsKey(user1) || !users.containsKey(user2)) return false;
-        if (users.get(user1).isFriendsWith(user2)) return false;
-        if (weight <= 0) return false;
-
-        // existing unweighted storage to keep the current features working
-        users.get(user1).addFriend(user2);
-        users.get(user2).addFriend(user1);
-
-        // weighted storage
-        ensureAdj(user1); ensureAdj(user2);
-        adj.get(user1).put(user2, weight);
-        adj.get(user2).put(user1, weight);
-        return true;
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.addFriendship")) {
+            if (!User.areValidUsernames(user1, user2)) return false;
+            user1 = User.sanitizeUsername(user1);
+            user2 = User.sanitizeUsername(user2);
+            if (user1.equals(user2)) return false;
+            if (weight <= 0) return false;
+            NetworkStore s;
+            long seq = 0;
+            synchronized (this) {
+                int u = index.idOf(user1), v = index.idOf(user2);
+                if (u < 0 || v < 0) return false;
+                if (hasFriendship(u, v)) return false;
+
+                pending.add(u, v, weight);
+                connectivity.union(u, v);
+                stats.onFriendshipAdded(u, v, weight);
+                if (cache != null) cache.recordEdge(u, v);
+                changed();
+                s = store;
+                if (s != null) seq = s.appendAddFriendship(user1, user2, weight);
+            }
+            if (s != null) s.awaitDurable(seq);
+            return true;
+        }
     }
 
     // Back-compat: if other code calls old method, default weight = 1 (to avoid bugs)
@@ -56,42 +285,658 @@ public class SocialNetwork {
         return addFriendship(user1, user2, 1);
     }
 
-    // Expose adjacency for algorithms
-    Map<String, Map<String, Integer>> getAdjacency() { return adj; }
+    private boolean hasFriendship(int u, int v) {
+        return (graph.hasEdge(u, v) && !removed.contains(u, v)) || pending.contains(u, v);
+    }
+
+    // O(1) apart from the log: the friendship is dropped from pending or tombstoned in the CSR,
+    // and components are split when the change is next folded in
+    public boolean removeFriendship(String user1, String user2) {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.removeFriendship")) {
+            if (!User.areValidUsernames(user1, user2)) return false;
+            user1 = User.sanitizeUsername(user1);
+            user2 = User.sanitizeUsername(user2);
+            NetworkStore s;
+            long seq = 0;
+            synchronized (this) {
+                int u = index.idOf(user1), v = index.idOf(user2);
+                if (u < 0 || v < 0 || !unlink(u, v)) return false;
+                changed();
+                s = store;
+                if (s != null) seq = s.appendRemoveFriendship(user1, user2);
+            }
+            if (s != null) s.awaitDurable(seq);
+            return true;
+        }
+    }
+
+    // O(degree): removes the user's friendships and hides the name; the id is dropped, and later
+    // users renumbered, at the next compaction. The name may be added again at once.
+    public boolean removeUser(String username) {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.removeUser")) {
+            if (!User.isValidUsername(username)) return false;
+            username = User.sanitizeUsername(username);
+            NetworkStore s;
+            long seq = 0;
+            synchronized (this) {
+                int u = index.idOf(username);
+                if (u < 0) return false;
+                if (u < graph.size()) for (int e = graph.begin(u); e < graph.end(u); e++) unlink(u, graph.target(e));
+                // unlink moves the last pending edge into the freed place, which was already checked
+                for (int i = pending.size() - 1; i >= 0; i--) {
+                    if (pending.from(i) == u || pending.to(i) == u) unlink(pending.from(i), pending.to(i));
+                }
+                // the graph keeps naming u until the next fold; it may share the live table
+                if (graph.index() == index) graph = graph.withIndex(index.copy());
+                index.remove(u);
+                if (droppedCount == dropped.length) dropped = Arrays.copyOf(dropped, droppedCount * 2);
+                dropped[droppedCount++] = u;
+                stats.onUserRemoved(u);
+                if (cache != null) cache.recordRemoval(username, null);
+                changed();
+                s = store;
+                if (s != null) seq = s.appendRemoveUser(username);
+            }
+            if (s != null) s.awaitDurable(seq);
+            return true;
+        }
+    }
+
+    // removes friendship u-v if it exists, holding the lock; false if it does not
+    private boolean unlink(int u, int v) {
+        int weight = pending.remove(u, v);
+        if (weight == 0) {
+            if (!graph.hasEdge(u, v) || removed.contains(u, v)) return false;
+            weight = graph.weight(u, v);
+            removed.add(u, v, weight);
+        }
+        if (cutCount == cuts.length) cuts = Arrays.copyOf(cuts, cutCount * 2);
+        cuts[cutCount++] = (long) u << 32 | v;
+        stats.onFriendshipRemoved(u, v, weight);
+        if (cache != null) cache.recordRemoval(index.nameOf(u), index.nameOf(v));
+        return true;
+    }
+
+    // What queries read: the published graph in concurrent mode, otherwise the live view with
+    // every write folded in
+    CompactGraph view() {
+        Version v = published;
+        return v != null ? v.graph : foldPending();
+    }
+
+    // The graph as one compacted CSR without removed users, for whole-graph algorithms that read
+    // its arrays in place: O(users + friendships) unless nothing changed since the last
+    // compaction. In concurrent mode the compacted graph is published first.
+    CompactGraph getGraph() {
+        Version v = published;
+        if (v != null && v.graph.isCompact() && v.graph.index().removedCount() == 0) return v.graph;
+        synchronized (this) {
+            CompactGraph g = compacted();
+            if (published == null) return g;
+            if (published.graph != g) publishVersion();
+            return published.graph;
+        }
+    }
+
+    // the live graph, compacted if it is a view or hides removed users
+    synchronized CompactGraph compacted() {
+        CompactGraph g = foldPending();
+        if (g.isCompact() && index.removedCount() == 0) return g;
+        compact();
+        if (published == null && cache != null) cache.invalidate(graph, connectivity);
+        return graph;
+    }
+
+    // The live graph including every write so far, as a view: the rows the writes touched are
+    // rewritten on top of the graph's overlay, O(their degrees), and removed friendships split
+    // components right away (work bounded by the smaller side, see ConnectivityIndex). Every
+    // few writes' worth of overlay this also compacts, O(users + friendships), which is the cost
+    // a read after a write pays once the overlay or the removed users pass 1/COMPACT_FRACTION of
+    // the graph.
+    synchronized CompactGraph foldPending() {
+        if (!pending.isEmpty() || !removed.isEmpty() || droppedCount > 0 || graph.size() != index.size()) {
+            graph = graph.patch(graphIndex(), pending, removed);
+            if (oracleEnabled) refreshOracle();
+            pending.clear();
+            removed.clear();
+        }
+        if (cutCount > 0) {
+            connectivity.applyRemovals(graph, null, cuts, cutCount);
+            cutCount = 0;
+        }
+        for (int i = 0; i < droppedCount; i++) connectivity.retire(dropped[i]); // alone since their cuts
+        droppedCount = 0;
+        if (compactionDue() && !compactsOffLock()) compact();
+        // outside concurrent mode the new graph is visible as of now
+        if (published == null && cache != null) cache.invalidate(graph, connectivity);
+        return graph;
+    }
+
+    private boolean compactionDue() {
+        return graph.overlayEntries() > MIN_OVERLAY_ENTRIES + 2L * graph.edgeCount() / COMPACT_FRACTION
+                || (long) index.removedCount() * COMPACT_FRACTION > index.size();
+    }
+
+    // Replaces the folded view with a fresh CSR, O(users + friendships), dropping removed users
+    // and renumbering the users after them
+    private void compact() {
+        int users = index.size();
+        int[] newId = index.removedCount() > 0 ? survivorIds(users) : null;
+        graph = rebuild(new int[0], new int[0], new int[0], 0, new long[0], newId);
+        if (newId != null) {
+            connectivity.renumber(newId, graph.size());
+            stats.renumber(newId, graph.size());
+            if (cache != null) cache.renumber(newId);
+            if (oracle != null) oracle = oracle.renumbered(newId, graph.size());
+            else oracleEpoch++; // a build in progress has the old ids
+        }
+    }
+
+    // the live graph over a frozen copy of the names, safe to read from other threads
+    // while writers carry on (published versions)
+    private CompactGraph frozenView() {
+        CompactGraph g = foldPending();
+        if (g.index() == index) graph = g = g.withIndex(index.copy());
+        return g;
+    }
+
+    // the same, compacted without removed users, as snapshots store it
+    synchronized CompactGraph frozenGraph() {
+        compacted();
+        return frozenView();
+    }
+
+    // in concurrent mode new CSRs get their own copy of the names, never the live table
+    private UserIndex graphIndex() {
+        return published != null ? index.copy() : index;
+    }
+
+    // new id of each of the first users, -1 for removed ones; order is kept
+    private int[] survivorIds(int users) {
+        int[] newId = new int[users];
+        for (int u = 0, next = 0; u < users; u++) newId[u] = index.isRemoved(u) ? -1 : next++;
+        return newId;
+    }
+
+    private CompactGraph rebuild(int[] from, int[] to, int[] weights, int count) {
+        return rebuild(from, to, weights, count, new long[0], null);
+    }
+
+    // The current graph plus count new edges, less the removed ones (sorted entries, see
+    // EdgeBuffer), over the users left (newId, or null if none were removed). Off-heap graphs
+    // take over the live names too, leaving the live table only the users added after this
+    // build; so do heap graphs that drop users. Off-heap builds need every removed user dropped.
+    private CompactGraph rebuild(int[] from, int[] to, int[] weights, int count, long[] removedEntries, int[] newId) {
+        if (offHeap != null) {
+            CompactGraph g = offHeap.merge(graph, index, newId, from, to, weights, count, removedEntries);
+            index.rebase(g.index());
+            return g;
+        }
+        if (newId == null) return CompactGraph.merge(graph, graphIndex(), from, to, weights, count, removedEntries, null);
+        UserIndex names = new UserIndex(index.size() - index.removedCount());
+        for (int u = 0; u < newId.length; u++) if (newId[u] >= 0) names.add(index.nameOf(u));
+        index.rebase(names);
+        return CompactGraph.merge(graph, names, from, to, weights, count, removedEntries, newId);
+    }
+
+    // Keeps friendships, weights and usernames outside the Java heap from now on, in direct
+    // memory (directory null) or in temporary files mapped from directory. The current graph
+    // moves there at once and every later rebuild stays there.
+    public synchronized void enableOffHeapStorage(Path directory) {
+        offHeap = new OffHeapGraph(directory);
+        foldPending();
+        compact(); // the folded graph is copied straight off the heap
+        if (published == null && cache != null) cache.invalidate(graph, connectivity);
+        if (published != null) publishVersion();
+    }
+
+    // later rebuilds go back to the heap; the current off-heap graph stays in use until then
+    public synchronized void disableOffHeapStorage() {
+        offHeap = null;
+    }
+
+    public synchronized boolean isOffHeap() {
+        return offHeap != null;
+    }
+
+    // Folds a validated batch of new friendships straight into a fresh CSR (bulk import path).
+    // The edges must be between existing users, free of duplicates and absent from the graph,
+    // and no user may have been removed since the ids were taken from compacted().
+    synchronized void installEdges(int[] from, int[] to, int[] weights, int count) {
+        foldPending();
+        graph = rebuild(from, to, weights, count);
+        for (int i = 0; i < count; i++) {
+            connectivity.union(from[i], to[i]);
+            stats.onFriendshipAdded(from[i], to[i], weights[i]);
+            if (cache != null) cache.recordEdge(from[i], to[i]);
+        }
+        if (oracleEnabled) markOracleStale();
+        if (published == null && cache != null) cache.invalidate(graph, connectivity);
+        changed();
+    }
+
+    // Parallel import of a "user1,user2,weight" edge-list file; see BulkLoader.
+    // Imports bypass the mutation log, so a stored network snapshots the result before any other
+    // write can be logged after it.
+    public BulkLoader.Report importEdgeList(Path file) throws IOException {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.importEdgeList")) {
+            NetworkStore s;
+            synchronized (this) {
+                s = store;
+                if (s == null) return BulkLoader.load(file, this);
+            }
+            return s.checkpointAfter(() -> BulkLoader.load(file, this));
+        }
+    }
+
+    // Patches landmark distances for the folded edges. Removals only lengthen distances, which
+    // the landmarks cannot patch, and a large batch is cheaper to rebuild: both leave the oracle
+    // stale for the background builder. While it runs the new edges are kept for it to patch.
+    private void refreshOracle() {
+        if (!removed.isEmpty() || pending.size() * 8L > graph.edgeCount()) {
+            markOracleStale();
+            return;
+        }
+        if (oracle == null) {
+            for (int i = 0; i < pending.size(); i++) oracleAdds.add(pending.from(i), pending.to(i), pending.weight(i));
+            return;
+        }
+        // never patch an oracle that readers may be using
+        Version v = published;
+        if (v != null && v.oracle == oracle) oracle = oracle.copy();
+        for (int i = 0; i < pending.size(); i++) {
+            oracle.addEdge(graph, pending.from(i), pending.to(i), pending.weight(i));
+        }
+    }
+
+    private void markOracleStale() {
+        oracle = null;
+        oracleEpoch++;
+        oracleAdds.clear();
+        if (oracleBuilder != null) return;
+        oracleBuilder = new Thread(this::buildOracle, "landmark-builder");
+        oracleBuilder.setDaemon(true);
+        oracleBuilder.start();
+    }
+
+    // Builds the landmarks over a frozen view, outside the lock, O(landmarks * friendships * log
+    // users); then patches in the edges folded since and installs them, unless removals or a
+    // renumbering made the build stale meanwhile, in which case it starts over.
+    private void buildOracle() {
+        Thread self = Thread.currentThread();
+        while (true) {
+            CompactGraph g;
+            long epoch, budget;
+            synchronized (this) {
+                if (oracleBuilder != self) return;
+                if (!oracleEnabled || oracle != null) {
+                    oracleBuilder = null;
+                    return;
+                }
+                g = frozenView();
+                epoch = oracleEpoch;
+                budget = oracleBudgetBytes;
+                oracleAdds.clear();
+            }
+            LandmarkOracle built = LandmarkOracle.build(g, budget);
+            synchronized (this) {
+                if (oracleBuilder != self) return;
+                CompactGraph live = foldPending();
+                if (!oracleEnabled || epoch != oracleEpoch) continue;
+                for (int i = 0; i < oracleAdds.size(); i++) {
+                    built.addEdge(live, oracleAdds.from(i), oracleAdds.to(i), oracleAdds.weight(i));
+                }
+                oracleAdds.clear();
+                oracle = built;
+                oracleBuilder = null;
+                changed();
+                return;
+            }
+        }
+    }
+
+    // Precompute landmark distances for lightest-path queries; returns how many landmarks fit the
+    // budget. Later removals rebuild them in the background (see buildOracle).
+    public synchronized int enableLandmarkOracle(long memoryBudgetBytes) {
+        oracleEnabled = false; // nothing to patch or rebuild while the new landmarks are chosen
+        oracleBuilder = null;
+        oracleEpoch++;
+        oracleBudgetBytes = memoryBudgetBytes;
+        CompactGraph g = foldPending();
+        oracle = LandmarkOracle.build(g, memoryBudgetBytes);
+        oracleEnabled = true;
+        if (published != null) publishVersion();
+        return oracle.landmarkCount();
+    }
+
+    public synchronized void disableLandmarkOracle() {
+        oracleEnabled = false;
+        oracle = null;
+        oracleBuilder = null;
+        oracleEpoch++;
+        oracleAdds.clear();
+        if (published != null) publishVersion();
+    }
+
+    // true while removals have left the landmarks stale and a rebuild is under way
+    public synchronized boolean isLandmarkOracleStale() {
+        return oracleEnabled && oracle == null;
+    }
+
+    // Caches mutual-friend, suggestion and shortest-path answers within budgetBytes; each new
+    // friendship evicts only the answers it can change (see QueryCache)
+    public synchronized QueryCache enableQueryCache(long budgetBytes) {
+        if (cache == null || cache.budgetBytes() != budgetBytes) cache = new QueryCache(budgetBytes);
+        return cache;
+    }
+
+    public synchronized void disableQueryCache() {
+        cache = null;
+    }
+
+    // hit/miss/eviction counters, or null when caching is off
+    public QueryCache getQueryCache() {
+        return cache;
+    }
+
+    // Answers from the cache when enabled, else (or on a miss) runs query on the current graph.
+    // The cache keeps its own copy; callers always get a fresh, mutable answer.
+    @SuppressWarnings("unchecked")
+    private <T> T cached(QueryCache.Kind kind, String user1, String user2, int k,
+                         Function<CompactGraph, T> query, UnaryOperator<T> copy) {
+        QueryCache c = cache;
+        if (c == null || !User.isValidUsername(user1) || (kind != QueryCache.Kind.SUGGEST && !User.isValidUsername(user2))) {
+            return query.apply(view());
+        }
+        if (published == null) view(); // fold pending writes, and their invalidations, first
+        String a = User.sanitizeUsername(user1), b = user2 == null ? null : User.sanitizeUsername(user2);
+        if (kind == QueryCache.Kind.MUTUAL && a.compareTo(b) > 0) { String t = a; a = b; b = t; }
+        QueryCache.Key key = new QueryCache.Key(kind, a, b, k);
+        long epoch = c.epoch();
+        Object hit = c.get(key);
+        if (hit != QueryCache.MISS) return hit == QueryCache.NONE ? null : copy.apply((T) hit);
+        T answer = query.apply(view());
+        c.put(key, answer == null ? null : copy.apply(answer), epoch);
+        return answer;
+    }
+
+    // O(K) approximate lightest-path weight via the landmarks; -1 if unknown or unreachable
+    public long estimateDistance(String user1, String user2) {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.estimateDistance")) {
+            if (!User.areValidUsernames(user1, user2)) return -1;
+            Version version = currentVersion();
+            CompactGraph g = version.graph;
+            LandmarkOracle lm = version.oracle;
+            int u = g.idOf(User.sanitizeUsername(user1)), v = g.idOf(User.sanitizeUsername(user2));
+            if (u < 0 || v < 0) return -1;
+            if (u == v) return 0;
+            if (lm == null) return -1;
+            long d = lm.upperBound(u, v);
+            return d == LandmarkOracle.INF ? -1 : d;
+        }
+    }
 
     public Set<String> getUserFriends(String username) {
-        if (!User.isValidUsername(username)) return new HashSet<>();
-        username = User.sanitizeUsername(username);
-        if (!users.containsKey(username)) return new HashSet<>();
-        return users.get(username).getFriends();
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.getUserFriends")) {
+            if (!User.isValidUsername(username)) return new HashSet<>();
+            CompactGraph g = view();
+            int u = g.idOf(User.sanitizeUsername(username));
+            if (u < 0) return new HashSet<>();
+            Set<String> friends = new HashSet<>();
+            for (int e = g.begin(u); e < g.end(u); e++) friends.add(g.nameOf(g.target(e)));
+            return friends;
+        }
     }
 
     public boolean areDirectlyConnected(String user1, String user2) {
-        return users.get(User.sanitizeUsername(user1)).isFriendsWith(User.sanitizeUsername(user2));
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.areDirectlyConnected")) {
+            String name1 = User.sanitizeUsername(user1), name2 = User.sanitizeUsername(user2);
+            Version version = published;
+            if (version != null) {
+                CompactGraph g = version.graph;
+                int u = g.idOf(name1), v = g.idOf(name2);
+                return u >= 0 && v >= 0 && g.hasEdge(u, v);
+            }
+            synchronized (this) {
+                int u = index.idOf(name1), v = index.idOf(name2);
+                return u >= 0 && v >= 0 && hasFriendship(u, v);
+            }
+        }
     }
 
+    // answered by the connectivity index, no traversal needed. The first call after a removal
+    // folds it in: a search from both ends of each cut, bounded by the smaller side (see
+    // ConnectivityIndex), plus a compaction if one is due (see foldPending).
     public boolean areConnected(String user1, String user2) {
-        return GraphOperations.areConnected(user1, user2, users);
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.areConnected")) {
+            if (!User.areValidUsernames(user1, user2)) return false;
+            String name1 = User.sanitizeUsername(user1), name2 = User.sanitizeUsername(user2);
+            Version version = published;
+            if (version != null) {
+                int u = version.graph.idOf(name1), v = version.graph.idOf(name2);
+                return u >= 0 && v >= 0 && version.connectivity.connected(u, v);
+            }
+            synchronized (this) {
+                if (cutCount > 0) foldPending(); // removals may have split components
+                int u = index.idOf(name1), v = index.idOf(name2);
+                return u >= 0 && v >= 0 && connectivity.connected(u, v);
+            }
+        }
+    }
+
+    // true if user2 is at most maxDegrees hops away from user1
+    public boolean isWithinDegrees(String user1, String user2, int maxDegrees) {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.isWithinDegrees")) {
+            return GraphOperations.isWithinDegrees(user1, user2, maxDegrees, view());
+        }
+    }
+
+    // hops on the shortest path, or -1 if the users are not connected
+    public int getDegreesOfSeparation(String user1, String user2) {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.getDegreesOfSeparation")) {
+            return GraphOperations.hopDistance(user1, user2, Integer.MAX_VALUE, view());
+        }
     }
 
     public Set<String> findMutualFriends(String user1, String user2) {
-        return GraphOperations.findMutualFriends(user1, user2, users);
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.findMutualFriends")) {
+            return cached(QueryCache.Kind.MUTUAL, user1, user2, 0,
+                    g -> GraphOperations.findMutualFriends(user1, user2, g), HashSet::new);
+        }
     }
 
     public Set<String> suggestFriends(String username) {
-        return GraphOperations.suggestFriends(username, users);
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.suggestFriends")) {
+            return cached(QueryCache.Kind.SUGGEST, username, null, 0,
+                    g -> GraphOperations.suggestFriends(username, g), HashSet::new);
+        }
+    }
+
+    // count only; no result set is built
+    public int countMutualFriends(String user1, String user2) {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.countMutualFriends")) {
+            if (!User.areValidUsernames(user1, user2)) return 0;
+            CompactGraph g = view();
+            int u = g.idOf(User.sanitizeUsername(user1)), v = g.idOf(User.sanitizeUsername(user2));
+            if (u < 0 || v < 0) return 0;
+            return Intersections.countCommon(g, u, v);
+        }
+    }
+
+    // batch Jaccard similarity of friend sets for each pair {user1, user2}; unknown users score 0
+    public double[] jaccardSimilarity(List<String[]> pairs) {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.jaccardSimilarity")) {
+            CompactGraph g = view();
+            return Intersections.jaccard(g, pairIds(g, pairs, 0), pairIds(g, pairs, 1));
+        }
+    }
+
+    // batch Adamic-Adar similarity for each pair {user1, user2}; unknown users score 0
+    public double[] adamicAdarSimilarity(List<String[]> pairs) {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.adamicAdarSimilarity")) {
+            CompactGraph g = view();
+            return Intersections.adamicAdar(g, pairIds(g, pairs, 0), pairIds(g, pairs, 1));
+        }
+    }
+
+    private static int[] pairIds(CompactGraph g, List<String[]> pairs, int side) {
+        int[] ids = new int[pairs.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = g.idOf(User.sanitizeUsername(pairs.get(i)[side]));
+        return ids;
+    }
+
+    // the k best-ranked suggestions, best first
+    public List<String> suggestFriends(String username, int k) {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.suggestFriendsTopK")) {
+            return cached(QueryCache.Kind.SUGGEST, username, null, Math.max(k, 0) + 1,
+                    g -> FriendSuggestions.topK(username, k, g), ArrayList::new);
+        }
+    }
+
+    // "people you may know" by personalized PageRank: non-friends the user's random walks reach
+    // most often, weighted by friendship strength; computed locally around the user, best first
+    public List<String> suggestFriendsByPageRank(String username, int k) {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.suggestFriendsByPageRank")) {
+            if (!User.isValidUsername(username) || k <= 0) return new ArrayList<>();
+            CompactGraph g = view();
+            int u = g.idOf(User.sanitizeUsername(username));
+            if (u < 0) return new ArrayList<>();
+            PageRank.LocalResult ppr = PageRank.approximatePersonalized(g, u, PageRank.DEFAULT_DAMPING,
+                    PageRank.DEFAULT_PUSH_EPSILON);
+            double[] scores = ppr.scores.clone();
+            for (int i = 0; i < scores.length; i++) {
+                int v = ppr.users[i];
+                if (v == u || g.hasEdge(u, v)) scores[i] = -1;
+            }
+            List<String> ranked = new ArrayList<>();
+            for (int i : Centrality.topIds(scores, k)) if (scores[i] >= 0) ranked.add(g.nameOf(ppr.users[i]));
+            return ranked;
+        }
+    }
+
+    // friend communities of the current graph: label propagation (fast) or Louvain (better modularity).
+    // The result keeps its own copy of the names, so it still resolves users after removals renumber them.
+    public Communities.Result detectCommunities(boolean louvain) {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.detectCommunities")) {
+            Version v = published;
+            CompactGraph g = v != null ? v.graph : frozenGraph();
+            return louvain ? Communities.louvain(g) : Communities.labelPropagation(g);
+        }
+    }
+
+    // the k best-ranked suggestions from within the user's community; users added since the
+    // communities were detected are in none
+    public List<String> suggestFriends(String username, int k, Communities.Result communities) {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.suggestFriendsInCommunity")) {
+            return FriendSuggestions.topKInCommunity(username, k, view(), communities);
+        }
+    }
+
+    // batch mode: ranked suggestions for many users, computed in parallel
+    public Map<String, List<String>> suggestFriends(Collection<String> usernames, int k) {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.suggestFriendsBatch")) {
+            return FriendSuggestions.topKBatch(usernames, k, view());
+        }
+    }
+
+    public Map<String, List<String>> suggestFriendsForAll(int k) {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.suggestFriendsForAll")) {
+            return FriendSuggestions.topKForAll(k, getGraph());
+        }
     }
 
     public List<String> findShortestPath(String user1, String user2) {
-        return GraphOperations.findShortestPath(user1, user2, users);
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.findShortestPath")) {
+            return cached(QueryCache.Kind.PATH, user1, user2, 0,
+                    g -> GraphOperations.findShortestPath(user1, user2, g), ArrayList::new);
+        }
+    }
+
+    // lightest (minimum total weight) path; ALT A* when the landmark oracle is enabled,
+    // otherwise bidirectional Dijkstra unless asked otherwise
+    public List<String> findLightestPath(String user1, String user2) {
+        return findLightestPath(user1, user2, true);
+    }
+
+    public List<String> findLightestPath(String user1, String user2, boolean bidirectional) {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.findLightestPath")) {
+            Version version = currentVersion(); // the oracle must match the graph it searches
+            CompactGraph g = version.graph;
+            if (version.oracle != null) return GraphOperations.findLightestPath(user1, user2, g, version.oracle);
+            return bidirectional
+                    ? GraphOperations.findLightestPathBidirectional(user1, user2, g)
+                    : GraphOperations.findLightestPath(user1, user2, g);
+        }
+    }
+
+    // many path queries sharing their searches; each path (null if none) is handed to the
+    // listener as soon as it is found, possibly from several threads at once
+    public void findPaths(List<String[]> pairs, boolean weighted, PathBatch.Listener listener) {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.findPaths")) {
+            Version version = currentVersion();
+            PathBatch.findPaths(version.graph, pairs, weighted, version.oracle, listener);
+        }
+    }
+
+    // the same, collected in the order of the pairs
+    public List<List<String>> findPaths(List<String[]> pairs, boolean weighted) {
+        AtomicReferenceArray<List<String>> paths = new AtomicReferenceArray<>(pairs.size());
+        findPaths(pairs, weighted, paths::set);
+        List<List<String>> result = new ArrayList<>(pairs.size());
+        for (int i = 0; i < pairs.size(); i++) result.add(paths.get(i));
+        return result;
+    }
+
+    // weight of the friendship, or 0 if the users are not friends
+    public int getFriendshipWeight(String user1, String user2) {
+        try (Metrics.Scope m = Metrics.begin("SocialNetwork.getFriendshipWeight")) {
+            if (!User.areValidUsernames(user1, user2)) return 0;
+            CompactGraph g = view();
+            int u = g.idOf(User.sanitizeUsername(user1)), v = g.idOf(User.sanitizeUsername(user2));
+            if (u < 0 || v < 0) return 0;
+            return g.weight(u, v);
+        }
     }
 
     public Set<String> getAllUsers() {
-        return new HashSet<>(users.keySet());
+        CompactGraph g = view();
+        Set<String> all = new HashSet<>();
+        for (int id = 0; id < g.size(); id++) {
+            String name = g.nameOf(id);
+            if (name != null) all.add(name); // removed users keep their ids until the next compaction
+        }
+        return all;
+    }
+
+    // the published version, or one assembled from the live state (graph and oracle only)
+    private Version currentVersion() {
+        Version v = published;
+        if (v != null) return v;
+        synchronized (this) {
+            return new Version(foldPending(), null, null, oracle);
+        }
+    }
+
+    String nameOf(int id) {
+        return index.nameOf(id);
+    }
+
+    UserIndex userIndex() {
+        return index;
+    }
+
+    synchronized int userCount() {
+        return index.size();
+    }
+
+    ConnectivityIndex getConnectivity() {
+        return connectivity;
     }
 
+    // in concurrent mode, a read-only copy taken when the current version was published
     public NetworkStats getStats() {
-        return stats;
+        Version v = published;
+        return v != null ? v.stats : stats;
     }
 
 
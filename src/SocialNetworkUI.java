@@ -1,13 +1,22 @@
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Scanner;
 import java.util.Set;
 
 public class SocialNetworkUI {
+    private static final int MAX_SUGGESTIONS = 10;
     private SocialNetwork network;
     private Scanner scanner;
 
     public SocialNetworkUI() {
-        this.network = new SocialNetwork();
+        this(new SocialNetwork());
+    }
+
+    // e.g. a network recovered from a data directory by NetworkStore
+    public SocialNetworkUI(SocialNetwork network) {
+        this.network = network;
         this.scanner = new Scanner(System.in);
     }
 
@@ -23,6 +32,13 @@ public class SocialNetworkUI {
         System.out.println("7. Show all users");
         System.out.println("8. Show network statistics");
         System.out.println("9. Find shortest path between users");
+        System.out.println("10. Find lightest (weighted) path between users");
+        System.out.println("11. Import friendships from file");
+        System.out.println("12. Save network snapshot");
+        System.out.println("13. Performance metrics");
+        System.out.println("14. Network analytics");
+        System.out.println("15. Remove friendship");
+        System.out.println("16. Remove user");
         System.out.println("0. Exit");
         System.out.print("Choose an option: ");
     }
@@ -76,6 +92,33 @@ public class SocialNetworkUI {
         }
     }
 
+    private void handleRemoveFriendship() {
+        System.out.print("Enter first user: ");
+        String user1 = scanner.nextLine();
+        System.out.print("Enter second user: ");
+        String user2 = scanner.nextLine();
+
+        if (network.removeFriendship(user1, user2)) {
+            System.out.println("Friendship between '" + User.sanitizeUsername(user1) + "' and '"
+                    + User.sanitizeUsername(user2) + "' removed!");
+        } else if (!network.userExists(user1) || !network.userExists(user2)) {
+            System.out.println("Error: One or both users do not exist!");
+        } else {
+            System.out.println("Error: Users are not friends!");
+        }
+    }
+
+    private void handleRemoveUser() {
+        System.out.print("Enter username to remove: ");
+        String username = scanner.nextLine();
+
+        if (network.removeUser(username)) {
+            System.out.println("User '" + User.sanitizeUsername(username) + "' and their friendships removed!");
+        } else {
+            System.out.println("Error: User does not exist!");
+        }
+    }
+
     private void handleShowFriends() {
         System.out.print("Enter username: ");
         String username = scanner.nextLine();
@@ -151,7 +194,7 @@ public class SocialNetworkUI {
             return;
         }
 
-        Set<String> suggestions = network.suggestFriends(username);
+        List<String> suggestions = network.suggestFriends(username, MAX_SUGGESTIONS);
         String sanitizedUsername = User.sanitizeUsername(username);
 
         if (suggestions.isEmpty()) {
@@ -203,6 +246,201 @@ public class SocialNetworkUI {
         }
     }
 
+    private void handleLightestPath() {
+        System.out.print("Enter starting user: ");
+        String user1 = scanner.nextLine();
+        System.out.print("Enter destination user: ");
+        String user2 = scanner.nextLine();
+
+        if (!network.userExists(user1) || !network.userExists(user2)) {
+            System.out.println("Error: One or both users do not exist!");
+            return;
+        }
+
+        List<String> path = network.findLightestPath(user1, user2);
+        String sanitizedUser1 = User.sanitizeUsername(user1);
+        String sanitizedUser2 = User.sanitizeUsername(user2);
+
+        if (path == null || path.isEmpty()) {
+            System.out.println("No connection path found between '" + sanitizedUser1 + "' and '" + sanitizedUser2 + "'.");
+        } else if (path.size() == 1) {
+            System.out.println("Same user provided!");
+        } else {
+            long cost = 0;
+            for (int i = 1; i < path.size(); i++) cost += network.getFriendshipWeight(path.get(i - 1), path.get(i));
+            System.out.println("Lightest path from '" + sanitizedUser1 + "' to '" + sanitizedUser2 + "':");
+            System.out.println(String.join(" → ", path));
+            System.out.println("Total weight: " + cost + " (" + (path.size() - 1) + " hops)");
+        }
+    }
+
+    private void handleImport() {
+        System.out.print("Enter edge-list file path (user1,user2,weight per line): ");
+        String file = scanner.nextLine().trim();
+
+        try {
+            BulkLoader.Report report = network.importEdgeList(Paths.get(file));
+            System.out.println(report);
+        } catch (IOException | InvalidPathException e) {
+            System.out.println("Error: Could not read '" + file + "': " + e.getMessage());
+        }
+    }
+
+    private void handleSaveSnapshot() {
+        System.out.print("Enter snapshot file path: ");
+        String file = scanner.nextLine().trim();
+
+        try {
+            network.saveSnapshot(Paths.get(file));
+            System.out.println("Snapshot saved to '" + file + "'.");
+        } catch (IOException | InvalidPathException e) {
+            System.out.println("Error: Could not write '" + file + "': " + e.getMessage());
+        }
+    }
+
+    // per-operation latency and work since metrics were enabled; toggle, reset or dump as JSON
+    private void handleMetrics() {
+        if (!Metrics.isEnabled()) {
+            System.out.print("Metrics are off. Turn them on? (y/n): ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                Metrics.setEnabled(true);
+                System.out.println("Metrics on; run some queries and come back here.");
+            }
+            return;
+        }
+        System.out.print(Metrics.report());
+        System.out.print("[s]ave as JSON, [r]eset, turn [o]ff, or press Enter to go back: ");
+        String action = scanner.nextLine().trim().toLowerCase();
+        if (action.equals("r")) {
+            Metrics.reset();
+            System.out.println("Metrics reset.");
+        } else if (action.equals("o")) {
+            Metrics.setEnabled(false);
+            System.out.println("Metrics off.");
+        } else if (action.equals("s")) {
+            System.out.print("Enter JSON file path: ");
+            String file = scanner.nextLine().trim();
+            try {
+                Metrics.writeJson(Paths.get(file));
+                System.out.println("Metrics written to '" + file + "'.");
+            } catch (IOException | InvalidPathException e) {
+                System.out.println("Error: Could not write '" + file + "': " + e.getMessage());
+            }
+        }
+    }
+
+    // whole-graph rankings; these can take a while on large networks
+    private void handleAnalytics() {
+        System.out.println("1. Top brokers (betweenness centrality)");
+        System.out.println("2. Top users by PageRank");
+        System.out.println("3. People you may know (personalized PageRank)");
+        System.out.println("4. Communities");
+        System.out.println("5. Triangles and clustering coefficients");
+        System.out.println("6. Degrees of separation across the network");
+        System.out.print("Choose an analysis: ");
+        String choice = scanner.nextLine().trim();
+        switch (choice) {
+            case "1": {
+                boolean weighted = askYesNo("Use friendship weights as distances? (y/n): ");
+                double epsilon = askTolerance();
+                network.getStats().displayBetweenness(MAX_SUGGESTIONS, weighted, epsilon);
+                break;
+            }
+            case "2": network.getStats().displayPageRank(MAX_SUGGESTIONS); break;
+            case "3": {
+                System.out.print("Enter username: ");
+                String username = scanner.nextLine();
+                if (!network.userExists(username)) {
+                    System.out.println("Error: User does not exist!");
+                    break;
+                }
+                List<String> people = network.suggestFriendsByPageRank(username, MAX_SUGGESTIONS);
+                System.out.println(people.isEmpty() ? "Nobody to suggest yet."
+                        : "People '" + User.sanitizeUsername(username) + "' may know: " + String.join(", ", people));
+                break;
+            }
+            case "4": handleCommunities(); break;
+            case "5": handleClustering(); break;
+            case "6": handleSeparation(); break;
+            default: System.out.println("Invalid option.");
+        }
+    }
+
+    private void handleClustering() {
+        System.out.print("Fraction of friendships to sample (e.g. 0.1, or press Enter for exact): ");
+        String input = scanner.nextLine().trim();
+        double p = 1;
+        try {
+            if (!input.isEmpty()) p = Double.parseDouble(input);
+        } catch (NumberFormatException e) {
+            System.out.println("Not a number; counting exactly.");
+        }
+        if (p <= 0 || p > 1) p = 1;
+        network.getStats().displayClustering(p);
+        System.out.print("Clustering coefficient for user (or press Enter to skip): ");
+        String username = scanner.nextLine();
+        if (username.trim().isEmpty()) return;
+        double c = network.getStats().getClusteringCoefficient(username);
+        if (c < 0) System.out.println("Error: User does not exist!");
+        else System.out.printf("'%s': %.4f\n", User.sanitizeUsername(username), c);
+    }
+
+    private void handleSeparation() {
+        HyperAnf.Result anf = network.getStats().getNeighbourhoodFunction();
+        network.getStats().displaySeparation(anf);
+        System.out.print("Show the reach of a user (or press Enter to skip): ");
+        String username = scanner.nextLine();
+        if (username.trim().isEmpty()) return;
+        int id = anf.idOf(username);
+        if (id < 0) {
+            System.out.println("Error: User does not exist!");
+            return;
+        }
+        for (int h = 1; h <= HyperAnf.REACH_HOPS; h++) System.out.printf("  within %d hop(s): ~%.0f users\n", h, anf.reach(id, h));
+        System.out.printf("  reachable at all: ~%.0f users\n", anf.reach(id));
+    }
+
+    private void handleCommunities() {
+        boolean louvain = askYesNo("Use Louvain (slower, better communities) instead of label propagation? (y/n): ");
+        Communities.Result result = network.detectCommunities(louvain);
+        System.out.printf("%d communities, modularity %.4f\n", result.count(), result.modularity);
+        for (int c = 0; c < Math.min(MAX_SUGGESTIONS, result.count()); c++) {
+            List<String> members = result.members(c);
+            members.sort(null);
+            List<String> shown = members.subList(0, Math.min(8, members.size()));
+            System.out.println("  #" + (c + 1) + " (" + result.sizes[c] + " users): " + String.join(", ", shown)
+                    + (members.size() > shown.size() ? ", ..." : ""));
+        }
+        System.out.print("Suggest friends within a community for user (or press Enter to skip): ");
+        String username = scanner.nextLine();
+        if (username.trim().isEmpty()) return;
+        if (!network.userExists(username)) {
+            System.out.println("Error: User does not exist!");
+            return;
+        }
+        List<String> suggestions = network.suggestFriends(username, MAX_SUGGESTIONS, result);
+        System.out.println(suggestions.isEmpty() ? "No suggestions inside the community."
+                : "Suggestions in community #" + (result.communityOf(username) + 1) + ": " + String.join(", ", suggestions));
+    }
+
+    private boolean askYesNo(String prompt) {
+        System.out.print(prompt);
+        return scanner.nextLine().trim().equalsIgnoreCase("y");
+    }
+
+    // 0 for an exact answer
+    private double askTolerance() {
+        System.out.print("Error tolerance on normalized scores, for a faster estimate (e.g. 0.01, or press Enter for exact): ");
+        String input = scanner.nextLine().trim();
+        if (input.isEmpty()) return 0;
+        try {
+            return Math.max(0, Double.parseDouble(input));
+        } catch (NumberFormatException e) {
+            System.out.println("Not a number; computing the exact answer.");
+            return 0;
+        }
+    }
+
     public void handleUserChoice(int choice) {
         switch (choice) {
             case 1: handleAddUser(); break;
@@ -212,10 +450,17 @@ public class SocialNetworkUI {
             case 5: handleMutualFriends(); break;
             case 6: handleFriendSuggestions(); break;
             case 7: handleShowAllUsers(); break;
-            case 8: network.getStats().displayStats(network.getAdjacency()); break;
+            case 8: network.getStats().displayStats(); break;
             case 9:
                 handleShortestPath();
                 break;
+            case 10: handleLightestPath(); break;
+            case 11: handleImport(); break;
+            case 12: handleSaveSnapshot(); break;
+            case 13: handleMetrics(); break;
+            case 14: handleAnalytics(); break;
+            case 15: handleRemoveFriendship(); break;
+            case 16: handleRemoveUser(); break;
             case 0: System.out.println("Thank you for using Social Network Graph Explorer!"); break;
             default: System.out.println("Invalid option. Please try again.");
         }
@@ -224,11 +469,30 @@ public class SocialNetworkUI {
 
     public void run() {
         System.out.println("Welcome to Social Network Graph Explorer!");
-        System.out.print("Would you like to load sample data? (y/n): ");
-        String loadSample = scanner.nextLine().trim().toLowerCase();
+        boolean stored = network.getStore() != null;
+        String loadSample = "n";
+        if (stored && network.getStats().getTotalUsers() > 0) {
+            System.out.println("Recovered " + network.getStats().getTotalUsers() + " users and "
+                    + network.getStats().getTotalConnections() + " friendships from the data directory.");
+        } else {
+            System.out.print("Would you like to load sample data? (y/n): ");
+            loadSample = scanner.nextLine().trim().toLowerCase();
+        }
         if (loadSample.equals("y") || loadSample.equals("yes")) {
             network.initializeSampleData();
             System.out.println("Sample data loaded successfully!");
+        } else if (!stored) {
+            System.out.print("Load a saved snapshot instead? Enter its path (or press Enter to skip): ");
+            String file = scanner.nextLine().trim();
+            if (!file.isEmpty()) {
+                try {
+                    network = SocialNetwork.openSnapshot(Paths.get(file), true);
+                    System.out.println("Snapshot loaded: " + network.getStats().getTotalUsers() + " users, "
+                            + network.getStats().getTotalConnections() + " friendships.");
+                } catch (IOException | InvalidPathException e) {
+                    System.out.println("Error: Could not load snapshot: " + e.getMessage() + " (starting empty)");
+                }
+            }
         }
 
         int choice;
@@ -244,6 +508,11 @@ public class SocialNetworkUI {
         } while (choice != 0);
 
         scanner.close();
+        try {
+            network.close();
+        } catch (IOException e) {
+            System.out.println("Error: Could not close the data directory: " + e.getMessage());
+        }
     }
 
 }
@@ -0,0 +1,149 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Triangle counting and clustering coefficients.
+// Exact: every friendship is oriented from the lower- to the higher-ranked user (by degree, then
+// id), so each user keeps at most sqrt(2m) "forward" friends, and each triangle is found once as
+// the intersection of two sorted forward rows: O(m^1.5) in total, users spread over the fork-join
+// pool with per-worker count arrays. Approximate (DOULION edge sampling): each friendship is kept
+// with probability p, decided by a hash so a single pass over the edges suffices, and the
+// triangles of the sparse graph are scaled by 1 / p^3, an unbiased estimate.
+@SuppressWarnings("try") // Metrics scopes are never referenced inside their try blocks
+public class Triangles {
+    public static final class Result {
+        public final long triangles;
+        public final long wedges;            // paths of two friendships, sum of d(d-1)/2
+        public final double averageClustering;
+        public final double sampleProbability; // 1 when exact
+        private final double[] perUser;        // triangles at each user (estimated when sampled)
+
+        Result(long triangles, long wedges, double averageClustering, double sampleProbability, double[] perUser) {
+            this.triangles = triangles;
+            this.wedges = wedges;
+            this.averageClustering = averageClustering;
+            this.sampleProbability = sampleProbability;
+            this.perUser = perUser;
+        }
+
+        public boolean isExact() {
+            return sampleProbability >= 1;
+        }
+
+        // 3 * triangles / wedges: the chance that two friends of a user are friends themselves
+        public double globalClustering() {
+            return wedges == 0 ? 0.0 : Math.min(1.0, 3.0 * triangles / wedges);
+        }
+
+        // triangles the user is part of (an estimate when sampled)
+        public double trianglesAt(int id) {
+            return perUser[id];
+        }
+    }
+
+    public static Result count(CompactGraph g) {
+        try (Metrics.Scope m = Metrics.begin("Triangles.count")) {
+            return run(g, 1.0, 0);
+        }
+    }
+
+    // edge-sampling estimate; every estimate is unbiased, with variance shrinking as p grows
+    public static Result estimate(CompactGraph g, double edgeProbability, long seed) {
+        try (Metrics.Scope m = Metrics.begin("Triangles.estimate")) {
+            if (edgeProbability <= 0 || edgeProbability > 1) throw new IllegalArgumentException("probability must be in (0, 1]");
+            return run(g, edgeProbability, seed);
+        }
+    }
+
+    // fraction of u's friend pairs who are friends, computed on demand from u's rows alone
+    public static double localClustering(CompactGraph g, int u) {
+        long d = g.degree(u);
+        if (d < 2) return 0.0;
+        long twice = 0; // each triangle at u is seen from both of its other users
+        for (int e = g.begin(u); e < g.end(u); e++) twice += Intersections.countCommon(g, u, g.target(e));
+        return twice / (double) (d * (d - 1));
+    }
+
+    private static Result run(CompactGraph g, double p, long seed) {
+        int n = g.size();
+        IntArray offsets = g.offsets(), targets = g.targets();
+
+        // forward rows: the kept friends that rank above each user, still sorted by id
+        int[] forwardStart = new int[n + 1];
+        IntStream.range(0, n).parallel().forEach(u -> {
+            int count = 0;
+            for (int e = offsets.get(u), end = offsets.get(u + 1); e < end; e++) if (isForward(offsets, u, targets.get(e), p, seed)) count++;
+            forwardStart[u + 1] = count;
+        });
+        for (int u = 0; u < n; u++) forwardStart[u + 1] += forwardStart[u];
+        int[] forward = new int[forwardStart[n]];
+        IntStream.range(0, n).parallel().forEach(u -> {
+            int at = forwardStart[u];
+            for (int e = offsets.get(u), end = offsets.get(u + 1); e < end; e++) {
+                int v = targets.get(e);
+                if (isForward(offsets, u, v, p, seed)) forward[at++] = v;
+            }
+        });
+
+        // one count array per worker: users are dealt round-robin into a fixed number of chunks
+        int chunks = Math.max(1, Math.min(n, ForkJoinPool.getCommonPoolParallelism()));
+        long[] perUser = IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> {
+                    long[] counts = new long[n];
+                    for (int u = c; u < n; u += chunks) countAt(forwardStart, forward, u, counts);
+                    return counts;
+                })
+                .reduce((a, b) -> { for (int v = 0; v < n; v++) a[v] += b[v]; return a; })
+                .get();
+
+        double scale = 1.0 / (p * p * p);
+        long found = 0, wedges = 0;
+        double clustering = 0;
+        double[] estimated = new double[n];
+        for (int v = 0; v < n; v++) {
+            found += perUser[v];
+            estimated[v] = perUser[v] * scale;
+            long d = offsets.get(v + 1) - offsets.get(v);
+            long w = d * (d - 1) / 2;
+            wedges += w;
+            if (w > 0) clustering += estimated[v] / w;
+        }
+        long triangles = Math.round(found / 3 * scale);
+        return new Result(triangles, wedges, n == 0 ? 0.0 : clustering / n, p, estimated);
+    }
+
+    // triangles whose lowest-ranked user is u: common forward friends of u and each forward friend
+    private static void countAt(int[] start, int[] forward, int u, long[] counts) {
+        for (int i = start[u]; i < start[u + 1]; i++) {
+            int v = forward[i];
+            int a = start[u], aEnd = start[u + 1], b = start[v], bEnd = start[v + 1];
+            while (a < aEnd && b < bEnd) {
+                int x = forward[a], y = forward[b];
+                if (x < y) a++;
+                else if (x > y) b++;
+                else {
+                    counts[u]++;
+                    counts[v]++;
+                    counts[x]++;
+                    a++;
+                    b++;
+                }
+            }
+        }
+    }
+
+    // u -> v is kept, and oriented towards the higher (degree, id)
+    private static boolean isForward(IntArray offsets, int u, int v, double p, long seed) {
+        int du = offsets.get(u + 1) - offsets.get(u), dv = offsets.get(v + 1) - offsets.get(v);
+        if (du > dv || (du == dv && u >= v)) return false;
+        return p >= 1 || keep(Math.min(u, v), Math.max(u, v), seed) < p;
+    }
+
+    // uniform in [0, 1) per unordered pair, the same from both ends (SplitMix64 finalizer)
+    private static double keep(int a, int b, long seed) {
+        long z = (((long) a << 32) | (b & 0xffffffffL)) + seed * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (z >>> 11) * 0x1.0p-53;
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Append-only symbol table: username <-> dense int id (open addressing, no boxing).
+// May sit on top of an immutable base table (e.g. a memory-mapped snapshot): base ids come
+// first and new usernames are numbered after them. Removed users keep their ids, hidden,
+// until SocialNetwork renumbers the users (see rebase).
+public class UserIndex {
+    private UserIndex base;
+    private int offset; // number of ids owned by base
+    private String[] names;
+    private int[] slots; // local id + 1, 0 means empty
+    private int size;
+    private BitSet removed; // hidden ids, null if none
+    private int removedCount;
+
+    public UserIndex() {
+        this(16);
+    }
+
+    public UserIndex(int expectedUsers) {
+        this(null, expectedUsers);
+    }
+
+    // overlay that adds new usernames after the ids of an immutable base
+    public UserIndex(UserIndex base) {
+        this(base, 16);
+    }
+
+    private UserIndex(UserIndex base, int expectedUsers) {
+        this.base = base;
+        this.offset = base == null ? 0 : base.size();
+        int cap = Integer.highestOneBit(Math.max(4, expectedUsers * 2 - 1)) << 1;
+        this.names = new String[Math.max(4, expectedUsers)];
+        this.slots = new int[cap];
+    }
+
+    public int size() {
+        return offset + size;
+    }
+
+    public int idOf(String username) {
+        if (username == null) return -1;
+        if (base != null) {
+            int id = base.idOf(username);
+            if (id >= 0 && !isRemoved(id)) return id;
+        }
+        int mask = slots.length - 1;
+        for (int i = mix(username.hashCode()) & mask; ; i = (i + 1) & mask) {
+            int s = slots[i];
+            if (s == 0) return -1;
+            // a removed user's name may come back under a new id further along
+            if (names[s - 1].equals(username) && !isRemoved(offset + s - 1)) return offset + s - 1;
+        }
+    }
+
+    // hides a user: idOf no longer finds the name, which may be added again under a new id
+    void remove(int id) {
+        if (removed == null) removed = new BitSet();
+        if (!removed.get(id)) removedCount++;
+        removed.set(id);
+    }
+
+    boolean isRemoved(int id) {
+        return removed != null && removed.get(id);
+    }
+
+    int removedCount() {
+        return removedCount;
+    }
+
+    // returns the existing id, or assigns the next one
+    public int add(String username) {
+        int id = idOf(username);
+        if (id >= 0) return id;
+        if (size == names.length) names = Arrays.copyOf(names, size * 2);
+        if ((size + 1) * 2 > slots.length) rehash(slots.length * 2);
+        names[size] = username;
+        insertSlot(username, size);
+        return offset + size++;
+    }
+
+    public String nameOf(int id) {
+        if (id < 0 || id >= size() || isRemoved(id)) return null;
+        if (id < offset) return base.nameOf(id);
+        return names[id - offset];
+    }
+
+    // independent copy of the added names; the immutable base is shared
+    public UserIndex copy() {
+        UserIndex c = new UserIndex(base, 1);
+        c.names = Arrays.copyOf(names, Math.max(size, 1));
+        c.slots = slots.clone();
+        c.size = size;
+        c.removed = removed == null ? null : (BitSet) removed.clone();
+        c.removedCount = removedCount;
+        return c;
+    }
+
+    // Hands every name over to base, which must list the remaining users in the same order (e.g.
+    // an off-heap copy of this table, or one without the removed users, renumbered densely);
+    // from now on only names added later are held here
+    void rebase(UserIndex base) {
+        if (base.size() != size() - removedCount()) throw new IllegalArgumentException("base must hold every name");
+        this.base = base;
+        this.offset = base.size();
+        this.names = new String[4];
+        this.slots = new int[8];
+        this.size = 0;
+        this.removed = null;
+        this.removedCount = 0;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        for (int id = 0; id < size; id++) insertSlot(names[id], id);
+    }
+
+    private void insertSlot(String username, int id) {
+        int mask = slots.length - 1;
+        int i = mix(username.hashCode()) & mask;
+        while (slots[i] != 0) i = (i + 1) & mask;
+        slots[i] = id + 1;
+    }
+
+    static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
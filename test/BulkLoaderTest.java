@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Edge-list imports cut into chunks of every size down to one byte, so that chunk ends fall
+// inside names, weights, CRLF pairs and lines longer than the split's read-ahead; then every
+// rejection reason, and duplicates of earlier lines and of friendships already in the network.
+public class BulkLoaderTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void chunkBoundariesNeverSplitALine() throws IOException {
+        Random rnd = new Random(5);
+        StringBuilder text = new StringBuilder();
+        Map<String, Integer> expected = new HashMap<>(); // "a b" with a < b -> weight
+        int lines = 0;
+        for (int i = 0; i < 1500; i++) {
+            if (i % 250 == 0) {
+                text.append('#').append("x".repeat(5000)).append('\n'); // longer than the read-ahead
+                lines++;
+            }
+            String a = "user" + rnd.nextInt(300), b = "user" + rnd.nextInt(300);
+            int w = 1 + rnd.nextInt(20);
+            text.append(a).append(',').append(b).append(',').append(w).append(i % 3 == 0 ? "\r\n" : "\n");
+            lines++;
+            String key = a.compareTo(b) < 0 ? a + " " + b : b + " " + a;
+            if (!a.equals(b)) expected.putIfAbsent(key, w);
+        }
+        text.append("last,line,7"); // no line break at the end
+        lines++;
+        expected.put("last line", 7);
+        Path file = write("edges.csv", text.toString());
+
+        for (long chunk : new long[] { 1, 7, 64, 4096, BulkLoader.CHUNK_BYTES }) {
+            SocialNetwork net = new SocialNetwork();
+            BulkLoader.Report report = BulkLoader.load(file, net, chunk);
+            assertEquals(lines, report.lines, "chunk " + chunk);
+            assertEquals(expected.size(), report.friendshipsAdded, "chunk " + chunk);
+            assertEquals(report.lines - 6 - report.friendshipsAdded, report.totalRejected(), "chunk " + chunk);
+            assertEquals(report.totalRejected(), report.rejected[BulkLoader.Reason.DUPLICATE.ordinal()]
+                    + report.rejected[BulkLoader.Reason.SELF_LOOP.ordinal()], "chunk " + chunk);
+            for (Map.Entry<String, Integer> e : expected.entrySet()) {
+                String[] pair = e.getKey().split(" ");
+                assertEquals((int) e.getValue(), net.getFriendshipWeight(pair[0], pair[1]), e.getKey() + ", chunk " + chunk);
+            }
+            assertEquals(expected.size(), net.getStats().getTotalConnections());
+        }
+    }
+
+    @Test
+    void crlfLinesReadLikeLfLines() throws IOException {
+        String lf = "alice,bob,3\ncarol\n# note\n\nbob,carol\n";
+        for (long chunk : new long[] { 1, 2, 3, BulkLoader.CHUNK_BYTES }) {
+            SocialNetwork a = new SocialNetwork(), b = new SocialNetwork();
+            BulkLoader.Report ra = BulkLoader.load(write("lf.csv", lf), a, chunk);
+            BulkLoader.Report rb = BulkLoader.load(write("crlf.csv", lf.replace("\n", "\r\n")), b, chunk);
+            assertEquals(ra.lines, rb.lines);
+            assertEquals(0, rb.totalRejected(), rb.toString());
+            assertEquals(3, rb.usersAdded);
+            assertEquals(2, rb.friendshipsAdded);
+            assertEquals(3, b.getFriendshipWeight("alice", "bob"));
+            assertEquals(1, b.getFriendshipWeight("bob", "carol"));
+            assertEquals(a.getAllUsers(), b.getAllUsers());
+        }
+    }
+
+    @Test
+    void everyRejectionIsCountedWithItsLine() throws IOException {
+        String text = String.join("\n",
+                "a,b,1,2",      // 1 malformed: four fields
+                " ,b,1",        // 2 invalid: blank name
+                "a,  ",         // 3 invalid: blank second name
+                "a,A,4",        // 4 self-friendship once names are sanitized
+                "a,b,0",        // 5 bad weights
+                "a,b,-3",       // 6
+                "a,b,x",        // 7
+                "a,b,99999999999", // 8 beyond int
+                "a,b,",         // 9 empty weight
+                "a,b, 4 ",      // 10 accepted: spaces around the weight
+                "b,a,5",        // 11 duplicate of line 10, reversed
+                "a,b,6",        // 12 duplicate of line 10
+                "solo") + "\n";
+        SocialNetwork net = new SocialNetwork();
+        BulkLoader.Report report = BulkLoader.load(write("bad.csv", text), net, 16);
+        assertEquals(13, report.lines);
+        assertEquals(1, report.friendshipsAdded);
+        assertEquals(3, report.usersAdded); // a, b and solo
+        assertEquals(1, rejected(report, BulkLoader.Reason.MALFORMED));
+        assertEquals(2, rejected(report, BulkLoader.Reason.INVALID_USERNAME));
+        assertEquals(1, rejected(report, BulkLoader.Reason.SELF_LOOP));
+        assertEquals(5, rejected(report, BulkLoader.Reason.BAD_WEIGHT));
+        assertEquals(2, rejected(report, BulkLoader.Reason.DUPLICATE));
+        assertEquals(4, net.getFriendshipWeight("a", "b"), "the first line wins");
+        List<String> samples = report.samples;
+        assertEquals("line 1: malformed line", samples.get(0));
+        assertEquals("line 2: invalid username", samples.get(1));
+        assertEquals("line 4: self-friendship", samples.get(3));
+        assertEquals("line 9: weight must be a positive integer", samples.get(8));
+        assertTrue(report.toString().contains("duplicate friendship: 2"), report.toString());
+    }
+
+    @Test
+    void friendshipsAlreadyInTheNetworkAreDuplicates() throws IOException {
+        SocialNetwork net = new SocialNetwork();
+        for (String u : new String[] { "a", "b", "c", "d" }) net.addUser(u);
+        net.addFriendship("a", "b", 5);
+        net.getGraph(); // a-b in the compacted graph
+        net.addFriendship("c", "d", 6); // c-d still pending
+        net.addFriendship("a", "c", 2);
+        net.removeFriendship("a", "c"); // gone again, so it may be imported
+
+        BulkLoader.Report report = BulkLoader.load(write("more.csv", "b,a,1\nd,c,1\na,c,3\na,d,4\n"), net, 4);
+        assertEquals(2, report.friendshipsAdded);
+        assertEquals(2, rejected(report, BulkLoader.Reason.DUPLICATE));
+        assertEquals(0, report.usersAdded);
+        assertEquals(5, net.getFriendshipWeight("a", "b"));
+        assertEquals(6, net.getFriendshipWeight("c", "d"));
+        assertEquals(3, net.getFriendshipWeight("a", "c"));
+        assertEquals(4, net.getFriendshipWeight("a", "d"));
+        assertEquals(4, net.getStats().getTotalConnections());
+    }
+
+    private static long rejected(BulkLoader.Report report, BulkLoader.Reason reason) {
+        return report.rejected[reason.ordinal()];
+    }
+
+    private Path write(String name, String text) throws IOException {
+        return Files.write(dir.resolve(name), text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,85 @@
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Brandes against the definition: sum over pairs {s, t} of the share of shortest s-t paths
+// through v, with distances and path counts from Floyd-Warshall.
+public class CentralityTest {
+
+    @Test
+    void exactScoresMatchTheDefinition() {
+        ModelNetwork model = new ModelNetwork(21, 50);
+        SocialNetwork net = new SocialNetwork();
+        for (int step = 0; step < 1500; step++) model.mutate(net);
+        CompactGraph g = net.getGraph();
+        for (boolean weighted : new boolean[] { false, true }) {
+            double[] expected = bruteForce(g, weighted);
+            Centrality.Betweenness b = Centrality.betweenness(g, weighted);
+            for (int v = 0; v < g.size(); v++) {
+                assertEquals(expected[v], b.scores[v], 1e-9 * (1 + expected[v]), g.nameOf(v) + (weighted ? " weighted" : " hops"));
+            }
+            assertEquals(0.0, b.errorBound);
+        }
+    }
+
+    @Test
+    void sampledScoresStayWithinTheNormalizedBound() {
+        CompactGraph g = GraphGenerator.barabasiAlbert(2000, 3, 5).getGraph();
+        Centrality.Betweenness exact = Centrality.betweenness(g, false);
+        for (double eps : new double[] { 0.3, 0.1 }) {
+            Centrality.Betweenness sampled = Centrality.approximateBetweenness(g, false, eps, 17);
+            assertTrue(sampled.sources < g.size(), "sampled " + sampled.sources + " sources");
+            assertTrue(sampled.normalizedErrorBound() <= eps, "bound " + sampled.normalizedErrorBound());
+            for (int v = 0; v < g.size(); v++) {
+                assertTrue(Math.abs(sampled.normalized(v) - exact.normalized(v)) <= eps, "user " + g.nameOf(v));
+            }
+        }
+    }
+
+    private static double[] bruteForce(CompactGraph g, boolean weighted) {
+        int n = g.size();
+        long inf = Long.MAX_VALUE / 4;
+        long[][] dist = new long[n][n];
+        for (int u = 0; u < n; u++) {
+            Arrays.fill(dist[u], inf);
+            dist[u][u] = 0;
+            for (int e = g.begin(u); e < g.end(u); e++) dist[u][g.target(e)] = weighted ? g.weight(e) : 1;
+        }
+        for (int k = 0; k < n; k++) {
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) dist[i][j] = Math.min(dist[i][j], dist[i][k] + dist[k][j]);
+            }
+        }
+        // sigma[s][t]: shortest s-t paths, summed over the last friendship (u, t) on one
+        double[][] sigma = new double[n][n];
+        for (int s = 0; s < n; s++) {
+            Integer[] byDistance = new Integer[n];
+            for (int t = 0; t < n; t++) byDistance[t] = t;
+            long[] d = dist[s];
+            Arrays.sort(byDistance, (a, b) -> Long.compare(d[a], d[b]));
+            sigma[s][s] = 1;
+            for (int t : byDistance) {
+                if (t == s || d[t] >= inf) continue;
+                for (int e = g.begin(t); e < g.end(t); e++) {
+                    int u = g.target(e);
+                    if (d[u] + (weighted ? g.weight(e) : 1) == d[t]) sigma[s][t] += sigma[s][u];
+                }
+            }
+        }
+        double[] scores = new double[n];
+        for (int s = 0; s < n; s++) {
+            for (int t = s + 1; t < n; t++) {
+                if (dist[s][t] >= inf) continue;
+                for (int v = 0; v < n; v++) {
+                    if (v != s && v != t && dist[s][v] + dist[v][t] == dist[s][t]) {
+                        scores[v] += sigma[s][v] * sigma[v][t] / sigma[s][t];
+                    }
+                }
+            }
+        }
+        return scores;
+    }
+}
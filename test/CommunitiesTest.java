@@ -0,0 +1,110 @@
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Modularity against partitions worked out by hand, the two groups of the sample network found
+// again, and suggestions within a community after removals have renumbered the users.
+public class CommunitiesTest {
+    // the sample network's friendships: a ring of six and a ring of four, joined by bob-grace and
+    // alice-heidi (the last two)
+    private static final String[][] SAMPLE = {
+            { "alice", "bob" }, { "alice", "charlie" }, { "bob", "diana" }, { "charlie", "eve" },
+            { "diana", "frank" }, { "eve", "frank" }, { "grace", "heidi" }, { "heidi", "ivan" },
+            { "ivan", "judy" }, { "judy", "grace" }, { "bob", "grace" }, { "alice", "heidi" } };
+    private static final Set<String> SIX = Set.of("alice", "bob", "charlie", "diana", "eve", "frank");
+    private static final Set<String> FOUR = Set.of("grace", "heidi", "ivan", "judy");
+
+    @Test
+    void modularityMatchesHandComputedPartitions() {
+        // triangles a-b-c and d-e-f joined by c-d, all of weight 1: total weight m = 7
+        SocialNetwork net = new SocialNetwork();
+        for (String u : new String[] { "a", "b", "c", "d", "e", "f" }) net.addUser(u);
+        for (String[] e : new String[][] { { "a", "b" }, { "b", "c" }, { "a", "c" }, { "d", "e" }, { "e", "f" }, { "d", "f" } }) {
+            net.addFriendship(e[0], e[1], 1);
+        }
+        net.addFriendship("c", "d", 1);
+        CompactGraph g = net.getGraph();
+        int[] triangles = new int[6];
+        for (String u : new String[] { "d", "e", "f" }) triangles[g.idOf(u)] = 1;
+
+        // Q = sum over communities of internal/m - (strength/2m)^2: each triangle holds 3 of the
+        // 7 and has strength 2 + 2 + 3 = 7 of the 14, so Q = 2 * (3/7 - 1/4) = 5/14
+        assertEquals(5 / 14.0, Communities.modularity(g, triangles), 1e-12);
+        assertEquals(0.0, Communities.modularity(g, new int[6]), 1e-12);
+        int[] alone = new int[6];
+        for (int v = 0; v < 6; v++) alone[v] = v;
+        // no internal weight; strengths 2, 2, 3, 3, 2, 2 of 14
+        assertEquals(-(4 * 4 + 2 * 9) / 196.0, Communities.modularity(g, alone), 1e-12);
+
+        Communities.Result louvain = Communities.louvain(g);
+        assertEquals(2, louvain.count());
+        assertEquals(5 / 14.0, louvain.modularity, 1e-12);
+        assertEquals(louvain.communityOf("a"), louvain.communityOf("c"));
+        assertTrue(louvain.communityOf("c") != louvain.communityOf("d"));
+    }
+
+    @Test
+    void louvainRecoversTheTwoSampleGroups() {
+        SocialNetwork net = sample();
+        Communities.Result louvain = net.detectCommunities(true);
+        assertEquals(2, louvain.count());
+        assertEquals(SIX, new HashSet<>(louvain.members(0)));
+        assertEquals(FOUR, new HashSet<>(louvain.members(1)));
+        // rings of weight 3, bridges of weight 1: 18 and 12 of the 32 inside, strengths 38 and 26 of 64
+        assertEquals(30 / 32.0 - (38 * 38 + 26 * 26) / 4096.0, louvain.modularity, 1e-12);
+
+        // with the sample's own weights the strong bridges (5 and 4 of 34) pull the groups
+        // together: the two rings score 25/34 - (43^2 + 25^2)/68^2, and Louvain finds better
+        SocialNetwork weighted = new SocialNetwork();
+        weighted.initializeSampleData();
+        CompactGraph g = weighted.getGraph();
+        int[] rings = new int[g.size()];
+        for (String u : FOUR) rings[g.idOf(u)] = 1;
+        double q = 25 / 34.0 - (43 * 43 + 25 * 25) / (68.0 * 68);
+        assertEquals(q, Communities.modularity(g, rings), 1e-12);
+        assertTrue(weighted.detectCommunities(true).modularity > q);
+        assertTrue(weighted.detectCommunities(false).modularity > 0);
+    }
+
+    @Test
+    void communitySuggestionsFollowRemovalsAndNewUsers() {
+        SocialNetwork net = sample();
+        Communities.Result communities = net.detectCommunities(true);
+        // bob's friends of friends are charlie, frank, heidi and judy; the last two are in the other group
+        assertEquals(Set.of("charlie", "frank"), new HashSet<>(net.suggestFriends("bob", 5, communities)));
+
+        // removing alice renumbers everyone after her; zed joins after the communities were found
+        assertTrue(net.removeUser("alice"));
+        assertTrue(net.addUser("zed"));
+        assertTrue(net.addFriendship("zed", "bob", 1));
+        assertTrue(net.addFriendship("zed", "frank", 1));
+        net.getGraph();
+
+        assertEquals(communities.communityOf("bob"), communities.communityOf("alice")); // as detected
+        assertEquals(-1, communities.communityOf("zed"));
+        assertEquals(communities.communityOf("bob"), communities.communityOf("frank"));
+        // diana's friends of friends: eve (via frank), grace (via bob, the other group) and zed
+        // (via both, but too new for any group); only eve shares her group
+        assertEquals(Set.of("eve", "grace", "zed"), new HashSet<>(net.suggestFriends("diana", 5)));
+        assertEquals(List.of("eve"), net.suggestFriends("diana", 5, communities));
+        assertEquals(List.of(), net.suggestFriends("zed", 5, communities));
+        for (String s : net.suggestFriends("judy", 5, communities)) assertTrue(FOUR.contains(s), s);
+    }
+
+    // the sample's friendships with the rings stronger than the bridges; at equal weights
+    // splitting off alice and bob scores as well as the two rings
+    private static SocialNetwork sample() {
+        SocialNetwork net = new SocialNetwork();
+        for (int i = 0; i < SAMPLE.length; i++) {
+            net.addUser(SAMPLE[i][0]);
+            net.addUser(SAMPLE[i][1]);
+            assertTrue(net.addFriendship(SAMPLE[i][0], SAMPLE[i][1], i < SAMPLE.length - 2 ? 3 : 1));
+        }
+        return net;
+    }
+}
@@ -0,0 +1,129 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Writers grow and then cut chains of users while readers query published versions without
+// locking. Each version is a consistent snapshot, so every answer must hold for some state the
+// writers passed through; at the end the published network must match what they did.
+public class ConcurrentModeTest {
+    private static final int WRITERS = 3, READERS = 3, CHAIN = 400;
+
+    @Test
+    void readersSeeConsistentVersionsWhileWritersChangeTheGraph() throws Exception {
+        SocialNetwork net = new SocialNetwork();
+        net.enableConcurrentMode(1);
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + READERS);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                int writer = w;
+                writers.add(pool.submit(() -> {
+                    // chain c0 - c1 - ... of weight 1, then every fifth link cut and every
+                    // seventh user removed
+                    for (int i = 0; i < CHAIN; i++) {
+                        assertTrue(net.addUser(name(writer, i)));
+                        if (i > 0) assertTrue(net.addFriendship(name(writer, i - 1), name(writer, i), 1));
+                    }
+                    for (int i = 5; i < CHAIN; i += 5) assertTrue(net.removeFriendship(name(writer, i - 1), name(writer, i)));
+                    for (int i = 7; i < CHAIN; i += 7) assertTrue(net.removeUser(name(writer, i)));
+                    return null;
+                }));
+            }
+            List<Future<Integer>> readers = new ArrayList<>();
+            for (int r = 0; r < READERS; r++) {
+                Random rnd = new Random(r);
+                readers.add(pool.submit(() -> {
+                    int checked = 0;
+                    while (writing.get()) {
+                        int writer = rnd.nextInt(WRITERS), i = rnd.nextInt(CHAIN), j = rnd.nextInt(CHAIN);
+                        String a = name(writer, Math.min(i, j)), b = name(writer, Math.max(i, j));
+                        List<String> path = net.findShortestPath(a, b);
+                        if (path != null) {
+                            // within one version, a path is the stretch of chain between a and b
+                            assertEquals(Math.abs(i - j) + 1, path.size(), a + " " + b + " " + path);
+                            assertEquals(a, path.get(0));
+                            assertEquals(b, path.get(path.size() - 1));
+                        }
+                        assertFalse(net.areConnected(a, name((writer + 1) % WRITERS, j)), "chains never meet");
+                        NetworkStats stats = net.getStats();
+                        assertTrue(stats.getMaxDegree() <= 2);
+                        assertTrue(stats.getTotalConnections() < stats.getTotalUsers() || stats.getTotalUsers() == 0);
+                        checked++;
+                    }
+                    return checked;
+                }));
+            }
+            for (Future<?> f : writers) f.get();
+            writing.set(false);
+            for (Future<Integer> f : readers) assertTrue(f.get() > 0);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        net.publish();
+        int users = 0, friendships = 0;
+        for (int w = 0; w < WRITERS; w++) {
+            for (int i = 0; i < CHAIN; i++) {
+                assertEquals(survives(i), net.userExists(name(w, i)), name(w, i));
+                if (survives(i)) users++;
+                if (i == 0 || !survives(i)) continue;
+                boolean linked = i % 5 != 0 && survives(i - 1);
+                assertEquals(linked, net.areDirectlyConnected(name(w, i - 1), name(w, i)), name(w, i));
+                if (linked) friendships++;
+            }
+            assertEquals(5, net.findShortestPath(name(w, 0), name(w, 4)).size());
+            assertNull(net.findShortestPath(name(w, 0), name(w, 5)));
+        }
+        assertEquals(users, net.getStats().getTotalUsers());
+        assertEquals(friendships, net.getStats().getTotalConnections());
+        net.disableConcurrentMode();
+    }
+
+    @Test
+    void compactionsOutsideTheLockKeepTheWritesMadeMeanwhile() throws Exception {
+        SocialNetwork net = new SocialNetwork();
+        int users = 3000;
+        for (int i = 0; i < users; i++) net.addUser("u" + i);
+        net.enableConcurrentMode(0);
+        Map<String, Set<String>> model = new HashMap<>();
+        Random rnd = new Random(4);
+        // enough new rows that publishing compacts several times while this thread writes
+        for (int step = 0; step < 60_000; step++) {
+            String a = "u" + rnd.nextInt(users), b = "u" + rnd.nextInt(users);
+            if (net.addFriendship(a, b, 1)) {
+                model.computeIfAbsent(a, k -> new HashSet<>()).add(b);
+                model.computeIfAbsent(b, k -> new HashSet<>()).add(a);
+            }
+        }
+        net.publish();
+        for (int i = 0; i < users; i++) {
+            assertEquals(model.getOrDefault("u" + i, new HashSet<>()), net.getUserFriends("u" + i), "u" + i);
+        }
+        assertTrue(net.getGraph().isCompact());
+        net.disableConcurrentMode();
+    }
+
+    private static boolean survives(int i) {
+        return i == 0 || i % 7 != 0;
+    }
+
+    private static String name(int writer, int i) {
+        return "w" + writer + "c" + i;
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// HyperANF against a BFS from every user: the neighbourhood function, per-user reach and the
+// effective diameter, within the relative standard error the result states.
+public class HyperAnfTest {
+
+    @Test
+    void estimatesStayWithinTheStandardErrorOfExactBfs() {
+        // a small world, plus a second component so that not every pair is connected
+        SocialNetwork net = GraphGenerator.smallWorld(2000, 6, 0.1, 11);
+        for (int i = 0; i < 50; i++) net.addUser("x" + i);
+        for (int i = 1; i < 50; i++) net.addFriendship("x" + (i - 1), "x" + i, 1);
+        CompactGraph g = net.getGraph();
+        int n = g.size();
+
+        // ball[h][u]: users within h hops of u, u included; ball[H][u] at the largest distance
+        int[][] dist = new int[n][];
+        int diameter = 0;
+        for (int u = 0; u < n; u++) {
+            dist[u] = bfs(g, u);
+            for (int d : dist[u]) diameter = Math.max(diameter, d);
+        }
+        double[] exact = new double[diameter + 1];
+        for (int u = 0; u < n; u++) for (int d : dist[u]) if (d >= 0) for (int t = d; t <= diameter; t++) exact[t]++;
+
+        HyperAnf.Result r = HyperAnf.run(g, 10);
+        double rse = r.relativeStandardError();
+        assertEquals(1.04 / 32, rse, 1e-12);
+
+        // sums over every user average out most of the per-counter error
+        assertEquals(n, r.neighbourhood[0], rse * n);
+        for (int t = 1; t < Math.min(exact.length, r.neighbourhood.length); t++) {
+            assertEquals(exact[t], r.neighbourhood[t], rse * exact[t], "pairs within " + t);
+        }
+        assertTrue(Math.abs(r.rounds - diameter) <= 1, r.rounds + " rounds, diameter " + diameter);
+        assertEquals(effectiveDiameter(exact, 0.9), r.effectiveDiameter(0.9), 0.25);
+
+        // each user's count is one estimate: two thirds of them within one standard error (with
+        // slack for the sample), and none beyond four; small counts may also lose a user or two
+        // to a shared register
+        for (int h = 1; h <= HyperAnf.REACH_HOPS; h++) {
+            int within = 0;
+            for (int u = 0; u < n; u++) {
+                int ball = 0;
+                for (int d : dist[u]) if (d >= 1 && d <= h) ball++;
+                double error = Math.abs(r.reach(u, h) - ball);
+                assertTrue(error <= 4 * rse * ball + 2, g.nameOf(u) + " within " + h + ": " + r.reach(u, h) + " vs " + ball);
+                if (error <= rse * ball + 1) within++;
+            }
+            assertTrue(within >= 0.6 * n, within + " of " + n + " within one standard error at " + h + " hops");
+        }
+        int x0 = r.idOf("x0");
+        assertEquals(49, r.reach(x0), 4 * rse * 50);
+        assertEquals(1, r.reach(x0, 1), 0.01);
+    }
+
+    private static int[] bfs(CompactGraph g, int s) {
+        int[] dist = new int[g.size()];
+        Arrays.fill(dist, -1);
+        int[] queue = new int[g.size()];
+        int head = 0, tail = 0;
+        dist[s] = 0;
+        queue[tail++] = s;
+        while (head < tail) {
+            int u = queue[head++];
+            for (int e = g.begin(u); e < g.end(u); e++) {
+                int v = g.target(e);
+                if (dist[v] >= 0) continue;
+                dist[v] = dist[u] + 1;
+                queue[tail++] = v;
+            }
+        }
+        return dist;
+    }
+
+    // the same interpolation as HyperAnf.Result, on exact counts
+    private static double effectiveDiameter(double[] pairs, double fraction) {
+        double goal = pairs[0] + fraction * (pairs[pairs.length - 1] - pairs[0]);
+        for (int t = 1; t < pairs.length; t++) {
+            if (pairs[t] >= goal) return t - 1 + (goal - pairs[t - 1]) / (pairs[t] - pairs[t - 1]);
+        }
+        return pairs.length - 1;
+    }
+}
@@ -0,0 +1,220 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The naive reference the tests compare SocialNetwork against: adjacency maps keyed by name,
+// searched with textbook BFS and Dijkstra. It applies the same random mutations and checks that
+// the network answered each one as it would, then that every query agrees with it.
+public class ModelNetwork {
+    final Map<String, Map<String, Integer>> adj = new TreeMap<>();
+    private final Random rnd;
+    private final int names;
+
+    ModelNetwork(long seed, int names) {
+        this.rnd = new Random(seed);
+        this.names = names;
+    }
+
+    String randomName() {
+        return "u" + rnd.nextInt(names);
+    }
+
+    // one random mutation, applied to both; removals mostly pick an existing friendship
+    void mutate(SocialNetwork net) {
+        int op = rnd.nextInt(100);
+        String x = randomName(), y = randomName();
+        if (op < 20) {
+            assertEquals(!adj.containsKey(x), net.addUser(x), "addUser " + x);
+            adj.putIfAbsent(x, new TreeMap<>());
+        } else if (op < 65) {
+            int w = 1 + rnd.nextInt(9);
+            boolean expected = adj.containsKey(x) && adj.containsKey(y) && !x.equals(y) && !adj.get(x).containsKey(y);
+            assertEquals(expected, net.addFriendship(x, y, w), "addFriendship " + x + " " + y);
+            if (expected) {
+                adj.get(x).put(y, w);
+                adj.get(y).put(x, w);
+            }
+        } else if (op < 92) {
+            if (adj.containsKey(x) && !adj.get(x).isEmpty() && rnd.nextInt(4) > 0) {
+                List<String> friends = new ArrayList<>(adj.get(x).keySet());
+                y = friends.get(rnd.nextInt(friends.size()));
+            }
+            boolean expected = areFriends(x, y);
+            assertEquals(expected, net.removeFriendship(x, y), "removeFriendship " + x + " " + y);
+            if (expected) {
+                adj.get(x).remove(y);
+                adj.get(y).remove(x);
+            }
+        } else {
+            boolean expected = adj.containsKey(x);
+            assertEquals(expected, net.removeUser(x), "removeUser " + x);
+            if (expected) {
+                for (String f : adj.remove(x).keySet()) adj.get(f).remove(x);
+            }
+        }
+    }
+
+    boolean areFriends(String x, String y) {
+        return adj.containsKey(x) && adj.get(x).containsKey(y);
+    }
+
+    // the statistics, then `queries` random pairs through every kind of query
+    void check(SocialNetwork net, int queries) {
+        assertEquals(adj.keySet(), net.getAllUsers());
+        NetworkStats stats = net.getStats();
+        int edges = 0, maxDegree = 0;
+        long totalWeight = 0;
+        for (Map<String, Integer> row : adj.values()) {
+            edges += row.size();
+            maxDegree = Math.max(maxDegree, row.size());
+            for (int w : row.values()) totalWeight += w;
+        }
+        assertEquals(adj.size(), stats.getTotalUsers());
+        assertEquals(edges / 2, stats.getTotalConnections());
+        assertEquals(totalWeight / 2, stats.getTotalEdgeWeight());
+        assertEquals(maxDegree, stats.getMaxDegree());
+        int[] histogram = new int[maxDegree + 1];
+        for (Map<String, Integer> row : adj.values()) histogram[row.size()]++;
+        assertEquals(toList(histogram), toList(stats.getDegreeHistogram()));
+        if (!adj.isEmpty()) assertEquals(maxDegree, adj.get(stats.getMostPopularUsername()).size());
+
+        Map<String, Integer> component = components();
+        Map<Integer, Integer> sizeOf = new HashMap<>();
+        for (int c : component.values()) sizeOf.merge(c, 1, Integer::sum);
+        SortedMap<Integer, Integer> sizes = new TreeMap<>();
+        for (int size : sizeOf.values()) sizes.merge(size, 1, Integer::sum);
+        assertEquals(sizeOf.size(), stats.getComponentCount());
+        assertEquals(sizes, stats.getComponentSizes());
+
+        List<String> users = new ArrayList<>(adj.keySet());
+        for (int i = 0; i < queries && !users.isEmpty(); i++) {
+            String x = users.get(rnd.nextInt(users.size())), y = users.get(rnd.nextInt(users.size()));
+            String pair = x + " " + y;
+            assertEquals(adj.get(x).keySet(), net.getUserFriends(x), "friends " + x);
+            assertEquals(areFriends(x, y), net.areDirectlyConnected(x, y), "direct " + pair);
+            assertEquals(component.get(x).equals(component.get(y)), net.areConnected(x, y), "connected " + pair);
+            assertEquals(mutualFriends(x, y), net.findMutualFriends(x, y), "mutual " + pair);
+            assertEquals(areFriends(x, y) ? adj.get(x).get(y) : 0, net.getFriendshipWeight(x, y), "weight " + pair);
+
+            int hops = hops(x, y);
+            List<String> path = net.findShortestPath(x, y);
+            if (hops < 0) {
+                assertNull(path, "shortest " + pair);
+            } else {
+                assertNotNull(path, "shortest " + pair);
+                assertPath(x, y, path);
+                assertEquals(hops, path.size() - 1, "shortest " + pair);
+            }
+            long lightest = lightest(x, y);
+            for (boolean bidirectional : new boolean[] { true, false }) {
+                path = net.findLightestPath(x, y, bidirectional);
+                if (lightest < 0) {
+                    assertNull(path, "lightest " + pair);
+                } else {
+                    assertNotNull(path, "lightest " + pair);
+                    assertPath(x, y, path);
+                    assertEquals(lightest, weight(path), "lightest " + pair);
+                }
+            }
+        }
+        for (int i = 0; i < queries / 4; i++) {
+            String x = randomName();
+            assertEquals(adj.containsKey(x), net.userExists(x), "exists " + x);
+        }
+    }
+
+    private void assertPath(String x, String y, List<String> path) {
+        assertEquals(x, path.get(0));
+        assertEquals(y, path.get(path.size() - 1));
+        for (int i = 1; i < path.size(); i++) assertTrue(areFriends(path.get(i - 1), path.get(i)), "path " + path);
+    }
+
+    private long weight(List<String> path) {
+        long w = 0;
+        for (int i = 1; i < path.size(); i++) w += adj.get(path.get(i - 1)).get(path.get(i));
+        return w;
+    }
+
+    Set<String> mutualFriends(String x, String y) {
+        Set<String> mutual = new HashSet<>(adj.get(x).keySet());
+        mutual.retainAll(adj.get(y).keySet());
+        return mutual;
+    }
+
+    // component number of every user
+    Map<String, Integer> components() {
+        Map<String, Integer> component = new HashMap<>();
+        int c = 0;
+        for (String u : adj.keySet()) {
+            if (component.containsKey(u)) continue;
+            Deque<String> queue = new ArrayDeque<>(List.of(u));
+            component.put(u, c);
+            while (!queue.isEmpty()) {
+                for (String v : adj.get(queue.poll()).keySet()) {
+                    if (component.putIfAbsent(v, c) == null) queue.add(v);
+                }
+            }
+            c++;
+        }
+        return component;
+    }
+
+    // hops on a shortest path, or -1 if there is none
+    int hops(String s, String t) {
+        Map<String, Integer> dist = new HashMap<>();
+        dist.put(s, 0);
+        Deque<String> queue = new ArrayDeque<>(List.of(s));
+        while (!queue.isEmpty()) {
+            String u = queue.poll();
+            if (u.equals(t)) return dist.get(u);
+            for (String v : adj.get(u).keySet()) {
+                if (dist.putIfAbsent(v, dist.get(u) + 1) == null) queue.add(v);
+            }
+        }
+        return -1;
+    }
+
+    // weight of a lightest path, or -1 if there is none
+    long lightest(String s, String t) {
+        Map<String, Long> dist = new HashMap<>();
+        PriorityQueue<Object[]> queue = new PriorityQueue<>((a, b) -> Long.compare((Long) a[1], (Long) b[1]));
+        dist.put(s, 0L);
+        queue.add(new Object[] { s, 0L });
+        while (!queue.isEmpty()) {
+            Object[] top = queue.poll();
+            String u = (String) top[0];
+            long d = (Long) top[1];
+            if (d > dist.get(u)) continue;
+            if (u.equals(t)) return d;
+            for (Map.Entry<String, Integer> e : adj.get(u).entrySet()) {
+                long nd = d + e.getValue();
+                Long old = dist.get(e.getKey());
+                if (old == null || nd < old) {
+                    dist.put(e.getKey(), nd);
+                    queue.add(new Object[] { e.getKey(), nd });
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static List<Integer> toList(int[] a) {
+        List<Integer> list = new ArrayList<>(a.length);
+        for (int x : a) list.add(x);
+        return list;
+    }
+}
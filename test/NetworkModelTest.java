@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Random adds and removals of users and friendships, with every query checked against the naive
+// model after each burst, in each storage and search mode.
+public class NetworkModelTest {
+    private static final int NAMES = 60, STEPS = 3000, BURST = 40, QUERIES = 30;
+
+    @ParameterizedTest
+    @ValueSource(strings = { "heap", "offHeap", "concurrent", "landmarks" })
+    void queriesMatchTheModel(String mode) throws IOException {
+        for (long seed = 1; seed <= 4; seed++) {
+            ModelNetwork model = new ModelNetwork(seed, NAMES);
+            SocialNetwork net = new SocialNetwork();
+            switch (mode) {
+                case "offHeap":
+                    net.enableOffHeapStorage(null);
+                    break;
+                case "concurrent":
+                    net.enableConcurrentMode(1);
+                    break;
+                case "landmarks":
+                    net.enableLandmarkOracle(1 << 20);
+                    break;
+                default:
+                    break;
+            }
+            for (int step = 1; step <= STEPS; step++) {
+                model.mutate(net);
+                if (step % BURST != 0) continue;
+                if (net.isConcurrent()) net.publish(); // reads see the published version only
+                model.check(net, QUERIES);
+            }
+            net.close();
+        }
+    }
+
+    @Test
+    void landmarksAreRebuiltInTheBackgroundAfterRemovals() throws InterruptedException {
+        SocialNetwork net = GraphGenerator.smallWorld(2000, 6, 0.1, 5);
+        assertTrue(net.enableLandmarkOracle(1 << 20) > 0);
+        assertTrue(net.estimateDistance("u0", "u1000") > 0);
+        List<String> path = net.findLightestPath("u0", "u1000", true);
+        assertTrue(net.removeFriendship(path.get(0), path.get(1)));
+        // answered by Dijkstra until the new landmarks are in
+        assertEquals(weight(net, net.findLightestPath("u0", "u1000", true)), weight(net, net.findLightestPath("u0", "u1000")));
+        for (int waited = 0; net.isLandmarkOracleStale() && waited < 10_000; waited += 10) Thread.sleep(10);
+        assertFalse(net.isLandmarkOracleStale());
+        assertTrue(net.estimateDistance("u0", "u1000") > 0);
+        assertEquals(weight(net, net.findLightestPath("u0", "u1000", true)), weight(net, net.findLightestPath("u0", "u1000")));
+    }
+
+    private static long weight(SocialNetwork net, List<String> path) {
+        long total = 0;
+        for (int i = 1; i < path.size(); i++) total += net.getFriendshipWeight(path.get(i - 1), path.get(i));
+        return total;
+    }
+
+    @Test
+    void snapshotsKeepTheRemovals(@TempDir Path dir) throws IOException {
+        ModelNetwork model = new ModelNetwork(7, NAMES);
+        SocialNetwork net = new SocialNetwork();
+        for (int step = 1; step <= STEPS; step++) {
+            model.mutate(net);
+            if (step % 500 != 0) continue;
+            Path file = dir.resolve("network-" + step + ".snap");
+            net.saveSnapshot(file);
+            net.close();
+            net = SocialNetwork.openSnapshot(file, true);
+            model.check(net, QUERIES);
+        }
+        net.close();
+    }
+}
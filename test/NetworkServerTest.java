@@ -0,0 +1,118 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The line protocol over a real socket: pipelined requests answered in order, errors (including a
+// request that throws), and many clients searching at once on the bounded worker pool.
+public class NetworkServerTest {
+
+    @Test
+    void answersAPipelinedBurstInOrder() throws IOException {
+        try (NetworkServer server = new NetworkServer(new SocialNetwork(), 0);
+             Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+            List<String> requests = List.of(
+                    "ADD_USER alice", "ADD_USER bob", "ADD_USER carol", "ADD_USER dave", "ADD_USER alice",
+                    "ADD_USER\tmary ann",
+                    "ADD_FRIEND alice bob 5", "ADD_FRIEND bob carol 5", "ADD_FRIEND alice dave 1",
+                    "ADD_FRIEND dave carol 1", "ADD_FRIEND\tmary ann\tcarol\t2", "ADD_FRIEND alice bob",
+                    "SYNC",
+                    "FRIENDS carol", "CONNECTED alice carol", "MUTUAL alice carol", "LIGHTEST alice carol",
+                    "PATH\tmary ann\tbob", "STATS",
+                    "REMOVE_FRIEND alice dave", "REMOVE_FRIEND alice dave", "SYNC", "LIGHTEST alice carol",
+                    "REMOVE_USER bob", "SYNC", "PATH alice carol", "FRIENDS bob",
+                    "ADD_FRIEND alice carol x", "FRIENDS", "HELLO there");
+            List<String> expected = List.of(
+                    "OK", "OK", "OK", "OK", "ERR invalid or existing user",
+                    "OK",
+                    "OK", "OK", "OK",
+                    "OK", "OK", "ERR unknown users, already friends or bad weight",
+                    "OK",
+                    "OK bob,dave,mary ann", "OK true", "OK bob,dave", "OK alice,dave,carol",
+                    "OK mary ann,carol,bob", "OK users=5 friendships=5 components=1 largest=5 maxDegree=3 totalWeight=14",
+                    "OK", "ERR not friends", "OK", "OK alice,bob,carol",
+                    "OK", "OK", "OK none", "ERR no such user",
+                    "ERR not a number: For input string: \"x\"", "ERR FRIENDS needs 1 argument(s)", "ERR unknown command HELLO");
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            out.write(String.join("\n", requests) + "\nQUIT\n");
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            for (int i = 0; i < requests.size(); i++) assertEquals(expected.get(i), in.readLine(), requests.get(i));
+            assertNull(in.readLine(), "QUIT closes the connection");
+        }
+    }
+
+    @Test
+    void aFailingRequestKeepsTheConnectionOpen() throws IOException {
+        SocialNetwork network = new SocialNetwork() {
+            @Override
+            public List<String> findShortestPath(String user1, String user2) {
+                throw new IllegalStateException("search failed");
+            }
+        };
+        try (NetworkServer server = new NetworkServer(network, 0);
+             Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            out.write("ADD_USER alice\nPATH alice alice\nSYNC\nFRIENDS alice\nQUIT\n");
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals("OK", in.readLine());
+            assertEquals("ERR search failed", in.readLine());
+            assertEquals("OK", in.readLine());
+            assertEquals("OK ", in.readLine());
+            assertNull(in.readLine());
+        }
+    }
+
+    @Test
+    void manyClientsShareTheQueryWorkers() throws Exception {
+        SocialNetwork network = GraphGenerator.barabasiAlbert(2000, 3, 9);
+        int clients = 32, queries = 50;
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        try (NetworkServer server = new NetworkServer(network, 0)) {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                int client = c;
+                results.add(pool.submit(() -> {
+                    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+                        Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+                        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                        int answered = 0;
+                        for (int q = 0; q < queries; q++) {
+                            String a = "u" + (client * 61 + q * 7) % 2000, b = "u" + (client * 13 + q * 29) % 2000;
+                            out.write("PATH " + a + " " + b + "\nSUGGEST " + a + " 5\n");
+                            out.flush();
+                            List<String> path = network.findShortestPath(a, b);
+                            assertEquals(path.size(), in.readLine().substring(3).split(",").length, "PATH " + a + " " + b);
+                            assertEquals("OK " + String.join(",", network.suggestFriends(a, 5)), in.readLine());
+                            answered++;
+                        }
+                        return answered;
+                    }
+                }));
+            }
+            for (Future<Integer> r : results) assertEquals(queries, r.get());
+
+            long workers = Thread.getAllStackTraces().keySet().stream()
+                    .filter(t -> t.getName().startsWith("network-query-")).count();
+            assertTrue(workers <= Runtime.getRuntime().availableProcessors(), workers + " query workers");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
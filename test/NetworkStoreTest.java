@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+// Recovery from a log cut off or damaged by a crash, and checkpoints racing a compaction.
+public class NetworkStoreTest {
+    private static final long SEED = 3;
+    private static final int NAMES = 40, STEPS = 600;
+    private static final String LOG = "log-00000000.log";
+
+    @Test
+    void recoversThePrefixBeforeATornOrCorruptRecord(@TempDir Path dir) throws IOException {
+        // the live store logs every mutation; the log's length after each step marks its records
+        Path live = dir.resolve("live");
+        ModelNetwork model = new ModelNetwork(SEED, NAMES);
+        SocialNetwork net = NetworkStore.open(live, Long.MAX_VALUE);
+        List<Long> lengths = new ArrayList<>();
+        lengths.add(Files.size(live.resolve(LOG)));
+        for (int step = 0; step < STEPS; step++) {
+            model.mutate(net); // returns once the record is durable
+            lengths.add(Files.size(live.resolve(LOG)));
+        }
+        net.close();
+        byte[] log = Files.readAllBytes(live.resolve(LOG));
+
+        for (int steps = 0; steps < STEPS; steps += 37) {
+            long end = lengths.get(steps);
+            int next = steps;
+            while (next < STEPS && lengths.get(next + 1) == end) next++; // the next step that logged
+            if (next == STEPS) break;
+            long recordEnd = lengths.get(next + 1);
+
+            // torn write: only part of the next record reached the disk
+            Path torn = crashCopy(dir.resolve("torn-" + steps), log, end + (recordEnd - end) / 2);
+            assertRecovers(torn, steps, end);
+
+            // the next record is all there but a payload byte is wrong, with intact records after it
+            Path corrupt = crashCopy(dir.resolve("corrupt-" + steps), log, log.length);
+            flipByte(corrupt.resolve(LOG), recordEnd - 1);
+            assertRecovers(corrupt, steps, end);
+        }
+    }
+
+    // what a crash left behind: the log, cut at length
+    private static Path crashCopy(Path dir, byte[] log, long length) throws IOException {
+        Files.createDirectories(dir);
+        Files.write(dir.resolve(LOG), Arrays.copyOf(log, (int) length));
+        return dir;
+    }
+
+    private static void flipByte(Path file, long position) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            ch.read(b, position);
+            b.put(0, (byte) ~b.get(0));
+            b.rewind();
+            ch.write(b, position);
+        }
+    }
+
+    // the store holds the first `steps` mutations, the damaged tail is cut off, and logging
+    // resumes after the intact records
+    private static void assertRecovers(Path dir, int steps, long intactLength) throws IOException {
+        ModelNetwork model = new ModelNetwork(SEED, NAMES);
+        SocialNetwork reference = new SocialNetwork();
+        for (int step = 0; step < steps; step++) model.mutate(reference);
+
+        SocialNetwork recovered = NetworkStore.open(dir, Long.MAX_VALUE);
+        assertEquals(intactLength, Files.size(dir.resolve(LOG)), "log cut after the intact records");
+        model.check(recovered, 20);
+        for (int step = 0; step < 50; step++) model.mutate(recovered);
+        recovered.close();
+
+        recovered = NetworkStore.open(dir, Long.MAX_VALUE);
+        model.check(recovered, 20);
+        recovered.close();
+    }
+
+    @Test
+    void checkpointWaitsForARunningCompaction(@TempDir Path dir) throws IOException {
+        // a graph large enough that its snapshot takes a while to write
+        SocialNetwork generated = GraphGenerator.barabasiAlbert(100_000, 4, 1);
+        CompactGraph g = generated.getGraph();
+        Path edges = dir.resolve("edges.csv");
+        StringBuilder csv = new StringBuilder();
+        for (int u = 0; u < g.size(); u++) {
+            for (int e = g.begin(u); e < g.end(u); e++) {
+                if (g.target(e) > u) csv.append(g.nameOf(u)).append(',').append(g.nameOf(g.target(e))).append(",1\n");
+            }
+        }
+        Files.writeString(edges, csv);
+
+        Path data = dir.resolve("data");
+        SocialNetwork net = NetworkStore.open(data, 128 << 10);
+        net.importEdgeList(edges);
+        NetworkStore store = net.getStore();
+        int added = assertTimeoutPreemptively(Duration.ofMinutes(2), () -> {
+            // log until a background compaction starts, then checkpoint while it is running
+            int generation = store.generation(), n = 0;
+            while (store.generation() == generation) net.addUser("new" + n++);
+            store.checkpoint();
+            net.addFriendship("new0", "new" + (n - 1), 7);
+            net.close();
+            return n;
+        });
+
+        try (Stream<Path> files = Files.list(data)) {
+            List<String> names = files.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+            assertEquals(2, names.size(), "only the checkpoint's generation is kept: " + names);
+        }
+        SocialNetwork reopened = NetworkStore.open(data);
+        assertEquals(g.size() + added, reopened.getStats().getTotalUsers());
+        assertEquals(generated.getStats().getTotalConnections() + 1, reopened.getStats().getTotalConnections());
+        assertEquals(7, reopened.getFriendshipWeight("new0", "new" + (added - 1)));
+        reopened.close();
+    }
+}
@@ -0,0 +1,44 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The analytics read the graph in place, so a graph in direct memory must give the same answers
+// as its copy on the heap.
+public class OffHeapAnalyticsTest {
+
+    @Test
+    void analyticsAgreeOnHeapAndOffHeap() {
+        SocialNetwork net = GraphGenerator.barabasiAlbert(1500, 3, 12);
+        CompactGraph heap = net.getGraph();
+        net.enableOffHeapStorage(null);
+        CompactGraph off = net.getGraph();
+        assertTrue(heap.offsets() instanceof IntArray.Heap);
+        assertTrue(off.offsets() instanceof IntArray.Region && off.targets() instanceof IntArray.Region);
+        assertEquals(heap.edgeCount(), off.edgeCount());
+
+        for (boolean weighted : new boolean[] { false, true }) {
+            assertArrayEquals(Centrality.betweenness(heap, weighted).scores, Centrality.betweenness(off, weighted).scores, 1e-6);
+        }
+        assertArrayEquals(PageRank.pageRank(heap).scores, PageRank.pageRank(off).scores, 1e-12);
+        assertArrayEquals(PageRank.personalized(heap, 5, 0.85, 1e-9, 100).scores,
+                PageRank.personalized(off, 5, 0.85, 1e-9, 100).scores, 1e-12);
+
+        Triangles.Result a = Triangles.count(heap), b = Triangles.count(off);
+        assertEquals(a.triangles, b.triangles);
+        assertEquals(a.wedges, b.wedges);
+        assertEquals(a.averageClustering, b.averageClustering, 1e-12);
+
+        assertArrayEquals(HyperAnf.run(heap).neighbourhood, HyperAnf.run(off).neighbourhood, 1e-6);
+
+        // the community searches are parallel and may settle differently; score each partition
+        // found off the heap on both copies
+        int[][] partitions = { Communities.labelPropagation(off).community, Communities.louvain(off).community };
+        for (int[] community : partitions) {
+            assertEquals(heap.size(), community.length);
+            assertEquals(Communities.modularity(heap, community), Communities.modularity(off, community), 1e-12);
+        }
+        assertTrue(Communities.modularity(off, partitions[1]) > 0.2, "louvain finds structure");
+    }
+}
@@ -0,0 +1,84 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// PageRank against a plain dense power iteration of the same walk: follow a friendship with
+// probability damping, in proportion to its weight, else (or from a user without friends)
+// teleport uniformly or back to the seed.
+public class PageRankTest {
+    private static final double DAMPING = 0.85;
+
+    @Test
+    void globalAndPersonalizedMatchTheDenseWalk() {
+        CompactGraph g = randomGraph();
+        PageRank.Result global = PageRank.pageRank(g, DAMPING, 1e-12, 1000);
+        assertTrue(global.converged);
+        assertScores(dense(g, -1), global.scores);
+        for (int seed = 0; seed < g.size(); seed += 7) {
+            PageRank.Result personalized = PageRank.personalized(g, seed, DAMPING, 1e-12, 1000);
+            assertScores(dense(g, seed), personalized.scores);
+        }
+    }
+
+    @Test
+    void localPushStaysBelowTheExactScores() {
+        CompactGraph g = GraphGenerator.smallWorld(3000, 6, 0.1, 3).getGraph();
+        double epsilon = 1e-5, totalStrength = 0;
+        for (int e = 0; e < g.edgeCount() * 2L; e++) totalStrength += g.weights().get(e);
+        for (int seed = 0; seed < g.size(); seed += 500) {
+            double[] exact = PageRank.personalized(g, seed, DAMPING, 1e-12, 1000).scores;
+            PageRank.LocalResult local = PageRank.approximatePersonalized(g, seed, DAMPING, epsilon);
+            assertTrue(local.users.length < g.size(), "the push stays local");
+            double error = 1;
+            for (int i = 0; i < local.users.length; i++) {
+                assertTrue(local.scores[i] <= exact[local.users[i]] + 1e-12, "user " + g.nameOf(local.users[i]));
+                error -= local.scores[i];
+            }
+            // the mass still unpushed is below epsilon times the strength of whoever holds it
+            assertTrue(error <= epsilon * totalStrength, "missing mass " + error);
+        }
+    }
+
+    private static void assertScores(double[] expected, double[] actual) {
+        double sum = 0;
+        for (int v = 0; v < expected.length; v++) {
+            assertEquals(expected[v], actual[v], 1e-9, "user " + v);
+            sum += actual[v];
+        }
+        assertEquals(1.0, sum, 1e-9);
+    }
+
+    // isolated users and varied weights, after random removals
+    private static CompactGraph randomGraph() {
+        ModelNetwork model = new ModelNetwork(31, 80);
+        SocialNetwork net = new SocialNetwork();
+        for (int step = 0; step < 1200; step++) model.mutate(net);
+        return net.getGraph();
+    }
+
+    private static double[] dense(CompactGraph g, int seed) {
+        int n = g.size();
+        double[][] w = new double[n][n];
+        double[] strength = new double[n];
+        for (int u = 0; u < n; u++) {
+            for (int e = g.begin(u); e < g.end(u); e++) {
+                w[u][g.target(e)] = g.weight(e);
+                strength[u] += g.weight(e);
+            }
+        }
+        double[] rank = new double[n];
+        for (int v = 0; v < n; v++) rank[v] = seed < 0 ? 1.0 / n : v == seed ? 1 : 0;
+        for (int iteration = 0; iteration < 2000; iteration++) {
+            double[] next = new double[n];
+            double teleport = 1 - DAMPING;
+            for (int u = 0; u < n; u++) {
+                if (strength[u] == 0) teleport += DAMPING * rank[u];
+                else for (int v = 0; v < n; v++) next[v] += DAMPING * rank[u] * w[u][v] / strength[u];
+            }
+            for (int v = 0; v < n; v++) next[v] += seed < 0 ? teleport / n : v == seed ? teleport : 0;
+            rank = next;
+        }
+        return rank;
+    }
+}
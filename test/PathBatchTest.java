@@ -0,0 +1,129 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Batched paths against one findShortestPath / findLightestPath call per pair, for batches that
+// take each route through PathBatch: scattered pairs (point-to-point searches), one source with
+// many targets (a shared search) and many sources with one target (a shared search run from the
+// target and reversed). Ties may pick other paths, so lengths and weights are compared.
+public class PathBatchTest {
+    private static final int USERS = 3000;
+
+    @Test
+    void batchesMatchSinglePathQueries() {
+        SocialNetwork net = network();
+        Random rnd = new Random(9);
+        List<List<String[]>> batches = new ArrayList<>();
+        List<String[]> scattered = new ArrayList<>(), fromOne = new ArrayList<>(), toOne = new ArrayList<>();
+        for (int i = 0; i < 200; i++) scattered.add(new String[] { user(rnd), user(rnd) });
+        for (int i = 0; i < 400; i++) fromOne.add(new String[] { "u7", user(rnd) });
+        for (int i = 0; i < 400; i++) toOne.add(new String[] { user(rnd), "u11" });
+        batches.add(scattered);
+        batches.add(fromOne);
+        batches.add(toOne);
+
+        for (boolean landmarks : new boolean[] { false, true }) {
+            if (landmarks) net.enableLandmarkOracle(1 << 20);
+            for (List<String[]> pairs : batches) {
+                for (boolean weighted : new boolean[] { false, true }) {
+                    List<List<String>> paths = net.findPaths(pairs, weighted);
+                    assertEquals(pairs.size(), paths.size());
+                    for (int i = 0; i < pairs.size(); i++) {
+                        String a = pairs.get(i)[0], b = pairs.get(i)[1];
+                        List<String> single = weighted ? net.findLightestPath(a, b) : net.findShortestPath(a, b);
+                        List<String> path = paths.get(i);
+                        if (single == null) {
+                            assertNull(path, a + " " + b);
+                            continue;
+                        }
+                        assertNotNull(path, a + " " + b);
+                        assertValid(net, a, b, path);
+                        if (weighted) assertEquals(weight(net, single), weight(net, path), a + " " + b);
+                        else assertEquals(single.size(), path.size(), a + " " + b);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void unknownAndEqualEndpointsAreAnsweredWithoutSearching() {
+        SocialNetwork net = network();
+        List<String[]> pairs = new ArrayList<>();
+        pairs.add(new String[] { "u1", "nobody" });
+        pairs.add(new String[] { "nobody", "u1" });
+        pairs.add(new String[] { null, "u1" });
+        pairs.add(new String[] { "u5", "u5" });
+        pairs.add(new String[] { "loner", "u5" }); // known, but in no component with u5
+        pairs.add(new String[] { "u1", "u2" });
+        pairs.add(new String[] { "u1", "u2" }); // the same pair twice
+        for (boolean weighted : new boolean[] { false, true }) {
+            List<List<String>> paths = net.findPaths(pairs, weighted);
+            assertNull(paths.get(0));
+            assertNull(paths.get(1));
+            assertNull(paths.get(2));
+            assertEquals(List.of("u5"), paths.get(3));
+            assertNull(paths.get(4));
+            assertValid(net, "u1", "u2", paths.get(5));
+            assertEquals(paths.get(5), paths.get(6));
+            assertNotSame(paths.get(5), paths.get(6), "each pair gets its own list");
+        }
+    }
+
+    @Test
+    void everyPairIsAnsweredOnceWhateverThreadAnswersIt() {
+        SocialNetwork net = network();
+        Random rnd = new Random(3);
+        List<String[]> pairs = new ArrayList<>();
+        // several groups large enough for shared searches, run side by side on the pool
+        for (int source = 0; source < 16; source++) {
+            for (int i = 0; i < 100; i++) pairs.add(new String[] { "u" + source * 100, user(rnd) });
+        }
+        AtomicIntegerArray calls = new AtomicIntegerArray(pairs.size());
+        ConcurrentHashMap<Integer, List<String>> answers = new ConcurrentHashMap<>();
+        net.findPaths(pairs, true, (index, path) -> {
+            calls.incrementAndGet(index);
+            if (path != null) answers.put(index, path);
+        });
+        for (int i = 0; i < pairs.size(); i++) {
+            assertEquals(1, calls.get(i), "pair " + i);
+            assertTrue(answers.containsKey(i), "pair " + i + " is connected");
+            assertEquals(weight(net, net.findLightestPath(pairs.get(i)[0], pairs.get(i)[1])), weight(net, answers.get(i)));
+        }
+    }
+
+    // a small world, plus a user with no friends
+    private static SocialNetwork network() {
+        SocialNetwork net = GraphGenerator.smallWorld(USERS, 6, 0.05, 8);
+        net.addUser("loner");
+        return net;
+    }
+
+    private static String user(Random rnd) {
+        return "u" + rnd.nextInt(USERS);
+    }
+
+    private static void assertValid(SocialNetwork net, String a, String b, List<String> path) {
+        assertEquals(a, path.get(0));
+        assertEquals(b, path.get(path.size() - 1));
+        for (int i = 1; i < path.size(); i++) {
+            assertTrue(net.areDirectlyConnected(path.get(i - 1), path.get(i)), path.get(i - 1) + " " + path.get(i));
+        }
+    }
+
+    private static long weight(SocialNetwork net, List<String> path) {
+        long total = 0;
+        for (int i = 1; i < path.size(); i++) total += net.getFriendshipWeight(path.get(i - 1), path.get(i));
+        return total;
+    }
+}
@@ -0,0 +1,51 @@
+import java.util.List;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Cached answers must match fresh ones after every mutation: a few hot users are queried again
+// and again while random adds and removals go on, so most answers come from the cache unless a
+// change evicted them.
+public class QueryCacheTest {
+    private static final int NAMES = 30, HOT = 10, STEPS = 2000;
+
+    @ParameterizedTest
+    @ValueSource(strings = { "large", "small", "concurrent" })
+    void cachedAnswersMatchFreshOnes(String mode) {
+        ModelNetwork model = new ModelNetwork(5, NAMES);
+        SocialNetwork net = new SocialNetwork();
+        QueryCache cache = net.enableQueryCache(mode.equals("small") ? 4 << 10 : 1 << 20);
+        if (mode.equals("concurrent")) net.enableConcurrentMode(1);
+        for (int step = 0; step < STEPS; step++) {
+            model.mutate(net);
+            if (net.isConcurrent()) net.publish();
+            CompactGraph g = net.getGraph();
+            for (int i = 0; i < HOT; i++) {
+                String x = "u" + i, y = "u" + (HOT - 1 - i);
+                if (!model.adj.containsKey(x) || !model.adj.containsKey(y)) continue;
+                String pair = x + " " + y + " at step " + step;
+                assertEquals(model.mutualFriends(x, y), net.findMutualFriends(x, y), "mutual " + pair);
+                assertEquals(GraphOperations.suggestFriends(x, g), net.suggestFriends(x), "suggest " + pair);
+                assertEquals(FriendSuggestions.topK(x, 3, g), net.suggestFriends(x, 3), "top 3 " + pair);
+                int hops = model.hops(x, y);
+                List<String> path = net.findShortestPath(x, y);
+                if (hops < 0) {
+                    assertNull(path, "path " + pair);
+                } else {
+                    assertNotNull(path, "path " + pair);
+                    assertEquals(hops, path.size() - 1, "path " + pair);
+                    for (int j = 1; j < path.size(); j++) assertTrue(model.areFriends(path.get(j - 1), path.get(j)), "path " + path);
+                }
+            }
+        }
+        assertTrue(cache.hits() > 0, "hits " + cache);
+        assertTrue(cache.invalidations() > 0, "invalidations " + cache);
+        if (mode.equals("small")) assertTrue(cache.evictions() > 0, "evictions " + cache);
+        net.disableConcurrentMode();
+    }
+}
@@ -0,0 +1,79 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Searches across shard processes must agree with the same searches in one JVM.
+public class ShardedNetworkTest {
+
+    @Test
+    void shardsAgreeWithTheSingleNetwork() throws IOException {
+        // sparse enough to leave several components
+        SocialNetwork network = GraphGenerator.erdosRenyi(3000, 1.5, 4);
+        CompactGraph g = network.getGraph();
+        Random rnd = new Random(8);
+        try (ShardedNetwork sharded = ShardedNetwork.launch(network, 3)) {
+            for (int i = 0; i < 150; i++) {
+                String a = g.nameOf(rnd.nextInt(g.size())), b = g.nameOf(rnd.nextInt(g.size()));
+                String pair = a + " " + b;
+                boolean connected = network.areConnected(a, b);
+                assertEquals(connected, sharded.areConnected(a, b).connected, "connected " + pair);
+
+                ShardedNetwork.Result hops = sharded.findShortestPath(a, b);
+                ShardedNetwork.Result lightest = sharded.findLightestPath(a, b);
+                if (!connected) {
+                    assertNull(hops.path, "shortest " + pair);
+                    assertNull(lightest.path, "lightest " + pair);
+                    continue;
+                }
+                assertEquals(network.findShortestPath(a, b).size() - 1, hops.distance, "shortest " + pair);
+                assertEquals(hops.distance, hops.path.size() - 1, "shortest " + pair);
+                assertPath(network, a, b, hops.path);
+                long weight = assertPath(network, a, b, lightest.path);
+                assertEquals(weight(network, network.findLightestPath(a, b)), lightest.distance, "lightest " + pair);
+                assertEquals(lightest.distance, weight, "lightest " + pair);
+            }
+        }
+    }
+
+    @Test
+    void shardsSeeRemovalsMadeBeforeTheLaunch() throws IOException {
+        ModelNetwork model = new ModelNetwork(12, 300);
+        SocialNetwork network = new SocialNetwork();
+        for (int step = 0; step < 4000; step++) model.mutate(network);
+        List<String> users = new ArrayList<>(model.adj.keySet());
+        Random rnd = new Random(2);
+        try (ShardedNetwork sharded = ShardedNetwork.launch(network, 4)) {
+            assertFalse(sharded.areConnected("u" + 300, users.get(0)).connected, "unknown user");
+            for (int i = 0; i < 150; i++) {
+                String a = users.get(rnd.nextInt(users.size())), b = users.get(rnd.nextInt(users.size()));
+                String pair = a + " " + b;
+                int hops = model.hops(a, b);
+                assertEquals(hops >= 0, sharded.areConnected(a, b).connected, "connected " + pair);
+                assertEquals(hops, sharded.findShortestPath(a, b).distance, "shortest " + pair);
+                assertEquals(model.lightest(a, b), sharded.findLightestPath(a, b).distance, "lightest " + pair);
+            }
+        }
+    }
+
+    // checks the path runs along friendships from a to b and returns its weight
+    private static long assertPath(SocialNetwork network, String a, String b, List<String> path) {
+        assertEquals(a, path.get(0));
+        assertEquals(b, path.get(path.size() - 1));
+        for (int i = 1; i < path.size(); i++) assertTrue(network.areDirectlyConnected(path.get(i - 1), path.get(i)), "path " + path);
+        return weight(network, path);
+    }
+
+    private static long weight(SocialNetwork network, List<String> path) {
+        long w = 0;
+        for (int i = 1; i < path.size(); i++) w += network.getFriendshipWeight(path.get(i - 1), path.get(i));
+        return w;
+    }
+}
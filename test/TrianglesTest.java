@@ -0,0 +1,57 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Triangle counts against checking every triple of users, and the sampled estimate against
+// the exact count.
+public class TrianglesTest {
+
+    @Test
+    void exactCountsMatchEveryTriple() {
+        ModelNetwork model = new ModelNetwork(41, 70);
+        SocialNetwork net = new SocialNetwork();
+        for (int step = 0; step < 2500; step++) model.mutate(net);
+        CompactGraph g = net.getGraph();
+        int n = g.size();
+        long[] at = new long[n];
+        long triangles = 0, wedges = 0;
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                if (g.weight(a, b) == 0) continue;
+                for (int c = b + 1; c < n; c++) {
+                    if (g.weight(a, c) == 0 || g.weight(b, c) == 0) continue;
+                    triangles++;
+                    at[a]++;
+                    at[b]++;
+                    at[c]++;
+                }
+            }
+        }
+        double clustering = 0;
+        for (int v = 0; v < n; v++) {
+            long d = g.degree(v), pairs = d * (d - 1) / 2;
+            wedges += pairs;
+            double local = pairs == 0 ? 0.0 : at[v] / (double) pairs;
+            assertEquals(local, Triangles.localClustering(g, v), 1e-12, g.nameOf(v));
+            clustering += local;
+        }
+
+        Triangles.Result result = Triangles.count(g);
+        assertTrue(triangles > 0 && result.isExact());
+        assertEquals(triangles, result.triangles);
+        assertEquals(wedges, result.wedges);
+        for (int v = 0; v < n; v++) assertEquals(at[v], result.trianglesAt(v), g.nameOf(v));
+        assertEquals(clustering / n, result.averageClustering, 1e-12);
+    }
+
+    @Test
+    void sampledEstimatesAreCloseToTheCount() {
+        CompactGraph g = GraphGenerator.smallWorld(20_000, 10, 0.1, 6).getGraph();
+        long exact = Triangles.count(g).triangles;
+        for (long seed = 1; seed <= 3; seed++) {
+            Triangles.Result sampled = Triangles.estimate(g, 0.5, seed);
+            assertTrue(Math.abs(sampled.triangles - exact) <= 0.1 * exact, sampled.triangles + " vs " + exact);
+        }
+    }
+}